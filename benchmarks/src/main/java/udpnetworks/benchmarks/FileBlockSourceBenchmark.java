@@ -0,0 +1,86 @@
+/**
+ * FileBlockSourceBenchmark.java
+ * @author Hugh Han
+ */
+
+package udpnetworks.benchmarks;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+import udpnetworks.FileBlockSource;
+import udpnetworks.PacketCodec;
+import udpnetworks.PacketHeader;
+
+/**
+ * Reading file blocks into packets, as the senders do for every packet
+ * they send. Blocks are read in order from a file small enough to stay in
+ * the page cache, so the figures are of the read path rather than the
+ * disk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileBlockSourceBenchmark {
+
+    /** The number of blocks in the file. */
+    private static final int BLOCKS = 4096;
+
+    @Param({"1024", "8192"})
+    public int blockSize;
+
+    @Param({"false", "true"})
+    public boolean direct;
+
+    private File file;
+    private FileBlockSource source;
+    private PacketCodec codec;
+    private ByteBuffer buf;
+    private long seqNum;
+
+    @Setup
+    public void setup() throws IOException {
+        this.file = File.createTempFile("file-block-source", ".bin");
+        this.file.deleteOnExit();
+        FileOutputStream fostream = new FileOutputStream(this.file);
+        fostream.write(new byte[BLOCKS * this.blockSize]);
+        fostream.close();
+
+        this.source = new FileBlockSource(this.file.getPath(), this.blockSize);
+        this.codec = new PacketCodec(this.blockSize);
+        this.buf = this.direct
+            ? ByteBuffer.allocateDirect(this.codec.packetCapacity())
+            : ByteBuffer.allocate(this.codec.packetCapacity());
+        this.seqNum = 0;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        this.source.close();
+        this.file.delete();
+    }
+
+    /** @return the next sequence number, wrapping at the end of the file */
+    private long next() {
+        long seqNum = this.seqNum;
+        this.seqNum = (seqNum + 1) % BLOCKS;
+        return seqNum;
+    }
+
+    @Benchmark
+    public int read() throws IOException {
+        this.buf.clear();
+        return this.source.read(this.next(), this.buf);
+    }
+
+    @Benchmark
+    public int encodeData() throws IOException {
+        long seqNum = this.next();
+        return this.codec.encodeData(this.buf, seqNum == BLOCKS - 1 ? PacketHeader.FLAG_EOF : 0, seqNum, this.source);
+    }
+}
@@ -0,0 +1,321 @@
+/**
+ * LoopbackBenchmark.java
+ * @author Hugh Han
+ */
+
+package udpnetworks.benchmarks;
+
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.*;
+
+import udpnetworks.ImpairmentProxy;
+import udpnetworks.ParallelStreams;
+
+/**
+ * Runs whole transfers over loopback through an ImpairmentProxy and
+ * reports them as CSV, one row per transfer.
+ *
+ * Every combination of protocol, file size, window size and impairment
+ * profile is run; stop-and-wait has no window, so it runs once per file
+ * size and profile. The sender and receiver of each transfer run in their
+ * own JVMs, with their transfer metrics dumped to a file, so the figures
+ * exclude JVM startup and each transfer starts with fresh options. The
+ * matrix is read from system properties:
+ *
+ *   bench.protocols  StopAndWait,GoBackN,SelectiveRepeat
+ *   bench.sizes      file sizes in bytes, e.g. 262144,4194304
+ *   bench.windows    window sizes in packets, e.g. 16,64
+ *   bench.profiles   name=impairments pairs separated by semicolons, e.g.
+ *                    clean=none;wan=delay=20,jitter=5,loss=0.01
+ *   bench.timeout    initial retry timeout of the senders in milliseconds
+ *   bench.limit      longest a transfer may take in seconds
+ *   bench.streams    parallel streams of selective repeat, each relayed by a proxy of its own
+ *   bench.jvm        extra options for the endpoint JVMs, e.g. -Dudp.cc=cubic
+ */
+public class LoopbackBenchmark {
+
+    /** Defaults. */
+    private static final String PROTOCOLS = "StopAndWait,GoBackN,SelectiveRepeat";
+    private static final String SIZES     = "262144,4194304";
+    private static final String WINDOWS   = "16,64";
+    private static final String PROFILES  = "clean=none;"
+        + "lan=delay=1,jitter=0.2,loss=0.001;"
+        + "lossy=delay=5,jitter=1,loss=0.03,dup=0.01,reorder=0.01;"
+        + "wan=delay=20,jitter=5,loss=0.01,dup=0.001,reorder=0.01";
+    private static final int BASE_PORT = 20000;
+
+    private static final String HEADER = "protocol,fileBytes,window,streams,profile,ok,elapsedMs,goodputMbps,"
+        + "packetsSent,retransmits,fastRetransmits,timeouts,duplicateAcks,duplicatePackets,"
+        + "rttP50Us,rttP99Us,rttMaxUs,ackDelayP99Us";
+
+    /** Instance variables. */
+    private Path dir;           // the working directory of files, logs and metrics
+    private String classpath;   // the classpath of the endpoint JVMs
+    private int timeout;        // the initial retry timeout of the senders
+    private long limitSeconds;  // the longest a transfer may take
+    private int streams;        // the parallel streams of selective repeat
+    private List<String> jvmOptions = new ArrayList<String>();
+    private int run;            // the number of transfers started, used to pick their ports
+
+    /**
+     * Constructor for LoopbackBenchmark.
+     * @param dir  the working directory of files, logs and metrics
+     */
+    public LoopbackBenchmark(Path dir) {
+        this.dir = dir;
+        this.classpath = System.getProperty("java.class.path");
+        this.timeout = Integer.getInteger("bench.timeout", 100);
+        this.limitSeconds = Long.getLong("bench.limit", 120L);
+        this.streams = Math.max(1, Integer.getInteger("bench.streams", 1));
+        String jvm = System.getProperty("bench.jvm", "").trim();
+        if (!jvm.isEmpty()) {
+            this.jvmOptions.addAll(Arrays.asList(jvm.split("\\s+")));
+        }
+    }
+
+    /**
+     * Creates a file of seeded random bytes, reused across transfers of the same size.
+     * @param size  the size of the file in bytes
+     * @return the file
+     */
+    private Path input(long size) throws IOException {
+        Path file = this.dir.resolve("in-" + size + ".bin");
+        if (!Files.exists(file)) {
+            Random random = new Random(size);
+            byte[] block = new byte[65536];
+            OutputStream out = new BufferedOutputStream(Files.newOutputStream(file));
+            for (long written = 0; written < size; written += block.length) {
+                random.nextBytes(block);
+                out.write(block, 0, (int) Math.min(block.length, size - written));
+            }
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * Starts an endpoint in its own JVM.
+     * @param mainClass  the endpoint class
+     * @param streams    the parallel streams a sender splits the file across
+     * @param metrics    the file its metrics are dumped to
+     * @param log        the file its output is written to
+     * @param args       its command line arguments
+     * @return the process
+     */
+    private Process launch(String mainClass, int streams, Path metrics, Path log, String... args) throws IOException {
+        List<String> command = new ArrayList<String>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(this.jvmOptions);
+        command.add("-Dudp.metrics=" + metrics);
+        command.add("-Dudp.streams=" + streams);
+        command.add("-cp");
+        command.add(this.classpath);
+        command.add("udpnetworks." + mainClass);
+        command.addAll(Arrays.asList(args));
+        return new ProcessBuilder(command)
+            .redirectErrorStream(true)
+            .redirectOutput(log.toFile())
+            .start();
+    }
+
+    /**
+     * Waits until a receiver has bound its port.
+     * @param port     the port
+     * @param process  the receiver, in case it dies first
+     * @return whether the port was bound in time
+     */
+    private static boolean awaitBound(int port, Process process) throws InterruptedException {
+        for (int i = 0; i < 200 && process.isAlive(); ++i) {
+            try {
+                new DatagramSocket(port, InetAddress.getByName("localhost")).close();
+            } catch (IOException e) {
+                return true;  // taken, so the receiver is up
+            }
+            Thread.sleep(25);
+        }
+        return false;
+    }
+
+    /**
+     * Runs one transfer and returns its CSV row.
+     * @param protocol  the protocol
+     * @param size      the file size in bytes
+     * @param window    the window size, or 0 for stop-and-wait
+     * @param profile   the name of the impairment profile
+     * @param spec      the impairments, applied in both directions
+     * @return the row
+     */
+    public String transfer(String protocol, long size, int window, String profile, String spec) throws Exception {
+        int streams = protocol.equals("SelectiveRepeat") ? this.streams : 1;
+        int port = BASE_PORT + 4 * streams * (this.run % 1000);
+        int receiverPort = port + 2 * streams;
+        ++this.run;
+        String name = protocol + "-" + size + "-" + window + "-" + profile;
+        Path in = this.input(size);
+        Path out = this.dir.resolve("out-" + name + ".bin");
+        Path senderMetrics = this.dir.resolve("sender-" + name + ".json");
+        Path receiverMetrics = this.dir.resolve("receiver-" + name + ".json");
+        Files.deleteIfExists(out);
+        Files.deleteIfExists(senderMetrics);
+        Files.deleteIfExists(receiverMetrics);
+
+        ImpairmentProxy.Profile impairments = ImpairmentProxy.Profile.parse(spec);
+        ImpairmentProxy[] proxies = new ImpairmentProxy[streams];
+        for (int i = 0; i < streams; ++i) {
+            proxies[i] = new ImpairmentProxy("localhost", ParallelStreams.port(port, i),
+                ParallelStreams.port(receiverPort, i), impairments, impairments);
+            Thread relay = new Thread(proxies[i], "impairment-proxy-" + i);
+            relay.setDaemon(true);
+            relay.start();
+        }
+
+        boolean windowed = window > 0;
+        Process receiver = null;
+        Process sender = null;
+        boolean finished = false;
+        try {
+            receiver = windowed
+                ? this.launch(protocol + "Receiver", streams, receiverMetrics, this.dir.resolve("receiver-" + name + ".log"),
+                    String.valueOf(receiverPort), out.toString(), String.valueOf(window))
+                : this.launch(protocol + "Receiver", streams, receiverMetrics, this.dir.resolve("receiver-" + name + ".log"),
+                    String.valueOf(receiverPort), out.toString());
+            if (awaitBound(receiverPort, receiver)) {
+                sender = windowed
+                    ? this.launch(protocol + "Sender", streams, senderMetrics, this.dir.resolve("sender-" + name + ".log"),
+                        "localhost", String.valueOf(port), in.toString(), String.valueOf(this.timeout), String.valueOf(window))
+                    : this.launch(protocol + "Sender", streams, senderMetrics, this.dir.resolve("sender-" + name + ".log"),
+                        "localhost", String.valueOf(port), in.toString(), String.valueOf(this.timeout));
+                finished = sender.waitFor(this.limitSeconds, TimeUnit.SECONDS)
+                    && receiver.waitFor(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            if (sender != null) {
+                sender.destroyForcibly();
+            }
+            if (receiver != null) {
+                receiver.destroyForcibly();
+            }
+            for (ImpairmentProxy proxy : proxies) {
+                proxy.close();
+            }
+        }
+
+        boolean ok = finished && sameContents(in, out);
+        String sent = read(senderMetrics);
+        String received = read(receiverMetrics);
+        return String.join(",",
+            protocol, String.valueOf(size), windowed ? String.valueOf(window) : "", String.valueOf(streams), profile, String.valueOf(ok),
+            field(sent, "elapsedMs"), field(sent, "goodputMbps"),
+            field(sent, "packetsSent"), field(sent, "retransmits"), field(sent, "fastRetransmits"),
+            field(sent, "timeouts"), field(sent, "duplicateAcks"), field(received, "duplicatePackets"),
+            field(sent, "rtt", "p50Us"), field(sent, "rtt", "p99Us"), field(sent, "rtt", "maxUs"),
+            field(received, "ackDelay", "p99Us"));
+    }
+
+    /**
+     * Reads the last metrics line of a file.
+     * @param file  the file
+     * @return the line, or an empty string if there is none
+     */
+    private static String read(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return "";
+        }
+        List<String> lines = Files.readAllLines(file);
+        return lines.isEmpty() ? "" : lines.get(lines.size() - 1);
+    }
+
+    /**
+     * Extracts a numeric field from a metrics line.
+     * @param json  the metrics line
+     * @param path  the field, preceded by the names of the objects it is nested in
+     * @return the value, or an empty string if it is missing
+     */
+    private static String field(String json, String... path) {
+        StringBuilder pattern = new StringBuilder();
+        for (int i = 0; i < path.length - 1; ++i) {
+            pattern.append('"').append(path[i]).append("\":\\{[^}]*");
+        }
+        pattern.append('"').append(path[path.length - 1]).append("\":(-?[0-9.]+)");
+        Matcher m = Pattern.compile(pattern.toString()).matcher(json);
+        return m.find() ? m.group(1) : "";
+    }
+
+    /**
+     * Compares two files.
+     * @return whether both exist with the same contents
+     */
+    private static boolean sameContents(Path a, Path b) throws IOException {
+        if (!Files.exists(b) || Files.size(a) != Files.size(b)) {
+            return false;
+        }
+        InputStream x = new BufferedInputStream(Files.newInputStream(a));
+        InputStream y = new BufferedInputStream(Files.newInputStream(b));
+        try {
+            int c;
+            while ((c = x.read()) != -1) {
+                if (c != y.read()) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            x.close();
+            y.close();
+        }
+    }
+
+    /**
+     * Splits a comma separated property.
+     * @return the trimmed, non-empty items
+     */
+    private static List<String> list(String property, String defaultValue) {
+        List<String> items = new ArrayList<String>();
+        for (String item : System.getProperty(property, defaultValue).split(",")) {
+            if (!item.trim().isEmpty()) {
+                items.add(item.trim());
+            }
+        }
+        return items;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 1) {
+            System.out.println("Usage: java LoopbackBenchmark [<csvfile>]");
+            System.exit(1);
+        }
+        Path dir = Files.createTempDirectory("loopback-benchmark");
+        PrintStream csv = args.length == 1 ? new PrintStream(new FileOutputStream(args[0]), true) : System.out;
+        LoopbackBenchmark bench = new LoopbackBenchmark(dir);
+
+        Map<String, String> profiles = new LinkedHashMap<String, String>();
+        for (String profile : System.getProperty("bench.profiles", PROFILES).split(";")) {
+            String[] kv = profile.split("=", 2);
+            profiles.put(kv[0].trim(), kv.length > 1 ? kv[1].trim() : "none");
+        }
+
+        System.err.println("Working directory: " + dir);
+        csv.println(HEADER);
+        for (String protocol : list("bench.protocols", PROTOCOLS)) {
+            List<String> windows = protocol.equals("StopAndWait")
+                ? Collections.singletonList("0") : list("bench.windows", WINDOWS);
+            for (String size : list("bench.sizes", SIZES)) {
+                for (String window : windows) {
+                    for (Map.Entry<String, String> profile : profiles.entrySet()) {
+                        String row = bench.transfer(protocol, Long.parseLong(size), Integer.parseInt(window),
+                            profile.getKey(), profile.getValue());
+                        csv.println(row);
+                        if (csv != System.out) {
+                            System.err.println(row);
+                        }
+                    }
+                }
+            }
+        }
+        csv.close();
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * PacketCodecBenchmark.java
+ * @author Hugh Han
+ */
+
+package udpnetworks.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+import udpnetworks.PacketCodec;
+import udpnetworks.PacketHeader;
+
+/**
+ * Encoding and decoding of packet headers, acknowledgements and selective
+ * acknowledgements. The sequence number is a parameter, since it is a
+ * varint and so decides the size of the header.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketCodecBenchmark {
+
+    /** Constants. */
+    private static final int PAYLOAD = 1024;     // Maximum payload of 1024 bytes
+    private static final int BITMAP  = 8;        // Bytes of selective acknowledgement bitmap
+
+    @Param({"7", "100000", "10000000000"})
+    public long seqNum;
+
+    private PacketCodec codec;
+    private PacketHeader header;
+    private ByteBuffer data;     // a data packet, encoded once
+    private ByteBuffer ack;      // an acknowledgement, encoded once
+    private ByteBuffer sack;     // a selective acknowledgement, encoded once
+    private ByteBuffer out;      // the buffer the encoding benchmarks write into
+    private byte[] bitmap;
+
+    @Setup
+    public void setup() {
+        this.codec = new PacketCodec(PAYLOAD);
+        this.header = new PacketHeader();
+        this.bitmap = new byte[BITMAP];
+        for (int i = 0; i < BITMAP; ++i) {
+            this.bitmap[i] = (byte) 0x5A;
+        }
+        this.out = ByteBuffer.allocate(this.codec.packetCapacity());
+
+        this.data = ByteBuffer.allocate(this.codec.packetCapacity());
+        PacketHeader.encode(this.data, PacketHeader.TYPE_DATA, 0, this.seqNum);
+        this.data.position(this.data.position() + PAYLOAD);
+        this.data.flip();
+
+        this.ack = ByteBuffer.allocate(this.codec.packetCapacity());
+        this.codec.encodeAck(this.ack, this.seqNum, 64);
+        this.sack = ByteBuffer.allocate(this.codec.packetCapacity());
+        this.codec.encodeSack(this.sack, this.seqNum, 64, this.bitmap, BITMAP);
+    }
+
+    @Benchmark
+    public int encodeHeader() {
+        this.out.clear();
+        return PacketHeader.encode(this.out, PacketHeader.TYPE_DATA, 0, this.seqNum);
+    }
+
+    @Benchmark
+    public boolean decodeHeader() {
+        this.data.position(0);
+        return this.header.decode(this.data) && this.header.seqNum() == this.seqNum;
+    }
+
+    @Benchmark
+    public int decodeData() {
+        this.codec.decode(this.data, this.data.limit());
+        return this.codec.payloadLength();
+    }
+
+    @Benchmark
+    public int encodeAck() {
+        return this.codec.encodeAck(this.out, this.seqNum, 64);
+    }
+
+    @Benchmark
+    public int decodeAck() {
+        this.codec.decode(this.ack, this.ack.limit());
+        return this.codec.window();
+    }
+
+    @Benchmark
+    public int encodeSack() {
+        return this.codec.encodeSack(this.out, this.seqNum, 64, this.bitmap, BITMAP);
+    }
+
+    @Benchmark
+    public int decodeSack() {
+        this.codec.decode(this.sack, this.sack.limit());
+        int acked = 0;
+        for (long s = this.seqNum + 1; s <= this.seqNum + 8 * BITMAP; ++s) {
+            if (this.codec.isSelectivelyAcked(this.sack, s)) {
+                ++acked;
+            }
+        }
+        return acked;
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * ReorderBufferBenchmark.java
+ * @author Hugh Han
+ */
+
+package udpnetworks.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import udpnetworks.ReorderBuffer;
+
+/**
+ * Insertion into and draining of the reorder buffer of the selective repeat
+ * receiver. Each invocation fills a whole window out of order and drains
+ * it in order, as the receiver does after a lost packet is recovered; the
+ * score is per packet.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReorderBufferBenchmark {
+
+    /** The number of packets per invocation, matching the largest window size below. */
+    private static final int PACKETS = 1024;
+
+    @Param({"32", "1024"})
+    public int windowSize;
+
+    private ReorderBuffer buffer;
+    private ByteBuffer[] packets;
+    private long base;           // the first sequence number of the current window
+
+    @Setup
+    public void setup() {
+        this.buffer = new ReorderBuffer(this.windowSize);
+        this.packets = new ByteBuffer[this.windowSize];
+        for (int i = 0; i < this.windowSize; ++i) {
+            this.packets[i] = ByteBuffer.allocate(16);
+        }
+        this.base = 0;
+    }
+
+    /** Fills each window from its end, so every packet but the first arrives early. */
+    @Benchmark
+    @OperationsPerInvocation(PACKETS)
+    public void insertDrain(Blackhole bh) {
+        for (int done = 0; done < PACKETS; done += this.windowSize) {
+            for (int i = this.windowSize - 1; i >= 0; --i) {
+                this.buffer.put(this.base + i, this.packets[i]);
+            }
+            for (int i = 0; i < this.windowSize; ++i) {
+                bh.consume(this.buffer.take(this.base + i));
+            }
+            this.base += this.windowSize;
+        }
+    }
+
+    /** Probes the window for sequence numbers, as the receiver does building a selective acknowledgement. */
+    @Benchmark
+    @OperationsPerInvocation(PACKETS)
+    public int contains() {
+        for (int i = 1; i < this.windowSize; i += 2) {
+            this.buffer.put(this.base + i, this.packets[i]);
+        }
+        int found = 0;
+        for (int done = 0; done < PACKETS; done += this.windowSize) {
+            for (int i = 0; i < this.windowSize; ++i) {
+                if (this.buffer.contains(this.base + i)) {
+                    ++found;
+                }
+            }
+        }
+        for (int i = 1; i < this.windowSize; i += 2) {
+            this.buffer.take(this.base + i);
+        }
+        return found;
+    }
+}
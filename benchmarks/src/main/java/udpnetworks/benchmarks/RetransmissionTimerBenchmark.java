@@ -0,0 +1,87 @@
+/**
+ * RetransmissionTimerBenchmark.java
+ * @author Hugh Han
+ */
+
+package udpnetworks.benchmarks;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+import udpnetworks.TimingWheel;
+
+/**
+ * Arming and cancelling retransmission timers. The sender arms a timer for
+ * every packet it sends and cancels it when the packet is acknowledged, so
+ * each invocation arms a window of timers and then cancels them in order;
+ * the score is per timer. The timing wheel the selective repeat sender uses
+ * is measured against the java.util.Timer it replaced, which needs a new
+ * TimerTask per packet and keeps cancelled tasks queued until they are due.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RetransmissionTimerBenchmark {
+
+    /** Constants. */
+    private static final int WINDOW = 64;              // Timers in flight per invocation
+    private static final long DELAY_MILLIS = 200;      // Retransmission timeout, never reached
+
+    /** A timeout that does nothing when it expires. */
+    private static class NoopTimeout extends TimingWheel.Timeout {
+        protected void expired() {}
+    }
+
+    private TimingWheel wheel;
+    private NoopTimeout[] timeouts;
+    private Timer timer;
+    private TimerTask[] tasks;
+
+    @Setup
+    public void setup() {
+        this.wheel = new TimingWheel(TimeUnit.MILLISECONDS.toNanos(1), 512, "benchmark-wheel");
+        this.timeouts = new NoopTimeout[WINDOW];
+        for (int i = 0; i < WINDOW; ++i) {
+            this.timeouts[i] = new NoopTimeout();
+        }
+        this.timer = new Timer("benchmark-timer", true);
+        this.tasks = new TimerTask[WINDOW];
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.wheel.stop();
+        this.timer.cancel();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WINDOW)
+    public void timingWheel() {
+        long delayNanos = TimeUnit.MILLISECONDS.toNanos(DELAY_MILLIS);
+        for (int i = 0; i < WINDOW; ++i) {
+            this.wheel.arm(this.timeouts[i], delayNanos);
+        }
+        for (int i = 0; i < WINDOW; ++i) {
+            this.wheel.cancel(this.timeouts[i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WINDOW)
+    public void utilTimer() {
+        for (int i = 0; i < WINDOW; ++i) {
+            this.tasks[i] = new TimerTask() {
+                public void run() {}
+            };
+            this.timer.schedule(this.tasks[i], DELAY_MILLIS);
+        }
+        for (int i = 0; i < WINDOW; ++i) {
+            this.tasks[i].cancel();
+        }
+    }
+}
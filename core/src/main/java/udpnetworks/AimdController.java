@@ -0,0 +1,61 @@
+/**
+ * AimdController.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+/**
+ * Slow start followed by additive-increase/multiplicative-decrease, in the
+ * manner of TCP Reno. Below the slow start threshold the window grows by one
+ * packet per packet acknowledged; above it, by one packet per window. A loss
+ * halves the window; a timeout also halves the threshold and restarts slow
+ * start from one packet.
+ */
+public class AimdController implements CongestionController {
+
+    /** Instance variables. */
+    private double cwnd;      // the congestion window in packets
+    private double ssthresh;  // the slow start threshold in packets
+    private int maxWindow;    // the receiver's window in packets
+
+    /**
+     * Constructor for AimdController.
+     * @param initialWindow  the initial congestion window in packets
+     * @param maxWindow      the receiver's window in packets
+     */
+    public AimdController(int initialWindow, int maxWindow) {
+        this.cwnd = Math.max(1, initialWindow);
+        this.ssthresh = maxWindow;
+        this.maxWindow = maxWindow;
+    }
+
+    public synchronized int window() {
+        return (int) Math.max(1, Math.min(this.maxWindow, this.cwnd));
+    }
+
+    public synchronized void onAck(int acked, long rttNanos) {
+        for (int i = 0; i < acked; ++i) {
+            if (this.cwnd < this.ssthresh) {
+                this.cwnd += 1;
+            } else {
+                this.cwnd += 1 / this.cwnd;
+            }
+        }
+        this.cwnd = Math.min(this.cwnd, this.maxWindow);
+    }
+
+    public synchronized void onLoss() {
+        this.ssthresh = Math.max(2, this.cwnd / 2);
+        this.cwnd = this.ssthresh;
+    }
+
+    public synchronized void onTimeout() {
+        this.ssthresh = Math.max(2, this.cwnd / 2);
+        this.cwnd = 1;
+    }
+
+    public String name() {
+        return "aimd";
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * AllocationProbe.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Measures the bytes allocated per packet on the encode and decode paths,
+ * using the per-thread allocation counter of the HotSpot ThreadMXBean.
+ * Every path is warmed up first so that the JIT has compiled it and the
+ * figures reflect the steady state of a transfer.
+ */
+public class AllocationProbe {
+
+    /** Constants. */
+    private static final int PAYLOAD    = 1024;     // Maximum payload of 1024 bytes
+    private static final int BLOCKS     = 4096;     // Number of blocks in the probe file
+    private static final int WARMUP     = 200000;   // Iterations run before measuring
+    private static final int ITERATIONS = 1000000;  // Iterations measured
+
+    private static com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /** A path through the codec whose allocations are measured. */
+    private interface Path {
+        void run(int i) throws IOException;
+    }
+
+    /**
+     * Runs a path and returns the bytes it allocated per iteration.
+     * @param path        the path to be measured
+     * @param iterations  the number of iterations measured
+     * @return the bytes allocated per iteration
+     */
+    private static double measure(Path path, int iterations) throws IOException {
+        for (int i = 0; i < WARMUP; ++i) {
+            path.run(i);
+        }
+        long tid = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(tid);
+        for (int i = 0; i < iterations; ++i) {
+            path.run(i);
+        }
+        long after = threads.getThreadAllocatedBytes(tid);
+        return (double) (after - before) / iterations;
+    }
+
+    public static void main(String[] args) throws Exception {
+        File file = File.createTempFile("allocation-probe", ".bin");
+        file.deleteOnExit();
+        FileOutputStream fostream = new FileOutputStream(file);
+        fostream.write(new byte[BLOCKS * PAYLOAD - PAYLOAD / 2]);
+        fostream.close();
+
+        final FileBlockSource source = new FileBlockSource(file.getPath(), PAYLOAD);
+        final PacketCodec codec = new PacketCodec(PAYLOAD);
+        final ByteBuffer data = ByteBuffer.allocate(codec.packetCapacity());
+        final ByteBuffer ack = ByteBuffer.allocate(codec.packetCapacity());
+        final OutputStream sink = new OutputStream() {
+            public void write(int b) {}
+            public void write(byte[] b, int off, int len) {}
+        };
+
+        double encode = measure(new Path() {
+            public void run(int i) throws IOException {
+                long seqNum = i % BLOCKS;
+                codec.encodeData(data, seqNum == BLOCKS - 1 ? PacketHeader.FLAG_EOF : 0, seqNum, source);
+            }
+        }, ITERATIONS);
+
+        double decode = measure(new Path() {
+            public void run(int i) throws IOException {
+                codec.decode(data, data.limit());
+                codec.writePayload(data, sink);
+            }
+        }, ITERATIONS);
+
+        double acks = measure(new Path() {
+            public void run(int i) throws IOException {
+                codec.encodeAck(ack, i);
+                codec.decode(ack, ack.limit());
+            }
+        }, ITERATIONS);
+
+        /* The socket round trip is reported separately, since it includes the JDK's own datagram layer. */
+        final DatagramSocket receiver = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        final DatagramSocket sender = new DatagramSocket();
+        final DatagramPacket out = new DatagramPacket(data.array(), 0, receiver.getLocalAddress(), receiver.getLocalPort());
+        final ByteBuffer in = ByteBuffer.allocate(codec.packetCapacity());
+        final DatagramPacket inPacket = new DatagramPacket(in.array(), in.capacity());
+        double socket = measure(new Path() {
+            public void run(int i) throws IOException {
+                out.setLength(codec.encodeData(data, 0, i % BLOCKS, source));
+                sender.send(out);
+                inPacket.setLength(in.capacity());
+                receiver.receive(inPacket);
+                codec.decode(in, inPacket.getLength());
+            }
+        }, ITERATIONS / 10);
+        sender.close();
+        receiver.close();
+        source.close();
+
+        System.out.println(
+            "{" +
+            "\n\tEncode Data: " + String.format("%.3f", encode) + " bytes/packet," +
+            "\n\tDecode Data: " + String.format("%.3f", decode) + " bytes/packet," +
+            "\n\tEncode/Decode Ack: " + String.format("%.3f", acks) + " bytes/packet," +
+            "\n\tLoopback Send/Receive: " + String.format("%.3f", socket) + " bytes/packet" +
+            "\n}"
+        );
+    }
+}
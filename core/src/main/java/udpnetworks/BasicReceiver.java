@@ -3,14 +3,16 @@
  * @author Hugh Han
  */
 
+package udpnetworks;
+
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
 
 public class BasicReceiver {
 
     /** Constants. */
     private static final int PAYLOAD     = 1024; // Maximum payload of 1024 bytes
-    private static final int HEADER_SIZE = 3;    // Header size of 3 bytes
 
     /** Instance variables. */
     private InetAddress address;                 // the address of this socket
@@ -33,7 +35,7 @@ public class BasicReceiver {
     /** Function to start the receiver socket. */
     public void start() throws SocketException {
         this.receiverSocket = new DatagramSocket(this.port, this.address);
-        System.out.println(
+        PacketLog.summary(
             "Receiver socket running on " + 
             this.receiverSocket.getLocalAddress().toString() + ":" + 
             this.receiverSocket.getLocalPort() + "."
@@ -47,44 +49,37 @@ public class BasicReceiver {
         File file = new File(this.filename);
         FileOutputStream fostream = new FileOutputStream(file);
 
-        int sequenceNum = 0;     // Indicates the sequence number
+        /* Initialize a reusable buffer and datagram for each message. */
+        PacketCodec codec = new PacketCodec(PAYLOAD);
+        ByteBuffer message = ByteBuffer.allocate(codec.packetCapacity());
+        DatagramPacket receivedPacket = new DatagramPacket(message.array(), message.capacity());
+
+        long sequenceNum = 0;    // Indicates the sequence number
         boolean eofFlag = false; // Indicates the end-of-file
 
         /* Iterate over each received message. */
         while (!eofFlag) {
-            
-            byte[] message = new byte[PAYLOAD + HEADER_SIZE]; // Initialize full message
-            byte[] fbarr = new byte[PAYLOAD];                 // Initialize message without header
 
-            /* Receive packet and obtain message. */
-            DatagramPacket receivedPacket = new DatagramPacket(message, message.length);
+            /* Receive packet and decode its header. */
+            receivedPacket.setLength(message.capacity());
             this.receiverSocket.receive(receivedPacket);
-            message = receivedPacket.getData();
-
-            /* Obtain the sequence number. */
-            sequenceNum = ((message[0] & 0xFF) << 8) + (message[1] & 0xFF);  
-
-            /* Obtain the flag specifying the end-of-file. */
-            if ((message[2] & 0xFF) == 1) {
-                eofFlag = true;
-            } else {
-                eofFlag = false;
+            if (!codec.decode(message, receivedPacket.getLength()) || codec.type() != PacketHeader.TYPE_DATA) {
+                continue;
             }
 
-            /* Obtain the data from the message. */
-            for (int i = 3; i < PAYLOAD + HEADER_SIZE ; ++i) {
-                fbarr[i - 3] = message[i];
-            }
+            /* Obtain the sequence number and the flag specifying the end-of-file. */
+            sequenceNum = codec.seqNum();
+            eofFlag = codec.isEof();
 
-            /* Write the message to the file and print received message. */
-            fostream.write(fbarr);
-            System.out.println("received: { number: " + sequenceNum + ", flag: " + (eofFlag ? 1 : 0) + " }");
+            /* Write the payload to the file and print received message. */
+            codec.writePayload(message, fostream);
+            PacketLog.packet(PacketLog.RECEIVED, sequenceNum, eofFlag ? 1 : 0);
         }
         
         /* Close the socket, write output, and finish. */
         fostream.close();
         this.receiverSocket.close();
-        System.out.println(this.filename + " succesfully received.");
+        PacketLog.summary(this.filename + " succesfully received.");
     }
 
     public static void main(String args[]) throws Exception {
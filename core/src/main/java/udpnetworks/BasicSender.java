@@ -3,14 +3,17 @@
  * @author Hugh Han
  */
 
+package udpnetworks;
+
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
 
 public class BasicSender {
 
     /** Constants. */
     private static final int PAYLOAD     = 1024; // Maximum payload of 1024 bytes
-    private static final int HEADER_SIZE = 3;    // Header size of 3 bytes
+    private static final double RATE     = 20;   // Rate in Mbit/s without a cap, as there are no acknowledgements to pace by
 
     /** Instance variables. */
     private InetAddress address;                 // the address to be sent to
@@ -33,7 +36,7 @@ public class BasicSender {
     /** Function to start the sender socket. */
     public void start() throws SocketException {
         this.senderSocket = new DatagramSocket();
-        System.out.println(
+        PacketLog.summary(
             "Sender socket running on " + 
             this.senderSocket.getLocalAddress().toString() + ":" + 
             this.senderSocket.getLocalPort() + "."
@@ -43,61 +46,40 @@ public class BasicSender {
     /** Function to send the specified file to the specified address and port. */
     public void sendData() throws IOException {
 
-        /* Read in a file using an InputStream and byte array. */
-        File file = new File(this.filename);
-        FileInputStream fistream = new FileInputStream(file);
-        byte[] fbarr = new byte[(int) file.length()];
-        fistream.read(fbarr);
+        /* Open the file to be sent; blocks are read from it on demand. */
+        FileBlockSource source = new FileBlockSource(this.filename, PAYLOAD);
+
+        /* Initialize a reusable buffer and datagram for each message. */
+        PacketCodec codec = new PacketCodec(PAYLOAD);
+        ByteBuffer message = ByteBuffer.allocate(codec.packetCapacity());
+        DatagramPacket sendPacket = new DatagramPacket(message.array(), 0, this.address, this.port);
+
+        /* Nothing is resent, so space packets evenly at the cap, or a rate a receiver on loopback keeps up with. */
+        double rate = TransferOptions.rateMbit() > 0 ? TransferOptions.rateMbit() : RATE;
+        Pacer pacer = new Pacer(rate, false, codec.packetCapacity());
 
         /* Initialize tracking variables. */
-        int sequenceNum = 0;     // Indicates the sequence number
+        long sequenceNum = 0;    // Indicates the sequence number
         boolean eofFlag = false; // Indicates the end-of-file
 
         /* Iterate over every message to send. */
-        for (int i = 0; i < fbarr.length; i += PAYLOAD, ++sequenceNum) {
-
-            byte[] message = new byte[PAYLOAD + HEADER_SIZE]; // Initialize message
-            message[0] = (byte) (sequenceNum >> 8);           // Set to 1st 8 bits of sequence number
-            message[1] = (byte) (sequenceNum);                // Set to 2nd 8 bits of sequence number
+        for (long i = 0; i < source.size(); i += PAYLOAD, ++sequenceNum) {
 
             /* Set EOF flag depending on whether it is the end of the file. */
-            if ((i + PAYLOAD) >= fbarr.length) {
-                eofFlag = true;
-                message[2] = (byte) 1;
-            } else {
-                eofFlag = false;
-                message[2] = (byte) 0;
-            }
+            eofFlag = (i + PAYLOAD) >= source.size();
 
-            /* Populate the packet. */
-            if (eofFlag) {
-                for (int j = 0;  j < fbarr.length - i; ++j)
-                    message[j + 3] = fbarr[i + j];
-            } else {
-                for (int j = 0; j < PAYLOAD; ++j)
-                    message[j + 3] = fbarr[i + j];
-            }
-
-            /* Send the packet. */
-            DatagramPacket sendPacket = new DatagramPacket(message, message.length, this.address, this.port);
+            /* Populate and send the packet. */
+            int flag = eofFlag ? PacketHeader.FLAG_EOF : 0;
+            sendPacket.setLength(codec.encodeData(message, flag, sequenceNum, source));
+            pacer.pace(sendPacket.getLength());
             this.senderSocket.send(sendPacket);
-            System.out.println("sent: { number: " + sequenceNum + ", flag: " + (eofFlag ? 1 : 0) + " }");
-
-            /* 
-             * Simulate a 5msec propagation delay between each packet.
-             * Uncomment the code block below if the propagation delay is being configured using pipes.
-             */
-            try {
-                Thread.sleep(5);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+            PacketLog.packet(PacketLog.SENT, sequenceNum, flag);
         }
 
         /* Close the socket, write output, and finish. */
-        fistream.close();
+        source.close();
         this.senderSocket.close();
-        System.out.println(this.filename + " successfully sent to " + this.address + ":" + this.port);
+        PacketLog.summary(this.filename + " successfully sent to " + this.address + ":" + this.port);
     }
 
     public static void main(String args[]) throws Exception {
@@ -0,0 +1,92 @@
+/**
+ * BlockCompressor.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+/**
+ * The sending half of per-block compression.
+ *
+ * Each block is deflated on its own, in place in its encoded data packet,
+ * so a lost packet costs only its own block and the receiver inflates
+ * blocks in whatever order they arrive. A block is sent compressed, with
+ * the compressed flag set, only if that saves at least a sixteenth of it;
+ * otherwise it goes as it is. A run of blocks that do not shrink, as in a
+ * file already compressed, makes the compressor skip a growing number of
+ * blocks, up to 64, before it tries again, so incompressible data costs
+ * little CPU. The raw deflate format is used, with no header or checksum.
+ */
+public class BlockCompressor {
+
+    /** Constants. */
+    private static final int MAX_SKIP = 64;    // Most blocks sent as they are between attempts
+
+    /** Instance variables. */
+    private Deflater deflater;          // the deflater, reset for every block
+    private ByteBuffer scratch;         // the compressed block, before it is copied into the packet
+    private TransferMetrics metrics;    // the metrics the compression is counted in
+    private int skip;                   // the blocks still to be sent as they are before the next attempt
+    private int backoff;                // the blocks skipped after the next block that does not shrink
+
+    /**
+     * Constructor for BlockCompressor.
+     * @param level        the deflate level, from 1 (fastest) to 9
+     * @param payloadSize  the largest block in bytes
+     * @param metrics      the metrics the compression is counted in
+     */
+    public BlockCompressor(int level, int payloadSize, TransferMetrics metrics) {
+        this.deflater = new Deflater(level, true);
+        this.scratch = ByteBuffer.allocate(payloadSize);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Compresses the block of an encoded data packet in place, if it shrinks.
+     * @param packet  the packet, between index 0 and its limit, its block last
+     * @param offset  the index of the first byte of the block
+     * @return whether the block was compressed, in which case the packet's
+     *         compressed flag is set and its limit moved to the new end
+     */
+    public boolean compress(ByteBuffer packet, int offset) {
+        int length = packet.limit() - offset;
+        if (this.skip > 0) {
+            --this.skip;
+            this.metrics.compression(length, length, 0);
+            return false;
+        }
+
+        long start = System.nanoTime();
+        packet.position(offset);
+        this.deflater.setInput(packet);
+        this.deflater.finish();
+        this.scratch.clear().limit(length - length / 16);
+        while (!this.deflater.finished() && this.scratch.hasRemaining()) {
+            this.deflater.deflate(this.scratch);
+        }
+        boolean shrunk = this.deflater.finished();
+        this.deflater.reset();
+        packet.position(0);
+
+        if (shrunk) {
+            this.scratch.flip();
+            packet.limit(offset + this.scratch.remaining()).position(offset);
+            packet.put(this.scratch).position(0);
+            PacketHeader.addFlags(packet, PacketHeader.FLAG_COMPRESSED);
+            this.backoff = 0;
+        } else {
+            this.skip = this.backoff;
+            this.backoff = Math.min(MAX_SKIP, Math.max(1, 2 * this.backoff));
+        }
+        this.metrics.compression(length, packet.limit() - offset, System.nanoTime() - start);
+        return shrunk;
+    }
+
+    /** Frees the deflater's native memory. */
+    public void close() {
+        this.deflater.end();
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * BlockDecompressor.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * The receiving half of per-block compression: inflates the block of a
+ * data packet that carries the compressed flag, before it is written.
+ * One decompressor may serve many transfers on the same thread.
+ */
+public class BlockDecompressor {
+
+    /** Instance variables. */
+    private Inflater inflater;  // the inflater, reset for every block
+
+    /** Constructor for BlockDecompressor. */
+    public BlockDecompressor() {
+        this.inflater = new Inflater(true);
+    }
+
+    /**
+     * Inflates a compressed block into another buffer, counting it in the
+     * metrics of the transfer it belongs to.
+     * @param payload  the compressed block, between its position and limit
+     * @param dst      the cleared buffer the block is inflated into, up to its limit
+     * @param metrics  the metrics the decompression is counted in
+     * @return whether the block inflated whole within dst's limit; dst then
+     *         holds it between position 0 and its limit
+     */
+    public boolean inflate(ByteBuffer payload, ByteBuffer dst, TransferMetrics metrics) {
+        long start = System.nanoTime();
+        int length = payload.remaining();
+        boolean whole;
+        try {
+            this.inflater.setInput(payload);
+            while (!this.inflater.finished() && dst.hasRemaining() && this.inflater.inflate(dst) > 0) {
+                /* keep going until the block ends or dst is full */
+            }
+            whole = this.inflater.finished() && this.inflater.getRemaining() == 0;
+        } catch (DataFormatException e) {
+            whole = false;
+        }
+        this.inflater.reset();
+        dst.flip();
+        if (whole) {
+            metrics.compression(dst.remaining(), length, System.nanoTime() - start);
+        }
+        return whole;
+    }
+
+    /** Frees the inflater's native memory. */
+    public void close() {
+        this.inflater.end();
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * BlockDigest.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.BitSet;
+
+/**
+ * A SHA-256 digest of a range of blocks of a file, taken as the blocks go
+ * by rather than in a second pass over the file once it is written. The
+ * sender and the receiver each digest their range and compare the two in
+ * the FIN exchange that closes it; for a transfer on one stream the digest
+ * is that of the whole file, as sha256sum prints it.
+ *
+ * The digest takes blocks in order. A sender adds each block as it first
+ * sends it. A receiver writing blocks at their offsets adds them as they
+ * are written; a block written ahead of the next one due is only noted,
+ * and read back from the file once every block before it is in, so a
+ * range received in order is never read back at all. Blocks a resumed
+ * transfer already had are read back the same way.
+ */
+public class BlockDigest {
+
+    /** Constants. */
+    public static final String ALGORITHM = "SHA-256";  // The digest algorithm; the JDK intrinsifies its compression function
+
+    /** Instance variables. */
+    private MessageDigest digest;       // the digest of the blocks added so far
+    private long firstSeqNum;           // the first block of the range
+    private long nextSeqNum;            // the next block to be added
+    private long endSeqNum;             // the block after the last one of the range
+    private FileBlockSink sink;         // the file blocks written ahead are read back from, or null
+    private BitSet ahead;               // the blocks written ahead of nextSeqNum, by offset from firstSeqNum
+    private ByteBuffer scratch;         // the buffer blocks are read back into
+    private TransferMetrics metrics;    // the metrics the time spent digesting is counted in
+    private byte[] value;               // the digest of the range, once every block is in
+
+    /**
+     * Constructor for a BlockDigest taking every block in order.
+     * @param firstSeqNum  the first block of the range
+     * @param endSeqNum    the block after the last one of the range
+     * @param metrics      the metrics the time spent digesting is counted in
+     */
+    public BlockDigest(long firstSeqNum, long endSeqNum, TransferMetrics metrics) {
+        this(null, firstSeqNum, endSeqNum, metrics);
+    }
+
+    /**
+     * Constructor for a BlockDigest of blocks written at their offsets in a
+     * file, in any order. Blocks the file already has are taken as written.
+     * @param sink         the file the blocks are written to
+     * @param firstSeqNum  the first block of the range
+     * @param endSeqNum    the block after the last one of the range
+     * @param metrics      the metrics the time spent digesting is counted in
+     */
+    public BlockDigest(FileBlockSink sink, long firstSeqNum, long endSeqNum, TransferMetrics metrics) {
+        try {
+            this.digest = MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            /* every Java platform is required to have it */
+            throw new IllegalStateException(e);
+        }
+        this.firstSeqNum = firstSeqNum;
+        this.nextSeqNum = firstSeqNum;
+        this.endSeqNum = endSeqNum;
+        this.sink = sink;
+        this.metrics = metrics;
+        if (sink != null) {
+            this.ahead = new BitSet();
+            for (long seqNum = firstSeqNum; seqNum < endSeqNum; ++seqNum) {
+                if (sink.has(seqNum)) {
+                    this.ahead.set((int) (seqNum - firstSeqNum));
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a block once it is sent or written. A block ahead of the next
+     * one due is noted, if the digest reads blocks back, and ignored
+     * otherwise, as is one already added.
+     * @param seqNum  the sequence number of the block
+     * @param block   the buffer holding the block between its position and limit, which are left as they are
+     */
+    public void add(long seqNum, ByteBuffer block) throws IOException {
+        if (seqNum != this.nextSeqNum) {
+            if (this.ahead != null && seqNum > this.nextSeqNum && seqNum < this.endSeqNum) {
+                this.ahead.set((int) (seqNum - this.firstSeqNum));
+            }
+            return;
+        }
+        long start = System.nanoTime();
+        this.update(block);
+        this.catchUp();
+        this.metrics.digest(System.nanoTime() - start);
+    }
+
+    /**
+     * Reads back and adds every block written ahead that is now due, once
+     * the blocks before it are in; a receiver calls it once the last block
+     * is written, for the blocks a resumed transfer already had.
+     */
+    public void catchUp() throws IOException {
+        if (this.ahead == null) {
+            return;
+        }
+        while (this.nextSeqNum < this.endSeqNum && this.ahead.get((int) (this.nextSeqNum - this.firstSeqNum))) {
+            if (this.scratch == null) {
+                this.scratch = ByteBuffer.allocate(this.sink.blockSize());
+            }
+            this.scratch.clear();
+            this.sink.readBlock(this.nextSeqNum, this.scratch);
+            this.scratch.flip();
+            this.update(this.scratch);
+        }
+    }
+
+    /**
+     * Adds the next block due.
+     * @param block  the buffer holding the block between its position and limit
+     */
+    private void update(ByteBuffer block) {
+        int position = block.position();
+        this.digest.update(block);
+        block.position(position);
+        ++this.nextSeqNum;
+    }
+
+    /** @return the digest of the range, or null if blocks of it are still to be added */
+    public byte[] value() {
+        if (this.value == null && this.nextSeqNum == this.endSeqNum) {
+            this.value = this.digest.digest();
+        }
+        return this.value;
+    }
+
+    /**
+     * Compares this end's digest of a range with the other end's, once the
+     * FIN exchange closing it is done, and reports the outcome.
+     * @param label    what the range is, for the report
+     * @param ours     this end's digest of the range
+     * @param theirs   the other end's, or null if it never arrived
+     * @param metrics  the metrics a verified range is counted in
+     * @throws IOException if the two differ
+     */
+    public static void verify(String label, byte[] ours, byte[] theirs, TransferMetrics metrics) throws IOException {
+        if (theirs == null) {
+            PacketLog.summary(ALGORITHM + " of " + label + ": " + toHex(ours) + ", not verified: the other end did not answer.");
+        } else if (!MessageDigest.isEqual(ours, theirs)) {
+            throw new IOException(ALGORITHM + " mismatch for " + label + ": " + toHex(ours) + " here, " + toHex(theirs) + " there");
+        } else {
+            metrics.verified();
+            PacketLog.summary(ALGORITHM + " of " + label + ": " + toHex(ours) + ", verified by both ends.");
+        }
+    }
+
+    /**
+     * Formats a digest as sha256sum prints it.
+     * @param digest  the digest, or null
+     * @return the digest in lower-case hex, or "none"
+     */
+    public static String toHex(byte[] digest) {
+        if (digest == null) {
+            return "none";
+        }
+        StringBuilder hex = new StringBuilder(2 * digest.length);
+        for (byte b : digest) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * BlockQueue.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded single-producer/single-consumer queue of blocks, each a buffer
+ * tagged with its sequence number.
+ *
+ * The queue is a preallocated ring. The producer only advances the tail and
+ * the consumer only advances the head, each publishing its index with an
+ * ordered store, so neither side takes a lock or allocates. The consumer
+ * peeks at the head block and removes it once it is done with it, so the
+ * producer cannot reuse the slot while the block is still being written.
+ */
+public class BlockQueue {
+
+    /** Instance variables. */
+    private ByteBuffer[] buffers;  // the buffers of the queued blocks
+    private long[] seqNums;        // the sequence numbers of the queued blocks
+    private int mask;              // the ring index mask; the capacity is a power of two
+    private AtomicLong head;       // the index of the next block to be consumed
+    private AtomicLong tail;       // the index of the next block to be produced
+    private long cachedHead;       // the producer's last view of the head
+    private long cachedTail;       // the consumer's last view of the tail
+
+    /**
+     * Constructor for BlockQueue.
+     * @param capacity  the minimum number of blocks the queue holds; rounded up to a power of two
+     */
+    public BlockQueue(int capacity) {
+        int size = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.buffers = new ByteBuffer[size];
+        this.seqNums = new long[size];
+        this.mask = size - 1;
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+    }
+
+    /**
+     * Returns the number of blocks the queue holds.
+     * @return the capacity of the queue
+     */
+    public int capacity() {
+        return this.buffers.length;
+    }
+
+    /**
+     * Returns the number of blocks queued; exact only on the producer or consumer thread.
+     * @return the number of blocks queued
+     */
+    public int size() {
+        return (int) (this.tail.get() - this.head.get());
+    }
+
+    /**
+     * Adds a block at the tail. Called by the producer only.
+     * @param seqNum  the sequence number of the block
+     * @param buffer  the buffer holding the block
+     * @return whether the block was added; false if the queue is full
+     */
+    public boolean offer(long seqNum, ByteBuffer buffer) {
+        long t = this.tail.get();
+        if (t - this.cachedHead >= this.buffers.length) {
+            this.cachedHead = this.head.get();
+            if (t - this.cachedHead >= this.buffers.length) {
+                return false;
+            }
+        }
+        int slot = (int) t & this.mask;
+        this.buffers[slot] = buffer;
+        this.seqNums[slot] = seqNum;
+        this.tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Returns whether a block is queued. Called by the consumer only.
+     * @return whether a block is queued
+     */
+    public boolean isEmpty() {
+        long h = this.head.get();
+        if (h == this.cachedTail) {
+            this.cachedTail = this.tail.get();
+        }
+        return h == this.cachedTail;
+    }
+
+    /**
+     * Returns the buffer of the block at the head. Called by the consumer only.
+     * @return the buffer of the block at the head, or null if the queue is empty
+     */
+    public ByteBuffer peekBuffer() {
+        return this.isEmpty() ? null : this.buffers[(int) this.head.get() & this.mask];
+    }
+
+    /**
+     * Returns the sequence number of the block at the head. Called by the
+     * consumer only, after peekBuffer has returned a block.
+     * @return the sequence number of the block at the head
+     */
+    public long peekSeqNum() {
+        return this.seqNums[(int) this.head.get() & this.mask];
+    }
+
+    /** Removes the block at the head. Called by the consumer only, after peekBuffer has returned a block. */
+    public void remove() {
+        long h = this.head.get();
+        this.buffers[(int) h & this.mask] = null;
+        this.head.lazySet(h + 1);
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * BufferPool.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * A pool of equally sized packet buffers.
+ *
+ * Buffers are allocated up front and recycled, so the steady state of a
+ * transfer allocates nothing. If the pool runs dry a new buffer is
+ * allocated rather than blocking; it joins the pool when released.
+ */
+public class BufferPool {
+
+    /** Instance variables. */
+    private ArrayDeque<ByteBuffer> free;  // the buffers available to be acquired
+    private int bufferSize;               // the capacity of each buffer
+    private boolean direct;               // whether buffers are allocated outside the heap
+
+    /**
+     * Constructor for a BufferPool of heap buffers.
+     * @param count       number of buffers to preallocate
+     * @param bufferSize  capacity of each buffer in bytes
+     */
+    public BufferPool(int count, int bufferSize) {
+        this(count, bufferSize, false);
+    }
+
+    /**
+     * Constructor for BufferPool.
+     * @param count       number of buffers to preallocate
+     * @param bufferSize  capacity of each buffer in bytes
+     * @param direct      whether buffers are allocated outside the heap
+     */
+    public BufferPool(int count, int bufferSize, boolean direct) {
+        this.free = new ArrayDeque<ByteBuffer>(Math.max(count, 1));
+        this.bufferSize = bufferSize;
+        this.direct = direct;
+        for (int i = 0; i < count; ++i) {
+            this.free.push(this.allocate());
+        }
+    }
+
+    /**
+     * Allocates a new buffer for the pool.
+     * @return a new buffer
+     */
+    private ByteBuffer allocate() {
+        return this.direct ? ByteBuffer.allocateDirect(this.bufferSize) : ByteBuffer.allocate(this.bufferSize);
+    }
+
+    /**
+     * Takes a cleared buffer from the pool.
+     * @return a cleared buffer
+     */
+    public synchronized ByteBuffer acquire() {
+        ByteBuffer buf = this.free.poll();
+        if (buf == null) {
+            buf = this.allocate();
+        }
+        buf.clear();
+        return buf;
+    }
+
+    /**
+     * Returns a buffer to the pool.
+     * @param buf  the buffer to be returned
+     */
+    public synchronized void release(ByteBuffer buf) {
+        this.free.push(buf);
+    }
+
+    /**
+     * Returns the number of buffers available without allocating.
+     * @return the number of buffers available
+     */
+    public synchronized int available() {
+        return this.free.size();
+    }
+
+    /**
+     * Returns the capacity of each buffer.
+     * @return the capacity of each buffer in bytes
+     */
+    public int bufferSize() {
+        return this.bufferSize;
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * ChannelTransport.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+
+/**
+ * A Transport backed by a non-blocking java.nio DatagramChannel.
+ *
+ * Packets go straight between direct buffers and the kernel, saving the
+ * copy into native memory that DatagramSocket makes for heap arrays.
+ * Receive timeouts are implemented with a Selector, since a channel does
+ * not honour SO_TIMEOUT.
+ */
+public class ChannelTransport implements Transport {
+
+    /** Instance variables. */
+    private DatagramChannel channel;  // the underlying channel
+    private Selector selector;        // the selector used to wait for datagrams
+    private SocketAddress lastSource; // the address the last datagram was received from
+
+    /**
+     * Constructor for ChannelTransport.
+     * @param bind  the local address to bind to, or null for any ephemeral port
+     */
+    public ChannelTransport(InetSocketAddress bind) throws IOException {
+        this(bind, false);
+    }
+
+    /**
+     * Constructor for ChannelTransport.
+     * @param bind       the local address to bind to, or null for any ephemeral port
+     * @param reusePort  whether to set SO_REUSEPORT, so other sockets can bind the same port
+     * @throws UnsupportedOperationException if reusePort is set but the platform lacks SO_REUSEPORT
+     */
+    public ChannelTransport(InetSocketAddress bind, boolean reusePort) throws IOException {
+        this.channel = DatagramChannel.open();
+        if (reusePort) {
+            this.channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        }
+        if (TransferOptions.sendBufferSize() > 0) {
+            this.channel.setOption(StandardSocketOptions.SO_SNDBUF, TransferOptions.sendBufferSize());
+        }
+        if (TransferOptions.receiveBufferSize() > 0) {
+            this.channel.setOption(StandardSocketOptions.SO_RCVBUF, TransferOptions.receiveBufferSize());
+        }
+        this.channel.bind(bind);
+        this.channel.configureBlocking(false);
+        this.selector = Selector.open();
+        this.channel.register(this.selector, SelectionKey.OP_READ);
+    }
+
+    public void send(ByteBuffer packet, SocketAddress target) throws IOException {
+        /* Restore the position afterwards so that the packet can be resent. */
+        int position = packet.position();
+        while (this.channel.send(packet, target) == 0) {
+            Thread.yield();  // the socket send buffer is full; it drains in microseconds
+        }
+        packet.position(position);
+    }
+
+    public int receive(ByteBuffer dst, int timeout) throws IOException {
+        long deadline = System.nanoTime() + timeout * 1000000L;
+        dst.clear();
+        while (true) {
+            SocketAddress source = this.channel.receive(dst);
+            if (source != null) {
+                this.lastSource = source;
+                return dst.position();
+            }
+            if (timeout == 0) {
+                this.selector.select();
+            } else {
+                long remaining = (deadline - System.nanoTime()) / 1000000L;
+                if (remaining <= 0 || this.selector.select(remaining) == 0 && System.nanoTime() >= deadline) {
+                    throw new SocketTimeoutException("Receive timed out");
+                }
+            }
+            this.selector.selectedKeys().clear();
+        }
+    }
+
+    public SocketAddress lastSource() {
+        return this.lastSource;
+    }
+
+    public InetSocketAddress localAddress() {
+        try {
+            return (InetSocketAddress) this.channel.getLocalAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public BufferPool newBufferPool(int count, int bufferSize) {
+        return new BufferPool(count, bufferSize, true);
+    }
+
+    public void close() throws IOException {
+        this.selector.close();
+        this.channel.close();
+    }
+}
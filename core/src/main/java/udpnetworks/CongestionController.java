@@ -0,0 +1,59 @@
+/**
+ * CongestionController.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+/**
+ * Drives the effective send window of a windowed sender from acknowledgements
+ * and losses. The sender never has more packets in flight than the smaller of
+ * the congestion window and the receiver's window given on the command line.
+ *
+ * Controllers may be called from the sender thread and from its
+ * retransmission timer thread, so implementations are thread-safe.
+ */
+public interface CongestionController {
+
+    /**
+     * Returns the current congestion window.
+     * @return the congestion window in packets, at least 1
+     */
+    int window();
+
+    /**
+     * Called when new packets are acknowledged.
+     * @param acked     the number of packets newly acknowledged
+     * @param rttNanos  the latest round-trip time sample, or 0 if none
+     */
+    void onAck(int acked, long rttNanos);
+
+    /** Called when a loss is detected without a timeout, e.g. by duplicate acknowledgements. */
+    void onLoss();
+
+    /** Called when a retransmission timeout expires. */
+    void onTimeout();
+
+    /**
+     * Returns the name of the algorithm, for the transfer summary.
+     * @return the name of the algorithm
+     */
+    String name();
+
+    /**
+     * Creates the controller selected by TransferOptions.congestionControl().
+     * @param maxWindow  the receiver's window, which the congestion window never exceeds
+     * @return a new controller
+     */
+    static CongestionController fromOptions(int maxWindow) {
+        String name = TransferOptions.congestionControl();
+        int initial = Math.min(maxWindow, TransferOptions.initialWindow());
+        if ("none".equals(name)) {
+            return new FixedWindowController(maxWindow);
+        } else if ("cubic".equals(name)) {
+            return new CubicController(initial, maxWindow);
+        } else {
+            return new AimdController(initial, maxWindow);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * CubicController.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+/**
+ * A CUBIC-style controller, after RFC 8312. After a loss the window follows
+ * W(t) = C * (t - K)^3 + Wmax, where Wmax is the window before the loss and
+ * t the time since it, so it regrows quickly, plateaus around Wmax and then
+ * probes beyond it. The window never grows more slowly than the equivalent
+ * AIMD flow would. Slow start is used until the first loss.
+ */
+public class CubicController implements CongestionController {
+
+    /** Constants. */
+    private static final double C    = 0.4;  // Scaling constant of the cubic function
+    private static final double BETA = 0.7;  // Multiplicative decrease factor
+
+    /** Instance variables. */
+    private double cwnd;        // the congestion window in packets
+    private double ssthresh;    // the slow start threshold in packets
+    private double wMax;        // the window before the last reduction
+    private double k;           // the time in seconds for the cubic to regrow to wMax
+    private long epochStart;    // the time of the last reduction, or 0 if none yet
+    private long srtt;          // the latest round-trip time in nanoseconds
+    private int maxWindow;      // the receiver's window in packets
+
+    /**
+     * Constructor for CubicController.
+     * @param initialWindow  the initial congestion window in packets
+     * @param maxWindow      the receiver's window in packets
+     */
+    public CubicController(int initialWindow, int maxWindow) {
+        this.cwnd = Math.max(1, initialWindow);
+        this.ssthresh = maxWindow;
+        this.maxWindow = maxWindow;
+    }
+
+    public synchronized int window() {
+        return (int) Math.max(1, Math.min(this.maxWindow, this.cwnd));
+    }
+
+    public synchronized void onAck(int acked, long rttNanos) {
+        if (rttNanos > 0) {
+            this.srtt = rttNanos;
+        }
+        for (int i = 0; i < acked; ++i) {
+            if (this.cwnd < this.ssthresh) {
+                this.cwnd += 1;
+                continue;
+            }
+            if (this.epochStart == 0) {
+                this.reduce(1.0);  // start the cubic epoch without reducing the window
+            }
+            double t = (System.nanoTime() - this.epochStart) / 1e9;
+            double rtt = this.srtt / 1e9;
+            double target = C * Math.pow(t + rtt - this.k, 3) + this.wMax;
+            double aimd = this.wMax * BETA + (3 * (1 - BETA) / (1 + BETA)) * (rtt > 0 ? t / rtt : 0);
+            target = Math.max(target, aimd);
+            if (target > this.cwnd) {
+                this.cwnd += (target - this.cwnd) / this.cwnd;
+            } else {
+                this.cwnd += 0.01 / this.cwnd;
+            }
+        }
+        this.cwnd = Math.min(this.cwnd, this.maxWindow);
+    }
+
+    /**
+     * Starts a new cubic epoch from the current window.
+     * @param factor  the factor the window is multiplied by
+     */
+    private void reduce(double factor) {
+        this.wMax = this.cwnd;
+        this.cwnd = Math.max(1, this.cwnd * factor);
+        this.ssthresh = Math.max(2, this.cwnd);
+        this.k = Math.cbrt(this.wMax * (1 - factor) / C);
+        this.epochStart = System.nanoTime();
+    }
+
+    public synchronized void onLoss() {
+        this.reduce(BETA);
+    }
+
+    public synchronized void onTimeout() {
+        this.reduce(BETA);
+        this.cwnd = 1;
+    }
+
+    public String name() {
+        return "cubic";
+    }
+}
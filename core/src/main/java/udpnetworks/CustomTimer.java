@@ -3,6 +3,8 @@
  * @author Hugh Han
 */
 
+package udpnetworks;
+
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 
@@ -0,0 +1,215 @@
+/**
+ * DiskWriter.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The disk stage of a receiver: a dedicated thread that writes the blocks
+ * the network thread hands it through a BlockQueue, so a slow write or
+ * flush never stops the network thread draining its socket.
+ *
+ * Blocks are written either at their offset in a FileBlockSink or, in
+ * order, to a stream. Each buffer is released to the pool it came from
+ * once written. The free space in the queue is the receiver's window:
+ * receivers advertise it in their acknowledgements so senders slow down
+ * before the queue fills. Should it fill anyway, put waits for space.
+ *
+ * A writer given a BlockDigest adds every block to it once written, so the
+ * digest of the file is ready as soon as the writer is closed.
+ */
+public class DiskWriter implements Runnable, Closeable {
+
+    /** Constants. */
+    private static final long IDLE_PARK_NANOS = 100000;  // Longest the writer sleeps between checks of an empty queue
+    private static final long FULL_PARK_NANOS = 20000;   // Time the network thread sleeps while the queue is full
+
+    /** Instance variables. */
+    private BlockQueue queue;             // the blocks waiting to be written
+    private BufferPool pool;              // the pool written buffers are released to
+    private FileBlockSink sink;           // the file blocks are written at their offset in, or null
+    private WritableByteChannel stream;   // the stream blocks are written to in order, or null
+    private BlockDigest digest;           // the digest every block written is added to, or null
+    private Thread thread;
+    private volatile boolean closing;     // whether no more blocks will be queued
+    private volatile boolean sleeping;    // whether the writer is parked on an empty queue
+    private volatile IOException error;   // the first write failure, rethrown to the network thread
+
+    /** Queue metrics, updated on the network thread. */
+    private long puts;                    // the number of blocks queued
+    private long depthSum;                // the sum of the queue depth seen by each put
+    private int maxDepth;                 // the deepest the queue has been
+    private long fullWaits;               // the number of puts that found the queue full
+
+    /**
+     * Constructor for a DiskWriter writing blocks at their offsets.
+     * @param sink      the file the blocks are written to
+     * @param pool      the pool written buffers are released to
+     * @param capacity  the number of blocks the queue holds
+     */
+    public DiskWriter(FileBlockSink sink, BufferPool pool, int capacity) {
+        this(sink, null, pool, capacity, null);
+    }
+
+    /**
+     * Constructor for a DiskWriter writing blocks at their offsets and digesting them.
+     * @param sink      the file the blocks are written to
+     * @param pool      the pool written buffers are released to
+     * @param capacity  the number of blocks the queue holds
+     * @param digest    the digest every block written is added to
+     */
+    public DiskWriter(FileBlockSink sink, BufferPool pool, int capacity, BlockDigest digest) {
+        this(sink, null, pool, capacity, digest);
+    }
+
+    /**
+     * Constructor for a DiskWriter writing blocks in order.
+     * @param stream    the stream the blocks are written to
+     * @param pool      the pool written buffers are released to
+     * @param capacity  the number of blocks the queue holds
+     */
+    public DiskWriter(WritableByteChannel stream, BufferPool pool, int capacity) {
+        this(null, stream, pool, capacity, null);
+    }
+
+    /**
+     * Constructor for a DiskWriter writing blocks in order and digesting them.
+     * @param stream    the stream the blocks are written to
+     * @param pool      the pool written buffers are released to
+     * @param capacity  the number of blocks the queue holds
+     * @param digest    the digest every block written is added to
+     */
+    public DiskWriter(WritableByteChannel stream, BufferPool pool, int capacity, BlockDigest digest) {
+        this(null, stream, pool, capacity, digest);
+    }
+
+    private DiskWriter(FileBlockSink sink, WritableByteChannel stream, BufferPool pool, int capacity, BlockDigest digest) {
+        this.sink = sink;
+        this.stream = stream;
+        this.digest = digest;
+        this.pool = pool;
+        this.queue = new BlockQueue(capacity);
+        this.thread = new Thread(this, "disk-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queues a block to be written, waiting while the queue is full. The
+     * buffer belongs to the writer until it is released to the pool.
+     * @param seqNum  the sequence number of the block
+     * @param block   the buffer holding the block between its position and limit
+     */
+    public void put(long seqNum, ByteBuffer block) throws IOException {
+        ++this.puts;
+        this.depthSum += this.queue.size();
+        if (!this.queue.offer(seqNum, block)) {
+            ++this.fullWaits;
+            do {
+                this.checkError();
+                LockSupport.unpark(this.thread);
+                LockSupport.parkNanos(FULL_PARK_NANOS);
+            } while (!this.queue.offer(seqNum, block));
+        }
+        this.maxDepth = Math.max(this.maxDepth, this.queue.size());
+        if (this.sleeping) {
+            LockSupport.unpark(this.thread);
+        }
+    }
+
+    /**
+     * Returns the number of blocks that can be queued without waiting.
+     * @return the free space in the queue in blocks
+     */
+    public int remainingCapacity() {
+        return this.queue.capacity() - this.queue.size();
+    }
+
+    /** Writes queued blocks until the writer is closed and the queue is drained. */
+    public void run() {
+        try {
+            while (true) {
+                ByteBuffer block = this.queue.peekBuffer();
+                if (block != null) {
+                    this.write(this.queue.peekSeqNum(), block);
+                    this.pool.release(block);
+                    this.queue.remove();
+                } else if (this.closing) {
+                    if (this.digest != null) {
+                        this.digest.catchUp();
+                    }
+                    break;
+                } else {
+                    /* Announce the park before rechecking, so a put either sees it or is seen. */
+                    this.sleeping = true;
+                    if (this.queue.isEmpty() && !this.closing) {
+                        LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    }
+                    this.sleeping = false;
+                }
+            }
+        } catch (IOException e) {
+            this.error = e;
+        }
+    }
+
+    /**
+     * Writes one block.
+     * @param seqNum  the sequence number of the block
+     * @param block   the buffer holding the block
+     */
+    private void write(long seqNum, ByteBuffer block) throws IOException {
+        int position = block.position();
+        if (this.sink != null) {
+            this.sink.writeBlock(seqNum, block);
+        } else {
+            while (block.hasRemaining()) {
+                this.stream.write(block);
+            }
+        }
+        if (this.digest != null) {
+            this.digest.add(seqNum, block.position(position));
+        }
+    }
+
+    /** Rethrows a failure of the writer thread on the calling thread. */
+    private void checkError() throws IOException {
+        if (this.error != null) {
+            throw new IOException("disk writer failed", this.error);
+        }
+    }
+
+    /** Function to write every queued block, stop the writer thread and close the file. */
+    public void close() throws IOException {
+        this.closing = true;
+        LockSupport.unpark(this.thread);
+        try {
+            this.thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while draining the disk writer");
+        }
+        if (this.sink != null) {
+            this.sink.close();
+        } else {
+            this.stream.close();
+        }
+        this.checkError();
+    }
+
+    /**
+     * Returns the queue metrics, for the transfer summary.
+     * @return the queue metrics as a string
+     */
+    public String summary() {
+        return String.format("%d blocks, mean depth %.1f, max depth %d of %d, %d full waits",
+            this.puts, this.puts == 0 ? 0.0 : (double) this.depthSum / this.puts,
+            this.maxDepth, this.queue.capacity(), this.fullWaits);
+    }
+}
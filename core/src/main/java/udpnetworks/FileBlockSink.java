@@ -0,0 +1,296 @@
+/**
+ * FileBlockSink.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A file of known size written as a sequence of fixed-size blocks, in any
+ * order.
+ *
+ * The file is created at its final size up front and every block is written
+ * at its own offset with a positional write the moment it arrives, so a
+ * receiver needs no reorder buffer: it keeps only a bitmap of the blocks
+ * received so far, one bit per block, however large its window.
+ *
+ * Recording a block in the bitmap and writing it are separate steps, so the
+ * network thread can keep the bitmap while a DiskWriter does the writing.
+ *
+ * Parallel streams may share a sink, each recording and writing its own
+ * range of blocks. Ranges that start on a multiple of 64 blocks never share
+ * a word of the bitmap, so no locking is needed. Each stream retains the
+ * sink and closes it when done; the file is closed by the last.
+ *
+ * A resumable sink keeps a ProgressFile beside the file, checkpointing the
+ * blocks written to it as they go, and reopens a file an earlier transfer
+ * left unfinished with the blocks it recorded already received. The record
+ * is removed once the file is whole.
+ */
+public class FileBlockSink implements Closeable {
+
+    /** Instance variables. */
+    private FileChannel channel;  // the channel the blocks are written to and read back from
+    private long size;            // the size of the file in bytes
+    private int blockSize;        // the size of every block but the final one
+    private long blockCount;      // the number of blocks in the file
+    private long[] received;      // the bitmap of blocks received so far
+    private AtomicLong receivedCount = new AtomicLong();  // the number of blocks received so far
+    private int users = 1;        // the number of streams yet to close the sink
+    private ProgressFile progress; // the record of blocks on disk, or null if the sink is not resumable
+    private long checkpointNanos; // the interval between checkpoints of the record
+    private volatile long checkpointAt;  // the time of the last checkpoint
+
+    /**
+     * Constructor for FileBlockSink.
+     * @param filename   name of the file to be written
+     * @param blockSize  size of each block in bytes
+     * @param size       size of the file in bytes
+     */
+    public FileBlockSink(String filename, int blockSize, long size) throws IOException {
+        this(filename, blockSize, size, false);
+    }
+
+    /**
+     * Constructor for FileBlockSink.
+     * @param filename   name of the file to be written
+     * @param blockSize  size of each block in bytes
+     * @param size       size of the file in bytes
+     * @param resumable  whether to record the blocks on disk, and resume from an earlier record of the file
+     */
+    public FileBlockSink(String filename, int blockSize, long size, boolean resumable) throws IOException {
+        Path path = Paths.get(filename);
+        this.size = size;
+        this.blockSize = blockSize;
+        this.blockCount = (size + blockSize - 1) / blockSize;
+        this.received = new long[(int) ((this.blockCount + 63) >>> 6)];
+
+        /* An earlier record is only good while the file it describes is still there at its full size. */
+        boolean resumed = false;
+        if (resumable) {
+            boolean intact = Files.isRegularFile(path) && Files.size(path) == size;
+            this.progress = new ProgressFile(filename, size, blockSize, this.blockCount, intact);
+            this.checkpointNanos = TransferOptions.checkpointMillis() * 1000000L;
+            this.checkpointAt = System.nanoTime();
+            resumed = this.progress.isResumed();
+            if (resumed) {
+                this.receivedCount.set(this.progress.load(this.received));
+            }
+        }
+        /* Opened for reading too, so blocks written out of order can be read back into the file's digest. */
+        this.channel = resumed
+            ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+            : FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        /* Extend the file to its final size, so blocks can be written anywhere within it. */
+        if (size > 0) {
+            this.channel.write(ByteBuffer.allocate(1), size - 1);
+        }
+    }
+
+    /**
+     * Returns the size of the file in bytes.
+     * @return the size of the file in bytes
+     */
+    public long size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the size of every block but the final one.
+     * @return the block size in bytes
+     */
+    public int blockSize() {
+        return this.blockSize;
+    }
+
+    /**
+     * Returns the number of blocks in the file.
+     * @return the number of blocks in the file
+     */
+    public long blockCount() {
+        return this.blockCount;
+    }
+
+    /**
+     * Returns the sequence number of the final block of the file.
+     * @return the sequence number of the final block of the file
+     */
+    public long finalSeqNum() {
+        return this.blockCount - 1;
+    }
+
+    /**
+     * Returns whether a block has been received.
+     * @param seqNum  the sequence number of the block
+     * @return whether the block has been received; false if it is outside the file
+     */
+    public boolean has(long seqNum) {
+        if (seqNum < 0 || seqNum >= this.blockCount) {
+            return false;
+        }
+        return (this.received[(int) (seqNum >>> 6)] & (1L << seqNum)) != 0;
+    }
+
+    /**
+     * Records a block as received, unless it has been received already.
+     * @param seqNum  the sequence number of the block
+     * @param length  the length of the block in bytes
+     * @return whether the block is new; false if it is a duplicate, outside the file or of the wrong length
+     */
+    public boolean mark(long seqNum, int length) {
+        if (seqNum < 0 || seqNum >= this.blockCount || this.has(seqNum)) {
+            return false;
+        }
+        if (length != (int) Math.min(this.blockSize, this.size - seqNum * this.blockSize)) {
+            return false;
+        }
+        this.received[(int) (seqNum >>> 6)] |= 1L << seqNum;
+        this.receivedCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Writes a block at its offset.
+     * @param seqNum  the sequence number of the block
+     * @param src     the buffer holding the block between its position and limit
+     */
+    public void writeBlock(long seqNum, ByteBuffer src) throws IOException {
+        long position = seqNum * this.blockSize;
+        while (src.hasRemaining()) {
+            position += this.channel.write(src, position);
+        }
+        if (this.progress != null) {
+            this.progress.written(seqNum);
+            if (System.nanoTime() - this.checkpointAt >= this.checkpointNanos) {
+                this.checkpoint();
+            }
+        }
+    }
+
+    /**
+     * Reads a written block back, starting at the buffer's position.
+     * @param seqNum  the sequence number of the block
+     * @param dst     the buffer the block is read into, with room for it
+     */
+    public void readBlock(long seqNum, ByteBuffer dst) throws IOException {
+        long position = seqNum * this.blockSize;
+        int limit = dst.limit();
+        dst.limit(dst.position() + (int) Math.min(this.blockSize, this.size - position));
+        try {
+            while (dst.hasRemaining()) {
+                int n = this.channel.read(dst, position);
+                if (n < 0) {
+                    throw new EOFException("unexpected end of file at block " + seqNum);
+                }
+                position += n;
+            }
+        } finally {
+            dst.limit(limit);
+        }
+    }
+
+    /**
+     * Function to force the blocks written to disk, then record them. The
+     * record is snapshotted before the force, so it never claims a block
+     * another stream wrote while the file was being forced.
+     */
+    private synchronized void checkpoint() throws IOException {
+        if (System.nanoTime() - this.checkpointAt < this.checkpointNanos) {
+            /* another stream's writer got here first */
+            return;
+        }
+        this.progress.snapshot();
+        this.channel.force(false);
+        this.progress.commit();
+        this.checkpointAt = System.nanoTime();
+    }
+
+    /**
+     * Returns whether the sink took up a file an earlier transfer left
+     * unfinished, so the sender is to be told which blocks it has.
+     * @return whether the sink resumed from a record of the file
+     */
+    public boolean isResumed() {
+        return this.progress != null && this.progress.isResumed();
+    }
+
+    /**
+     * Returns the first block of a range not yet received.
+     * @param firstSeqNum  the first block of the range
+     * @param endSeqNum    the block after the last one of the range
+     * @return the first block not received, or endSeqNum if every one has been
+     */
+    public long firstMissing(long firstSeqNum, long endSeqNum) {
+        long seqNum = firstSeqNum;
+        while (seqNum < endSeqNum && this.has(seqNum)) {
+            ++seqNum;
+        }
+        return seqNum;
+    }
+
+    /**
+     * Fills a bitmap of the blocks received after a block, in the layout of
+     * a selective acknowledgement: bit i is set if seqNum + 1 + i has been.
+     * @param seqNum     the block the bitmap follows
+     * @param endSeqNum  the block after the last one the bitmap may cover
+     * @param bitmap     the bitmap, as far as it reaches
+     * @return the length in bytes of the bitmap up to its last set bit
+     */
+    public int bitmap(long seqNum, long endSeqNum, byte[] bitmap) {
+        Arrays.fill(bitmap, (byte) 0);
+        int length = 0;
+        for (int i = 0; i < 8 * bitmap.length && seqNum + 1 + i < endSeqNum; ++i) {
+            if (this.has(seqNum + 1 + i)) {
+                bitmap[i >>> 3] |= 1 << (i & 7);
+                length = (i >>> 3) + 1;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Returns the number of blocks received so far.
+     * @return the number of blocks received so far
+     */
+    public long receivedCount() {
+        return this.receivedCount.get();
+    }
+
+    /**
+     * Returns whether every block of the file has been received.
+     * @return whether every block of the file has been received
+     */
+    public boolean isComplete() {
+        return this.receivedCount.get() == this.blockCount;
+    }
+
+    /** Function to add a stream that will close the sink, so the file stays open until it has. */
+    public synchronized void retain() {
+        ++this.users;
+    }
+
+    /** Function to close the underlying file once every stream sharing it has closed it. */
+    public synchronized void close() throws IOException {
+        if (--this.users == 0) {
+            /* Keep the record of an unfinished file for a later transfer to resume from. */
+            if (this.progress != null && this.isComplete()) {
+                this.progress.delete();
+            } else if (this.progress != null) {
+                this.progress.snapshot();
+                this.channel.force(false);
+                this.progress.commit();
+                this.progress.close();
+            }
+            this.channel.close();
+        }
+    }
+}
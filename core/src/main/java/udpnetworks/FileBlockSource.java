@@ -0,0 +1,115 @@
+/**
+ * FileBlockSource.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+/**
+ * A read-only view of a file as a sequence of fixed-size blocks.
+ *
+ * Blocks are read on demand with positional reads on a FileChannel, so the
+ * caller only ever holds the blocks it currently has in flight in memory,
+ * no matter how large the file is.
+ */
+public class FileBlockSource implements Closeable {
+
+    /** Instance variables. */
+    private FileChannel channel;  // the channel the blocks are read from
+    private long size;            // the size of the file in bytes
+    private int blockSize;        // the size of every block but the final one
+
+    /**
+     * Constructor for FileBlockSource.
+     * @param filename   name of the file to be read
+     * @param blockSize  size of each block in bytes
+     */
+    public FileBlockSource(String filename, int blockSize) throws IOException {
+        File file = new File(filename);
+        if (!file.isFile()) {
+            throw new FileNotFoundException(filename);
+        }
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.size = this.channel.size();
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Changes the size blocks are read in, once the handshake agrees it;
+     * sequence numbers count blocks of the new size from then on.
+     * @param blockSize  size of each block in bytes
+     */
+    public void resize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Returns the size of the file in bytes.
+     * @return the size of the file in bytes
+     */
+    public long size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the number of blocks in the file.
+     * @return the number of blocks in the file
+     */
+    public long blockCount() {
+        return (this.size + this.blockSize - 1) / this.blockSize;
+    }
+
+    /**
+     * Returns the sequence number of the final block of the file.
+     * @return the sequence number of the final block of the file
+     */
+    public long finalSeqNum() {
+        return this.blockCount() - 1;
+    }
+
+    /**
+     * Returns the size in bytes of a block.
+     * @param seqNum  the sequence number of the block
+     * @return the size in bytes of the block
+     */
+    public int blockSize(long seqNum) {
+        long remaining = this.size - (seqNum * this.blockSize);
+        return (int) Math.max(0, Math.min(this.blockSize, remaining));
+    }
+
+    /**
+     * Reads a block into a buffer, starting at the buffer's position.
+     * @param seqNum  the sequence number of the block
+     * @param dst     the buffer the block is copied into
+     * @return the number of bytes read
+     */
+    public int read(long seqNum, ByteBuffer dst) throws IOException {
+        int length = this.blockSize(seqNum);
+        int limit = dst.limit();
+        dst.limit(dst.position() + length);
+        long position = seqNum * this.blockSize;
+        int total = 0;
+        try {
+            while (total < length) {
+                int n = this.channel.read(dst, position + total);
+                if (n < 0) {
+                    throw new EOFException("unexpected end of file at block " + seqNum);
+                }
+                total += n;
+            }
+        } finally {
+            dst.limit(limit);
+        }
+        return total;
+    }
+
+    /** Function to close the underlying file. */
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
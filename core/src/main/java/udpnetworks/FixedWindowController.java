@@ -0,0 +1,34 @@
+/**
+ * FixedWindowController.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+/** A CongestionController that always allows the full receiver window. */
+public class FixedWindowController implements CongestionController {
+
+    private int window;  // the fixed window in packets
+
+    /**
+     * Constructor for FixedWindowController.
+     * @param window  the fixed window in packets
+     */
+    public FixedWindowController(int window) {
+        this.window = window;
+    }
+
+    public int window() {
+        return this.window;
+    }
+
+    public void onAck(int acked, long rttNanos) {}
+
+    public void onLoss() {}
+
+    public void onTimeout() {}
+
+    public String name() {
+        return "none";
+    }
+}
@@ -0,0 +1,253 @@
+/**
+ * GoBackNReceiver.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+
+public class GoBackNReceiver {
+
+	/* Constants */
+	private static final int PORT_OFFSET = 1; 	  // Port offset used to receive acknowledgements
+	
+	/* Instance variables */
+	private InetAddress address;  			// the address of this receiver socket
+	private int port;			  			// the port number of this receiver socket
+	private String filename;	  			// the name of the file to be saved as
+	private int windowSize;		  			// the window size of each transmission
+	private Transport receiverSocket;  		// the receiver socket
+	private Transport senderSocket;    		// the sender socket
+	private InetSocketAddress ackTarget;	// the address and port acknowledgements are sent to
+	private PacketCodec codec;				// the codec used to encode and decode packets
+	private ByteBuffer ackBuffer;			// the reusable buffer acknowledgements are encoded into
+	private TransferMetrics metrics;		// the metrics of the transfer
+	
+	/**
+     * Constructor for GoBackNReceiver.
+     * @param hostname    hostname of the receiver socket
+     * @param port        port number of the receiver socket
+     * @param filename    name of the file to be saved as
+     * @param windowSize  size of each transmission window
+     */
+	public GoBackNReceiver(String hostname, int port, String filename, int windowSize) throws IOException {
+		this.address 	= InetAddress.getByName(hostname);
+		this.port 		= port;
+		this.filename 	= filename;
+		this.windowSize = windowSize;
+		this.ackTarget 	= new InetSocketAddress(this.address, this.port + PORT_OFFSET);
+		this.codec 		= new PacketCodec(TransferOptions.payload());
+		this.metrics 	= new TransferMetrics("GoBackN", "receiver");
+	}
+
+	/** Function to start the sender and receiver sockets. */
+	public void start() throws IOException {
+		this.receiverSocket = Transport.open(new InetSocketAddress(this.address, this.port));
+        PacketLog.summary(
+            "Receiver socket running on " + 
+            this.receiverSocket.localAddress().getAddress().toString() + ":" + 
+            this.receiverSocket.localAddress().getPort() + "."
+        );
+        this.senderSocket = Transport.open(null);
+        PacketLog.summary(
+            "Sender socket running on " + 
+            this.senderSocket.localAddress().getAddress().toString() + ":" + 
+            this.senderSocket.localAddress().getPort() + "."
+        );
+        this.ackBuffer = this.senderSocket.newBufferPool(1, this.codec.packetCapacity()).acquire();
+	}
+	
+	/** Function to receive a file from a sender. */
+	public void receiveFile() throws IOException {
+
+		/* Wait for the sender to announce the transfer, the size of the file and the payload size. */
+		PacketCodec codec = this.codec;
+		ByteBuffer handshake = this.receiverSocket.newBufferPool(1, codec.packetCapacity()).acquire();
+		long fileSize = Handshake.accept(this.receiverSocket, this.senderSocket, this.ackTarget, codec, handshake, this.ackBuffer);
+
+		/* A file written at its offsets may be resumed, keeping the block size it was started with. */
+		boolean positional = TransferOptions.positionalWrites();
+		boolean resumable = positional && TransferOptions.resume();
+		int recorded = resumable ? ProgressFile.recordedBlockSize(this.filename, fileSize) : 0;
+		int payload = Handshake.agree(codec, recorded > 0 ? Math.min(codec.payloadSize(), recorded) : codec.payloadSize());
+		this.metrics.start(fileSize);
+		this.metrics.payloadBytes(payload);
+
+		/* Initialize a pool of reusable buffers, sized to the payload agreed, for the messages received and queued to be written. */
+		int queueSize = TransferOptions.writeQueue();
+		BufferPool pool = this.receiverSocket.newBufferPool(queueSize + 2, PacketHeader.MAX_SIZE + payload);
+		ByteBuffer message = pool.acquire();
+
+		/*
+		 * In positional mode each block within the window is written at its offset as soon as it arrives, so
+		 * packets after a lost one need not be resent. Otherwise only the next block in order is written.
+		 * Either way the writing is done by a disk writer thread, so this thread only drains the socket.
+		 */
+		FileBlockSink sink = null;
+		DiskWriter writer;
+		BlockDigest digest;
+		long blockCount = (fileSize + payload - 1) / payload;
+		if (positional) {
+			sink = new FileBlockSink(this.filename, payload, fileSize, resumable);
+			if (sink.isResumed()) {
+				this.metrics.resumed(sink.receivedCount());
+				PacketLog.summary("Resuming " + this.filename + ": " + sink.receivedCount() + " of " + sink.blockCount() + " blocks already received.");
+			}
+			digest = new BlockDigest(sink, 0, blockCount, this.metrics);
+			writer = new DiskWriter(sink, pool, queueSize, digest);
+		} else {
+			digest = new BlockDigest(0, blockCount, this.metrics);
+			writer = new DiskWriter(new FileOutputStream(this.filename).getChannel(), pool, queueSize, digest);
+		}
+		BlockDecompressor decompressor = new BlockDecompressor();
+
+		Handshake.reply(this.senderSocket, this.ackTarget, codec, this.ackBuffer, fileSize, payload, sink, 0, blockCount);
+
+		/* Initialize tracking variables; a resumed file starts at the first block not yet received. */
+		long nextSeqNum = positional ? sink.firstMissing(0, blockCount) : 0;
+		boolean fileReceived = nextSeqNum == blockCount;
+        
+        /* Iterate over every message received until the end-of-file packet is written. */
+        while (fileReceived == false) {
+        	/* Receive the message and check its header. */
+	        int length = this.receiverSocket.receive(message, 0);
+	        if (!codec.decode(message, length)) {
+	        	if (codec.isCorrupt()) {
+	        		this.metrics.corruptPacket();
+	        		PacketLog.packet(PacketLog.CORRUPT, length);
+	        	}
+	        	continue;
+	        } else if (codec.type() == PacketHeader.TYPE_SYN) {
+	        	/* The SYN-ACK was lost; answer the sender again. */
+	        	Handshake.reply(this.senderSocket, this.ackTarget, codec, this.ackBuffer, fileSize, payload, sink, 0, blockCount);
+	        	continue;
+	        } else if (codec.type() != PacketHeader.TYPE_DATA) {
+	        	continue;
+	        }
+	        long seqNum = codec.seqNum();
+	        long arrivedAt = System.nanoTime();
+	        PacketLog.packet(PacketLog.RECEIVED, seqNum, codec.flags());
+	        this.metrics.received(length);
+	        if (SequenceNumbers.before(seqNum, nextSeqNum) || (positional && sink.has(seqNum))) {
+	        	this.metrics.duplicatePacket();
+	        }
+	        codec.selectPayload(message);
+	        if ((codec.flags() & PacketHeader.FLAG_COMPRESSED) != 0) {
+	        	/* Inflate the block into a fresh buffer, which stands in for the message from here on. */
+	        	ByteBuffer plain = pool.acquire();
+	        	plain.limit(payload);
+	        	if (!decompressor.inflate(message, plain, this.metrics)) {
+	        		pool.release(plain);
+	        		continue;
+	        	}
+	        	pool.release(message);
+	        	message = plain;
+	        }
+
+	        if (positional) {
+	        	/* Write any block within the window, then acknowledge every block received in order. */
+	        	if (SequenceNumbers.inWindow(seqNum, nextSeqNum, this.windowSize) && sink.mark(seqNum, message.remaining())) {
+	        		writer.put(seqNum, message);
+	        		message = pool.acquire();
+	        		PacketLog.packet(PacketLog.QUEUED, seqNum);
+	        	}
+	        	while (sink.has(nextSeqNum)) {
+	        		++nextSeqNum;
+	        	}
+	        	fileReceived = sink.isComplete();
+	        } else if (seqNum == nextSeqNum) {
+		        /* If the correct sequence number is received, write it to the file. */
+		        fileReceived = codec.isEof();
+		        writer.put(seqNum, message);
+		        message = pool.acquire();
+                PacketLog.packet(PacketLog.QUEUED, seqNum);
+            	++nextSeqNum;
+            }
+    		this.metrics.ackDelay(System.nanoTime() - arrivedAt);
+    		this.sendAck(nextSeqNum - 1, Math.min(this.windowSize, writer.remainingCapacity()));
+        }
+
+        /* Write every queued block and close the file, which completes its digest. */
+        writer.close();
+        decompressor.close();
+        PacketLog.summary("Write queue: " + writer.summary());
+
+        /*
+         * Compare digests with the sender. Until its FIN arrives, repeat the final acknowledgement to any packet
+         * resent because it was lost, which would otherwise leave the sender resending its window forever.
+         */
+        codec.encodeAck(this.ackBuffer, blockCount - 1, this.windowSize);
+        byte[] senderDigest = Handshake.linger(this.receiverSocket, this.senderSocket, this.ackTarget, codec, message,
+        	this.ackBuffer, blockCount, digest.value());
+        BlockDigest.verify(this.filename, digest.value(), senderDigest, this.metrics);
+        this.metrics.finish();
+
+        /* Close the sockets. */
+		this.senderSocket.close();
+        this.receiverSocket.close();
+
+        PacketLog.summary(this.filename + " successfully received in " + payload + "-byte packets.");
+	}
+
+	/**
+     * Function to send an acknowledgement to a sender.
+     * @param ackSeqNum    the most recently acknowledged sequence number
+     * @param window       the number of packets the receiver can take beyond it
+     */
+	private void sendAck(long ackSeqNum, int window) throws IOException {
+		this.codec.encodeAck(this.ackBuffer, ackSeqNum, window);
+		this.senderSocket.send(this.ackBuffer, this.ackTarget);
+		this.metrics.sent(this.ackBuffer.limit());
+		this.metrics.ackSent();
+		PacketLog.packet(PacketLog.ACK_SENT, ackSeqNum, PacketHeader.TYPE_ACK, window);
+	}
+
+	/** Function to print the usage instructions to the user. */
+	public static void printUserErrorMessage() {
+		System.err.println("Invalid command line arguments.");
+        System.out.println("Usage: java GoBackNReceiver <port> <filename> <window>");
+        System.out.println(
+            "\tport     - an integer specifying the port number this socket\n" + 
+            "\tfilename - a string specifying the name of the file to be written\n" +
+            "\twindow   - an integer specifying the window size of the transmission\n"
+        );
+	}
+	
+	public static void main(String[] args) throws IOException {
+		GoBackNReceiver receiver = null;
+		boolean inputOkay = false;
+
+		if (args.length != 3) {
+			printUserErrorMessage();
+			System.exit(1);
+		} else {
+			try {
+				String hostname = "localhost";
+				int port 		= Integer.parseInt(args[0]);
+				String filename = args[1];
+				int windowSize 	= Integer.parseInt(args[2]);
+
+				receiver = new GoBackNReceiver(
+					hostname, 
+					port, 
+					filename, 
+					windowSize
+				);
+				inputOkay = true;
+			} catch (NumberFormatException e) {
+				printUserErrorMessage();
+				System.exit(1);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+
+		if (inputOkay) {
+			receiver.start();
+			receiver.receiveFile();
+		}
+	}
+}
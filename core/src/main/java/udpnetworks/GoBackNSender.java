@@ -0,0 +1,457 @@
+/**
+ * GoBackNSender.java
+ * @author Hugh Han 
+ */
+
+package udpnetworks;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.text.*;
+import java.util.*;
+
+public class GoBackNSender {
+
+	/* Constants */
+	private static final int PORT_OFFSET = 1; 	  // Port offset used to receive acknowledgements
+	private static final int DUPACK_THRESHOLD = 3;  // Duplicate acknowledgements that trigger a fast retransmit
+	
+	/* Instance variables */
+	private InetAddress address;			// the address to be sent to
+	private int port;						// the port to be sent to
+	private String filename;				// the name of the file to be sent
+	private FileBlockSource source;			// the blocks of the file to be sent
+	private int timeout;					// the initial retry timeout
+	private RttEstimator rtt;				// the estimator of the retry timeout
+	private CongestionController cc;		// the controller of the congestion window
+	private Pacer pacer;					// the pacer spacing packets out over the round trip
+	private int receiveWindow;				// the window last advertised by the receiver
+	private TransferMetrics metrics;		// the metrics of the transfer
+	private long[] sentAt;					// the send time of each packet in flight, indexed by sequence number
+	private boolean[] resent;				// whether each packet in flight has been retransmitted
+	private long highestSent;				// the highest sequence number sent so far
+	private int windowSize;					// the window size of each transmission
+	private InetSocketAddress target;		// the address and port to be sent to
+	private Transport senderSocket;    		// the sender socket
+	private Transport receiverSocket;		// the receiver socket
+	private PacketCodec codec;				// the codec used to encode and decode packets
+	private ByteBuffer sendBuffer;			// the reusable buffer data packets are encoded into
+	private ByteBuffer ackBuffer;			// the reusable buffer acknowledgements are received into
+	private int payload;					// the payload size agreed with the receiver
+	private boolean probed;					// whether the payload size was found by probing the path MTU
+	private BlockCompressor compressor;		// the compressor of blocks, or null if compression is off
+	private ResumePoint resume;				// the blocks the receiver already has, or null
+	private BlockDigest digest;				// the digest of the file, taken as each block is first sent
+	private ByteBuffer skipped;				// the buffer blocks the receiver already has are read into for the digest
+	private long startTime;
+	private long endTime;
+	private int retransmissions;			// the times the window was resent, on a timeout or a fast retransmit
+	private int fastRetransmissions;		// the times it was resent on duplicate acknowledgements
+	
+	/**
+     * Constructor for GoBackNSender.
+     * @param hostname    hostname of the address being sent to
+     * @param port        port number being sent to
+     * @param filename    name of the file to be sent
+     * @param timeout 	  retry timeout value
+     * @param windowSize  size of each transmission window
+     */
+	public GoBackNSender(String hostname, int port, String filename, int timeout, int windowSize) throws IOException {
+		this.address = InetAddress.getByName(hostname);
+		this.port = port;
+		this.filename = filename;
+		this.timeout = timeout;
+		this.windowSize = windowSize;
+		this.retransmissions = 0;
+		this.fastRetransmissions = 0;
+		this.rtt = RttEstimator.fromOptions(timeout);
+		this.cc = CongestionController.fromOptions(windowSize);
+		this.receiveWindow = windowSize;
+		this.metrics = new TransferMetrics("GoBackN", "sender");
+		this.sentAt = new long[windowSize + 1];
+		this.resent = new boolean[windowSize + 1];
+		this.highestSent = -1;
+		this.target = new InetSocketAddress(this.address, this.port);
+		this.codec = new PacketCodec(TransferOptions.payload());
+	}
+
+	/** Function to start the sender and receiver sockets. */
+	public void start() throws IOException {
+		this.senderSocket = Transport.open(null);
+        PacketLog.summary(
+            "Sender socket running on " + 
+            this.senderSocket.localAddress().getAddress().toString() + ":" + 
+            this.senderSocket.localAddress().getPort() + "."
+        );
+        this.receiverSocket = Transport.open(new InetSocketAddress(this.port + PORT_OFFSET));
+        PacketLog.summary(
+            "Receiver socket running on " + 
+            this.receiverSocket.localAddress().getAddress().toString() + ":" + 
+            this.receiverSocket.localAddress().getPort() + "."
+        );
+        this.sendBuffer = this.senderSocket.newBufferPool(1, this.codec.packetCapacity()).acquire();
+        this.ackBuffer = this.receiverSocket.newBufferPool(1, this.codec.packetCapacity()).acquire();
+	}
+	
+	/** Function to send the file. */
+	public void sendFile() throws IOException {
+
+		/* Start a timer to time the file transmission. */
+		this.startTimer();
+
+		/* Open the file to be sent; blocks are read from it on demand, once their size is agreed. */
+		this.source = new FileBlockSource(this.filename, this.codec.payloadSize());
+		this.metrics.start(this.source.size());
+
+		/* Find the largest payload that crosses the path unfragmented, if asked to. */
+		int payload = this.codec.payloadSize();
+		if (TransferOptions.probePathMtu()) {
+			payload = PathMtu.probe(this.senderSocket, this.receiverSocket, this.target, this.codec, this.ackBuffer, payload, this.rtt);
+			this.probed = true;
+		}
+
+		/* Announce the transfer, the size of the file and the payload size proposed to the receiver. */
+		this.payload = Handshake.connect(this.senderSocket, this.receiverSocket, this.target, this.codec, this.ackBuffer,
+			this.source.size(), 1, 0, payload, this.rtt);
+		this.resume = this.codec.resumePoint(this.ackBuffer);
+		this.source.resize(this.payload);
+		this.metrics.payloadBytes(this.payload);
+		this.pacer = Pacer.fromOptions(PacketHeader.MAX_SIZE + this.payload, 1);
+
+		/* Deflate each block that shrinks, if compression is on. */
+		int level = TransferOptions.compressionLevel();
+		if (level > 0) {
+			this.compressor = new BlockCompressor(level, this.payload, this.metrics);
+		}
+		
+		/* Initialize tracking variables; a resumed transfer starts at the first block the receiver lacks. */
+		long seqNum = this.resume != null ? this.resume.seqNum() : 0;
+		long base = seqNum - 1;
+		long finalSeqNum = this.source.finalSeqNum();
+		boolean fileSent = base == finalSeqNum;
+		this.highestSent = base;
+		this.metrics.resumed(seqNum);
+		this.digest = new BlockDigest(0, this.source.blockCount(), this.metrics);
+		for (long skippedSeqNum = 0; skippedSeqNum < seqNum; ++skippedSeqNum) {
+			this.digestSkipped(skippedSeqNum);
+		}
+		int dupAcks = 0;
+		long recover = -1;  // the highest packet sent when the window was last resent
+		
+		/* Iterate over every message to send. */
+		while (fileSent == false) {
+
+			/* A receiver writing out of order may acknowledge past packets about to be resent; skip them. */
+			if (SequenceNumbers.before(seqNum, base + 1)) {
+				seqNum = base + 1;
+			}
+			
+			/* Send while the packets in flight fit in the congestion and receive windows, paced over the round trip. */
+			this.pacer.window(this.sendWindow(), PacketHeader.MAX_SIZE + this.payload, this.rtt.minRttNanos());
+			while (seqNum - base <= this.sendWindow() && !SequenceNumbers.after(seqNum, finalSeqNum)) {
+				if (this.resume != null && this.resume.has(seqNum)) {
+					this.skipPacket(seqNum);
+				} else {
+					this.sendPacket(seqNum, finalSeqNum);
+				}
+				++seqNum;
+			} 
+			
+			/* Check for acknowledgements. */
+			try {
+				long ackSeqNum = this.receiveAck(base);
+				if (ackSeqNum != base) {
+					base = ackSeqNum;
+					dupAcks = 0;
+				} else if (++dupAcks == DUPACK_THRESHOLD && !SequenceNumbers.before(base, recover)) {
+					/*
+					 * The receiver re-acknowledges the base for every packet after a lost one, so three duplicates
+					 * mean base + 1 was lost: resend from it now instead of waiting for the timeout. Duplicates
+					 * caused by the rest of the old window are ignored until the base passes the recovery point.
+					 */
+					seqNum = base + 1;
+					recover = this.highestSent;
+					this.cc.onLoss();
+					PacketLog.packet(PacketLog.FAST_RETRANSMIT, seqNum, this.highestSent);
+					this.metrics.fastRetransmit();
+					++this.retransmissions;
+					++this.fastRetransmissions;
+				}
+			}  catch (SocketTimeoutException e) {
+				seqNum = base + 1;
+				recover = this.highestSent;
+				dupAcks = 0;
+				if (this.rtt.backoff(this.sentAt[this.slot(seqNum)])) {
+					this.cc.onTimeout();
+				}
+				PacketLog.packet(PacketLog.TIMEOUT, seqNum, this.highestSent);
+				this.metrics.timeout();
+				++this.retransmissions;
+			}
+
+			/* Exit when we reach the final sequence number. */
+			if (base == finalSeqNum) {
+				fileSent = true;
+			}
+		}
+
+		/* Compare digests of the file with the receiver. */
+		byte[] receiverDigest = Handshake.finish(this.senderSocket, this.receiverSocket, this.target, this.codec, this.ackBuffer,
+			this.source.blockCount(), this.digest.value(), this.rtt);
+		BlockDigest.verify(this.filename, this.digest.value(), receiverDigest, this.metrics);
+
+		/* Close the sockets and the file. */
+		this.senderSocket.close();
+		this.receiverSocket.close();
+		this.source.close();
+		if (this.compressor != null) {
+			this.compressor.close();
+		}
+
+		/* End the timer that times the file transmission. */
+		this.endTimer();
+		this.metrics.finish();
+
+		PacketLog.summary(this.filename + " successfully sent to " + this.address + ":" + this.port);
+	}
+
+	/** 
+	 * Function to send a single packet. 
+	 * @param seqNum 		   the sequence number of the message to be sent
+	 * @param finalSeqNum      the final sequence number of the file
+	 */
+	private void sendPacket(long seqNum, long finalSeqNum) throws IOException {
+		int flag = (seqNum == finalSeqNum) ? PacketHeader.FLAG_EOF : 0;
+		this.codec.encodeData(this.sendBuffer, flag, seqNum, this.source);
+		int offset = this.sendBuffer.limit() - this.source.blockSize(seqNum);
+		if (SequenceNumbers.after(seqNum, this.highestSent)) {
+			/* The digest takes each block as it is first sent, before it is compressed. */
+			this.digest.add(seqNum, this.sendBuffer.position(offset));
+			this.sendBuffer.position(0);
+		}
+		if (this.compressor != null && this.compressor.compress(this.sendBuffer, offset)) {
+			flag |= PacketHeader.FLAG_COMPRESSED;
+			this.codec.seal(this.sendBuffer);
+		}
+		this.pacer.pace(this.sendBuffer.limit());
+		this.senderSocket.send(this.sendBuffer, this.target);
+		PacketLog.packet(PacketLog.SENT, seqNum, flag);
+
+		/* Record the send time, and whether this is a retransmission, for RTT sampling. */
+		int slot = this.slot(seqNum);
+		this.sentAt[slot] = System.nanoTime();
+		this.resent[slot] = !SequenceNumbers.after(seqNum, this.highestSent);
+		if (!this.resent[slot]) {
+			this.highestSent = seqNum;
+			this.metrics.sent(this.sendBuffer.limit());
+		} else {
+			this.metrics.resent(this.sendBuffer.limit());
+		}
+	}
+
+	/**
+	 * Returns whether an acknowledgement past every packet sent may be taken: a receiver resuming the transfer
+	 * can hold blocks beyond those its resume point told of, and acknowledges them once the gap before them fills.
+	 * @param ackSeqNum  the sequence number acknowledged
+	 * @return whether the transfer is resumed and the acknowledgement is within the file
+	 */
+	private boolean resumedThrough(long ackSeqNum) {
+		return this.resume != null && !SequenceNumbers.after(ackSeqNum, this.source.finalSeqNum());
+	}
+
+	/**
+	 * Function to pass over a packet the receiver already has from the transfer it resumes, as if it were
+	 * sent, so acknowledgements covering it are taken.
+	 * @param seqNum  the sequence number of the packet
+	 */
+	private void skipPacket(long seqNum) throws IOException {
+		int slot = this.slot(seqNum);
+		this.resent[slot] = true;
+		if (SequenceNumbers.after(seqNum, this.highestSent)) {
+			this.highestSent = seqNum;
+			this.metrics.resumed(1);
+			this.digestSkipped(seqNum);
+		}
+	}
+
+	/**
+	 * Adds a block the receiver already has to the digest of the file, reading it from the file.
+	 * @param seqNum  the sequence number of the block
+	 */
+	private void digestSkipped(long seqNum) throws IOException {
+		if (this.skipped == null) {
+			this.skipped = ByteBuffer.allocate(this.payload);
+		}
+		this.skipped.clear();
+		this.source.read(seqNum, this.skipped);
+		this.skipped.flip();
+		this.digest.add(seqNum, this.skipped);
+	}
+
+	/**
+	 * Returns the number of packets that may be in flight: the smaller of the congestion window, which never
+	 * exceeds the window size, and the receiver's window. At least one packet is always allowed, so a sender
+	 * facing a closed receive window keeps probing it.
+	 * @return the send window in packets
+	 */
+	private int sendWindow() {
+		return Math.max(1, Math.min(this.cc.window(), this.receiveWindow));
+	}
+
+	/**
+	 * Returns the slot of the send window a sequence number maps to.
+	 * @param seqNum  the sequence number
+	 * @return the index of the slot in the send window
+	 */
+	private int slot(long seqNum) {
+		return (int) Long.remainderUnsigned(seqNum, this.sentAt.length);
+	}
+	
+	/**
+	 * Function to receieve acknowledgements.
+	 * @param base  the highest sequence number acknowledged so far
+	 * @return the new base, or the old base if the acknowledgement is a duplicate
+	 */
+	private long receiveAck(long base) throws IOException, SocketTimeoutException {
+
+		while (true) {
+			/* Receive an acknowledgement and check the sequence number. */
+			int length = this.receiverSocket.receive(this.ackBuffer, this.rtt.rtoMillis());
+	        if (!this.codec.decode(this.ackBuffer, length)) {
+	        	if (this.codec.isCorrupt()) {
+	        		this.metrics.corruptPacket();
+	        		PacketLog.packet(PacketLog.CORRUPT, length);
+	        	}
+	        	continue;
+	        } else if (this.codec.type() != PacketHeader.TYPE_ACK) {
+	        	continue;
+	        }
+        	long ackSeqNum = this.codec.seqNum();
+        	PacketLog.packet(PacketLog.RECEIVED, ackSeqNum, this.codec.type());
+        	this.metrics.received(length);
+        	this.metrics.ackReceived();
+        	if (this.codec.window() >= 0) {
+        		this.receiveWindow = this.codec.window();
+        	}
+
+			/* 
+			 * If the acknowledged sequence number is after the base, set the base to that value. A repeat of
+			 * the base while packets are outstanding is a duplicate. Otherwise, the acknowledgement is stale,
+			 * and we will attempt to re-receive an acknowledgement.
+			 */
+			boolean ahead = SequenceNumbers.after(ackSeqNum, this.highestSent);
+			if (SequenceNumbers.before(base, ackSeqNum) && (!ahead || this.resumedThrough(ackSeqNum))) {
+				/* Time the newly acknowledged packet, unless it was retransmitted (Karn's rule). */
+				int slot = this.slot(ackSeqNum);
+				long sample = 0;
+				if (ahead) {
+					this.metrics.resumed(ackSeqNum - this.highestSent);
+					while (SequenceNumbers.before(this.highestSent, ackSeqNum)) {
+						this.digestSkipped(++this.highestSent);
+					}
+				} else if (!this.resent[slot]) {
+					sample = System.nanoTime() - this.sentAt[slot];
+					this.rtt.sample(sample);
+					this.metrics.rtt(sample);
+				}
+				this.cc.onAck((int) (ackSeqNum - base), sample);
+				return ackSeqNum;
+			} else if (ackSeqNum == base && SequenceNumbers.before(base, this.highestSent)) {
+				this.metrics.duplicateAck();
+				return base;
+			}
+		}
+	}
+
+	/**
+	 * Sets the start time in milliseconds of the file transmission.
+	 * @return the start time in milliseconds of the file transmission
+	 */
+	private long startTimer() {
+		this.startTime = System.currentTimeMillis();
+		return this.startTime;
+	}
+
+	/**
+	 * Sets the end time in milliseconds of the file transmission.
+	 * @return the end time in milliseconds of the file transmission
+	 */
+	private long endTimer() {
+		this.endTime = System.currentTimeMillis();
+		return this.endTime;
+	}
+
+	/**
+	 * Returns the elapsed time in milliseconds of the file transmission.
+	 * @return the elapsed time in milliseconds of the file transmission
+	 */
+	public long getElapsedTime() {
+		return this.endTime - this.startTime;
+	}
+
+	/** Function to print the transmission details to stdout. */
+	public void printTransmissionDetails() {
+		/* Calculate file transfer details. */
+        double fsizeKb = this.source.size() / 1024.0;
+        double transferTime = this.metrics.elapsedNanos() / 1e9;
+        double throughput = transferTime > 0 ? fsizeKb / transferTime : 0;
+
+		PacketLog.summary(
+            "{" + 
+            "\n\tFile Size: " + String.format("%.0f", fsizeKb) + "kb," + 
+            "\n\tTransfer Time: " + String.format("%.3f", transferTime) + "s," +
+            "\n\tThroughput: " + String.format("%.3f", throughput) + "kb/s," +
+            "\n\tRetransmissions: " + this.metrics.getRetransmits() + " packets in " + this.retransmissions +
+                " events (" + this.fastRetransmissions + " fast)," +
+            "\n\tPayload: " + this.payload + " bytes (" + (this.probed ? "path MTU probed" : "negotiated") + ")," +
+            (this.compressor != null ? "\n\tCompression: " + this.metrics.compressionSummary() + "," : "") +
+            (this.resume != null ? "\n\tResumed: " + this.metrics.getResumedBlocks() + " blocks already received," : "") +
+            "\n\tVerified: " + (this.metrics.getVerifiedRanges() > 0 ? "yes" : "no") + " (" + BlockDigest.ALGORITHM + ")," +
+            "\n\tCorrupt Packets: " + this.metrics.getCorruptPackets() + "," +
+            "\n\tRTT: " + this.rtt.summary() + "," +
+            "\n\tCongestion Window: " + this.cc.window() + " packets (" + this.cc.name() + ")," +
+            "\n\tPacing: " + this.pacer.summary() +
+            "\n}"
+        );
+	}
+
+	/** Function to print the usage instructions to the user. */
+	public static void printUserErrorMessage() {
+		System.err.println("Invalid command line arguments.");
+        System.out.println("Usage: java GoBackNSender localhost <port> <filename> <timeout> <window>");
+        System.out.println(
+            "\tport     - an integer specifying the port number of the receiver socket\n" + 
+            "\tfilename - a string specifying the name of the file to be sent\n" +
+            "\ttimeout  - an integer specifying the initial timeout value of the socket in ms\n" +
+            "\twindow   - an integer specifying the window size of the transmission\n"
+        );
+	}
+	
+	public static void main(String[] args) throws Exception {
+		if (args.length != 5) {
+            printUserErrorMessage();
+        } else {
+            try {
+                GoBackNSender sender = new GoBackNSender(
+                    args[0], 					// String - hostname (localhost)
+                    Integer.parseInt(args[1]), 	// int 	  - port number
+                    args[2], 					// String - filename
+                    Integer.parseInt(args[3]), 	// int 	  - retry timeout
+                    Integer.parseInt(args[4])	// int 	  - window size
+                );
+                sender.start();
+                sender.sendFile();
+                sender.printTransmissionDetails();
+            } catch (NumberFormatException e) {
+                printUserErrorMessage();
+            } catch (FileNotFoundException e) {
+            	System.out.println(args[2] + " does not exist.");
+            } catch (IOException e) {
+            	e.printStackTrace();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+	}
+}
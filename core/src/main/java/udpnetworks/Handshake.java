@@ -0,0 +1,257 @@
+/**
+ * Handshake.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+
+/**
+ * The handshakes that open and close a windowed transfer: the opening one,
+ * so the receiver learns the size of the file before the first data packet
+ * arrives, and the closing one, so both ends learn the file arrived intact.
+ *
+ * The sender sends a SYN carrying the file size, and the number of
+ * parallel streams it is split across, and resends it on every timeout
+ * until the receiver answers with a SYN-ACK echoing the size. The
+ * receiver answers every SYN it receives, including duplicates that arrive
+ * once the transfer is under way because a SYN-ACK was lost.
+ *
+ * The SYN also proposes the largest payload the sender means to send, and
+ * the SYN-ACK carries the smaller of it and the largest the receiver takes,
+ * which is the size of every block of the file but the last. A peer that
+ * names no size is taken to use 1024 bytes. While it waits for a SYN the
+ * receiver answers the sender's path MTU probes, if it sends any.
+ *
+ * A receiver resuming a transfer cut short tells the sender in its SYN-ACK
+ * which blocks of the sender's range it already has, and the sender sends
+ * only the others; a sender that finds no resume point in the SYN-ACK
+ * sends its whole range.
+ *
+ * Once every block of its range is acknowledged, the sender sends a FIN
+ * carrying its digest of the range, and resends it until the receiver,
+ * once every block is written, answers with a FIN-ACK carrying its own.
+ * Each end compares the two. The receiver lingers after answering, so a
+ * lost FIN-ACK is answered again, and until the first FIN it also repeats
+ * its final acknowledgement to any data packet resent because that was
+ * lost, so neither end waits out the other. A sender that hears nothing
+ * gives up after a while and reports the range as unverified.
+ */
+public class Handshake {
+
+    /** Constants. */
+    static final int MAX_ATTEMPTS = 20;  // SYNs sent before the sender gives up
+    private static final int RESUME_OVERHEAD = 16;  // SYN-ACK payload bytes taken before the resume bitmap
+    private static final int FIN_WAIT = 250;         // Least time in milliseconds a FIN is waited for
+    private static final int FIN_ATTEMPTS = 40;      // FINs sent before the sender gives up
+    private static final int LINGER = 1000;          // Time in milliseconds the receiver answers FINs after the last
+
+    /** Not instantiable. */
+    private Handshake() {}
+
+    /**
+     * Opens a transfer from the sender's side.
+     * @param out          the transport the SYN is sent on
+     * @param in           the transport the SYN-ACK is received on
+     * @param target       the address of the receiver
+     * @param codec        the codec used to encode and decode packets
+     * @param buf          a buffer large enough to hold a packet
+     * @param fileSize     the size of the file in bytes
+     * @param streams      the number of parallel streams the file is split across
+     * @param parityGroup  the blocks each parity group covers, or 0 for no parity packets
+     * @param payload      the largest payload the sender proposes to send in bytes
+     * @param rtt          the estimator timing the handshake
+     * @return the payload size agreed with the receiver in bytes
+     */
+    public static int connect(Transport out, Transport in, SocketAddress target, PacketCodec codec, ByteBuffer buf,
+                              long fileSize, int streams, int parityGroup, int payload, RttEstimator rtt) throws IOException {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; ++attempt) {
+            codec.encodeSyn(buf, fileSize, streams, parityGroup, payload);
+            out.send(buf, target);
+            long sentAt = System.nanoTime();
+            PacketLog.packet(PacketLog.SYN_SENT, fileSize);
+            try {
+                while (true) {
+                    int length = in.receive(buf, rtt.rtoMillis());
+                    if (codec.decode(buf, length) && codec.type() == PacketHeader.TYPE_SYN_ACK && codec.seqNum() == fileSize) {
+                        PacketLog.packet(PacketLog.SYN_ACK_RECEIVED, fileSize);
+                        /* A ReceiverServer names the session the rest of the transfer is stamped with. */
+                        codec.session(codec.sessionId());
+                        /* Time the handshake, unless the SYN was resent (Karn's rule). */
+                        if (attempt == 0) {
+                            rtt.sample(System.nanoTime() - sentAt);
+                        }
+                        return codec.payload() > 0 ? Math.min(payload, codec.payload()) : PacketCodec.DEFAULT_PAYLOAD;
+                    }
+                }
+            } catch (SocketTimeoutException e) {
+                rtt.backoff(sentAt);
+            }
+        }
+        throw new SocketTimeoutException("receiver did not answer " + MAX_ATTEMPTS + " handshakes");
+    }
+
+    /**
+     * Waits for a transfer from the receiver's side, which then answers it
+     * with reply once it has opened the file.
+     * @param in          the transport the SYN is received on
+     * @param out         the transport the SYN-ACK is sent on
+     * @param ackTarget   the address acknowledgements are sent to
+     * @param codec       the codec used to encode and decode packets
+     * @param message     a buffer large enough to hold a packet
+     * @param ackBuffer   the buffer probe acknowledgements are encoded into
+     * @return the size of the file in bytes; the stream count, parity group size and proposed payload size are
+     *         left in the codec, and agree gives the payload size to answer
+     */
+    public static long accept(Transport in, Transport out, SocketAddress ackTarget, PacketCodec codec,
+                              ByteBuffer message, ByteBuffer ackBuffer) throws IOException {
+        while (true) {
+            int length = in.receive(message, 0);
+            if (!codec.decode(message, length)) {
+                continue;
+            } else if (codec.type() == PacketHeader.TYPE_PROBE) {
+                PathMtu.answer(out, ackTarget, codec, ackBuffer, length);
+            } else if (codec.type() == PacketHeader.TYPE_SYN) {
+                long fileSize = codec.seqNum();
+                PacketLog.packet(PacketLog.SYN_RECEIVED, fileSize);
+                return fileSize;
+            }
+        }
+    }
+
+    /**
+     * Returns the payload size a receiver agrees to for the last decoded SYN.
+     * @param codec       the codec the SYN was decoded with
+     * @param maxPayload  the largest payload the receiver takes in bytes
+     * @return the smaller of the size the SYN proposes and maxPayload
+     */
+    public static int agree(PacketCodec codec, int maxPayload) {
+        return Math.min(maxPayload, codec.payload() > 0 ? codec.payload() : PacketCodec.DEFAULT_PAYLOAD);
+    }
+
+    /**
+     * Answers a SYN.
+     * @param out        the transport the SYN-ACK is sent on
+     * @param ackTarget  the address acknowledgements are sent to
+     * @param codec      the codec used to encode packets
+     * @param ackBuffer  the buffer the SYN-ACK is encoded into
+     * @param fileSize   the size of the file in bytes
+     * @param payload    the payload size agreed to in bytes
+     */
+    public static void reply(Transport out, SocketAddress ackTarget, PacketCodec codec,
+                             ByteBuffer ackBuffer, long fileSize, int payload) throws IOException {
+        codec.encodeSynAck(ackBuffer, fileSize, payload);
+        out.send(ackBuffer, ackTarget);
+        PacketLog.packet(PacketLog.SYN_ACK_SENT, fileSize);
+    }
+
+    /**
+     * Answers a SYN for a range of a file, telling the sender which blocks
+     * of it are already received if the file is resumed.
+     * @param out          the transport the SYN-ACK is sent on
+     * @param ackTarget    the address acknowledgements are sent to
+     * @param codec        the codec used to encode packets
+     * @param ackBuffer    the buffer the SYN-ACK is encoded into
+     * @param fileSize     the size of the file in bytes
+     * @param payload      the payload size agreed to in bytes
+     * @param sink         the file being written, or null if it is written in order
+     * @param firstSeqNum  the first block of the sender's range
+     * @param endSeqNum    the block after the last one of the sender's range
+     */
+    public static void reply(Transport out, SocketAddress ackTarget, PacketCodec codec, ByteBuffer ackBuffer,
+                             long fileSize, int payload, FileBlockSink sink, long firstSeqNum, long endSeqNum) throws IOException {
+        if (sink == null || !sink.isResumed()) {
+            reply(out, ackTarget, codec, ackBuffer, fileSize, payload);
+            return;
+        }
+        /* The bitmap fills what is left of a packet of the agreed payload, which both ends take. */
+        long resumeSeqNum = sink.firstMissing(firstSeqNum, endSeqNum);
+        byte[] bitmap = new byte[payload - RESUME_OVERHEAD];
+        int bitmapLength = sink.bitmap(resumeSeqNum, endSeqNum, bitmap);
+        codec.encodeSynAck(ackBuffer, fileSize, payload, resumeSeqNum, bitmap, bitmapLength);
+        out.send(ackBuffer, ackTarget);
+        PacketLog.packet(PacketLog.SYN_ACK_SENT, fileSize);
+    }
+
+    /**
+     * Closes one range of a transfer from the sender's side, once every
+     * block of it is acknowledged.
+     * @param out        the transport the FIN is sent on
+     * @param in         the transport the FIN-ACK is received on
+     * @param target     the address of the receiver
+     * @param codec      the codec used to encode and decode packets
+     * @param buf        a buffer large enough to hold a packet
+     * @param endSeqNum  the block after the last one of the range
+     * @param digest     the sender's digest of the range
+     * @param rtt        the estimator of the round-trip time
+     * @return the receiver's digest of the range, or null if it did not answer
+     */
+    public static byte[] finish(Transport out, Transport in, SocketAddress target, PacketCodec codec, ByteBuffer buf,
+                                long endSeqNum, byte[] digest, RttEstimator rtt) throws IOException {
+        for (int attempt = 0; attempt < FIN_ATTEMPTS; ++attempt) {
+            codec.encodeFin(buf, PacketHeader.TYPE_FIN, endSeqNum, digest);
+            out.send(buf, target);
+            PacketLog.packet(PacketLog.FIN_SENT, endSeqNum);
+            try {
+                while (true) {
+                    /* the receiver answers only once its writes are done, so it is given longer than a round trip */
+                    int length = in.receive(buf, Math.max(FIN_WAIT, rtt.rtoMillis()));
+                    if (codec.decode(buf, length) && codec.type() == PacketHeader.TYPE_FIN_ACK && codec.seqNum() == endSeqNum) {
+                        PacketLog.packet(PacketLog.FIN_ACK_RECEIVED, endSeqNum);
+                        return codec.digest(buf);
+                    }
+                }
+            } catch (SocketTimeoutException e) {
+                /* resend it */
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Closes one range of a transfer from the receiver's side, once every
+     * block of it is written, answering FINs until the sender stops sending
+     * them and resent data packets with the final acknowledgement.
+     * @param in         the transport the FIN is received on
+     * @param out        the transport the FIN-ACK is sent on
+     * @param ackTarget  the address acknowledgements are sent to
+     * @param codec      the codec used to encode and decode packets
+     * @param message    a buffer large enough to hold a packet
+     * @param finalAck   the final acknowledgement, encoded and ready to be sent again
+     * @param endSeqNum  the block after the last one of the range
+     * @param digest     the receiver's digest of the range
+     * @return the sender's digest of the range, or null if no FIN arrived
+     */
+    public static byte[] linger(Transport in, Transport out, SocketAddress ackTarget, PacketCodec codec, ByteBuffer message,
+                                ByteBuffer finalAck, long endSeqNum, byte[] digest) throws IOException {
+        byte[] senderDigest = null;
+        long deadline = System.nanoTime() + (long) FIN_WAIT * FIN_ATTEMPTS * 1000000L;
+        while (true) {
+            long wait = (deadline - System.nanoTime()) / 1000000L;
+            if (wait <= 0) {
+                return senderDigest;
+            }
+            int length;
+            try {
+                length = in.receive(message, (int) wait);
+            } catch (SocketTimeoutException e) {
+                return senderDigest;
+            }
+            if (!codec.decode(message, length)) {
+                continue;
+            } else if (codec.type() == PacketHeader.TYPE_DATA && senderDigest == null) {
+                out.send(finalAck, ackTarget);
+            } else if (codec.type() == PacketHeader.TYPE_FIN && codec.seqNum() == endSeqNum) {
+                PacketLog.packet(PacketLog.FIN_RECEIVED, endSeqNum);
+                senderDigest = codec.digest(message);
+                codec.encodeFin(message, PacketHeader.TYPE_FIN_ACK, endSeqNum, digest);
+                out.send(message, ackTarget);
+                PacketLog.packet(PacketLog.FIN_ACK_SENT, endSeqNum);
+                deadline = System.nanoTime() + LINGER * 1000000L;
+            }
+        }
+    }
+}
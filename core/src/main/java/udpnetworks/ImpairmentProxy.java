@@ -0,0 +1,323 @@
+/**
+ * ImpairmentProxy.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * A UDP relay that sits between a sender and a receiver on one host and
+ * impairs the traffic in both directions, in place of an emulated link.
+ *
+ * The sender is pointed at the relay's port instead of the receiver's.
+ * Data packets are forwarded to the receiver; replies the receiver sends
+ * straight back to their source (stop-and-wait acknowledgements) go back
+ * to the sender, and acknowledgements the windowed receivers send to their
+ * port plus one are taken on the receiver's port plus one and forwarded to
+ * the relay's port plus one, where the sender listens for them.
+ *
+ * Every packet may be dropped, duplicated, corrupted, delayed by a fixed delay plus
+ * uniform jitter, or held back long enough for later packets to overtake
+ * it, as described by a Profile for each direction. A profile may also
+ * drop every datagram too large for a given IP MTU, as a tunnel that
+ * black-holes fragments would. The random choices are
+ * seeded, so a run can be repeated exactly.
+ */
+public class ImpairmentProxy implements Runnable, Closeable {
+
+    /** Constants. */
+    private static final int MAX_PACKET = 65536;         // Largest datagram relayed
+    private static final int SOCKET_BUFFER = 4 << 20;    // Socket buffers large enough not to drop a window
+    private static final int UDP_OVERHEAD = 28;          // IPv4 and UDP header bytes of a datagram
+
+    /**
+     * The impairments applied to one direction of traffic, parsed from a
+     * comma separated list such as "delay=20,jitter=5,loss=0.01".
+     */
+    public static class Profile {
+        private double delayMillis;     // fixed one-way delay
+        private double jitterMillis;    // uniform jitter added to or taken from the delay
+        private double loss;            // probability a packet is dropped
+        private double duplicate;       // probability a packet is sent twice
+        private double corrupt;         // probability a bit of a packet is flipped
+        private double reorder;         // probability a packet is held back behind later ones
+        private int mtu;                // largest IP packet carried, or 0 for any
+        private long seed = 1;          // seed of the random choices
+
+        /**
+         * Parses a profile; keys left out are not impaired.
+         * @param spec  comma separated key=value pairs of delay, jitter, loss, dup, corrupt, reorder, mtu and seed
+         * @return the profile
+         */
+        public static Profile parse(String spec) {
+            Profile profile = new Profile();
+            if (spec == null || spec.trim().isEmpty() || spec.trim().equals("none")) {
+                return profile;
+            }
+            for (String pair : spec.split(",")) {
+                String[] kv = pair.trim().split("=", 2);
+                if (kv.length != 2) {
+                    throw new IllegalArgumentException("expected key=value: " + pair);
+                }
+                double value = Double.parseDouble(kv[1].trim());
+                switch (kv[0].trim()) {
+                    case "delay":   profile.delayMillis = value; break;
+                    case "jitter":  profile.jitterMillis = value; break;
+                    case "loss":    profile.loss = value; break;
+                    case "dup":     profile.duplicate = value; break;
+                    case "corrupt": profile.corrupt = value; break;
+                    case "reorder": profile.reorder = value; break;
+                    case "mtu":     profile.mtu = (int) value; break;
+                    case "seed":    profile.seed = (long) value; break;
+                    default:
+                        throw new IllegalArgumentException("unknown impairment: " + kv[0]);
+                }
+            }
+            return profile;
+        }
+
+        /**
+         * Returns the delay of one copy of a packet.
+         * @param random  the random choices of the direction
+         * @return the delay in nanoseconds
+         */
+        private long delayNanos(Random random) {
+            double millis = this.delayMillis + this.jitterMillis * (2 * random.nextDouble() - 1);
+            if (this.reorder > 0 && random.nextDouble() < this.reorder) {
+                /* long enough for any packet sent up to a millisecond later to overtake it */
+                millis += this.delayMillis + 2 * this.jitterMillis + 1;
+            }
+            return (long) (Math.max(0, millis) * 1e6);
+        }
+
+        public String toString() {
+            return String.format("delay=%s,jitter=%s,loss=%s,dup=%s,corrupt=%s,reorder=%s,mtu=%d,seed=%d",
+                this.delayMillis, this.jitterMillis, this.loss, this.duplicate, this.corrupt, this.reorder, this.mtu, this.seed);
+        }
+    }
+
+    /** A packet waiting out its delay. */
+    private static class Pending implements Comparable<Pending> {
+        private long due;                   // the time the packet is sent, in nanoseconds
+        private long order;                 // the order the packet was queued, breaking ties
+        private DatagramChannel channel;    // the channel the packet is sent from
+        private SocketAddress target;       // the address the packet is sent to
+        private ByteBuffer packet;          // a copy of the packet
+
+        public int compareTo(Pending other) {
+            int c = Long.compare(this.due, other.due);
+            return c != 0 ? c : Long.compare(this.order, other.order);
+        }
+    }
+
+    /** Instance variables. */
+    private DatagramChannel front;          // faces the sender, bound to the relay's port
+    private DatagramChannel back;           // faces the receiver, on an ephemeral port
+    private DatagramChannel acks;           // bound to the receiver's port plus one, taking its acknowledgements
+    private SocketAddress receiver;         // the receiver's data address
+    private SocketAddress senderAcks;       // the sender's acknowledgement address
+    private SocketAddress sender;           // the source of the last data packet, or null
+    private Profile dataProfile;
+    private Profile ackProfile;
+    private Random dataRandom;
+    private Random ackRandom;
+    private Selector selector;
+    private PriorityQueue<Pending> pending = new PriorityQueue<Pending>();
+    private ByteBuffer buffer = ByteBuffer.allocate(MAX_PACKET);
+    private long order;
+    private volatile boolean running = true;
+
+    /** Counters. */
+    private long forwarded;
+    private long dropped;
+    private long duplicated;
+    private long corrupted;
+
+    /**
+     * Constructor for ImpairmentProxy; the relay is bound but does not run until run() is called.
+     * @param hostname      the host of the sender, receiver and relay
+     * @param port          the port the sender sends to; its acknowledgements arrive at port plus one
+     * @param receiverPort  the port the receiver listens on; it acknowledges to receiverPort plus one
+     * @param dataProfile   the impairments of packets from the sender to the receiver
+     * @param ackProfile    the impairments of packets from the receiver to the sender
+     */
+    public ImpairmentProxy(String hostname, int port, int receiverPort, Profile dataProfile, Profile ackProfile) throws IOException {
+        InetAddress address = InetAddress.getByName(hostname);
+        this.receiver = new InetSocketAddress(address, receiverPort);
+        this.senderAcks = new InetSocketAddress(address, port + 1);
+        this.dataProfile = dataProfile;
+        this.ackProfile = ackProfile;
+        this.dataRandom = new Random(dataProfile.seed);
+        this.ackRandom = new Random(ackProfile.seed + 1);
+        this.selector = Selector.open();
+        this.front = this.open(new InetSocketAddress(address, port));
+        this.back = this.open(new InetSocketAddress(address, 0));
+        this.acks = this.open(new InetSocketAddress(address, receiverPort + 1));
+    }
+
+    /**
+     * Opens a non-blocking channel registered with the selector.
+     * @param bind  the local address to bind to
+     * @return the channel
+     */
+    private DatagramChannel open(InetSocketAddress bind) throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, SOCKET_BUFFER);
+        channel.setOption(StandardSocketOptions.SO_SNDBUF, SOCKET_BUFFER);
+        channel.bind(bind);
+        channel.configureBlocking(false);
+        channel.register(this.selector, SelectionKey.OP_READ);
+        return channel;
+    }
+
+    /** Relays packets until the proxy is closed. */
+    public void run() {
+        try {
+            while (this.running) {
+                Pending next = this.pending.peek();
+                if (next == null) {
+                    this.selector.select(100);
+                } else {
+                    long wait = next.due - System.nanoTime();
+                    if (wait >= 1000000L) {
+                        this.selector.select(wait / 1000000L);
+                    } else {
+                        this.selector.selectNow();
+                    }
+                }
+                this.selector.selectedKeys().clear();
+                this.drain(this.front);
+                this.drain(this.back);
+                this.drain(this.acks);
+                this.flush();
+            }
+        } catch (ClosedSelectorException e) {
+            /* closed while selecting */
+        } catch (IOException e) {
+            if (this.running) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Queues every packet waiting on a channel.
+     * @param channel  the channel to be read
+     */
+    private void drain(DatagramChannel channel) throws IOException {
+        while (true) {
+            this.buffer.clear();
+            SocketAddress source = channel.receive(this.buffer);
+            if (source == null) {
+                return;
+            }
+            this.buffer.flip();
+            if (channel == this.front) {
+                this.sender = source;
+                this.impair(this.buffer, this.back, this.receiver, this.dataProfile, this.dataRandom);
+            } else if (channel == this.back) {
+                if (this.sender != null) {
+                    this.impair(this.buffer, this.front, this.sender, this.ackProfile, this.ackRandom);
+                }
+            } else {
+                this.impair(this.buffer, this.acks, this.senderAcks, this.ackProfile, this.ackRandom);
+            }
+        }
+    }
+
+    /**
+     * Drops, duplicates, corrupts or delays a packet.
+     * @param packet   the packet
+     * @param channel  the channel it is to be sent from
+     * @param target   the address it is to be sent to
+     * @param profile  the impairments of its direction
+     * @param random   the random choices of its direction
+     */
+    private void impair(ByteBuffer packet, DatagramChannel channel, SocketAddress target, Profile profile, Random random) {
+        if (profile.mtu > 0 && packet.remaining() + UDP_OVERHEAD > profile.mtu) {
+            ++this.dropped;
+            return;
+        }
+        if (random.nextDouble() < profile.loss) {
+            ++this.dropped;
+            return;
+        }
+        int copies = random.nextDouble() < profile.duplicate ? 2 : 1;
+        if (copies > 1) {
+            ++this.duplicated;
+        }
+        long now = System.nanoTime();
+        for (int i = 0; i < copies; ++i) {
+            Pending p = new Pending();
+            p.due = now + profile.delayNanos(random);
+            p.order = this.order++;
+            p.channel = channel;
+            p.target = target;
+            p.packet = ByteBuffer.allocate(packet.remaining());
+            p.packet.put(packet.duplicate()).flip();
+            if (p.packet.hasRemaining() && random.nextDouble() < profile.corrupt) {
+                int bit = random.nextInt(8 * p.packet.remaining());
+                p.packet.put(bit >>> 3, (byte) (p.packet.get(bit >>> 3) ^ (1 << (bit & 7))));
+                ++this.corrupted;
+            }
+            this.pending.add(p);
+        }
+    }
+
+    /** Sends every packet whose delay has passed. */
+    private void flush() throws IOException {
+        long now = System.nanoTime();
+        while (!this.pending.isEmpty() && this.pending.peek().due <= now) {
+            Pending p = this.pending.poll();
+            p.channel.send(p.packet, p.target);
+            ++this.forwarded;
+        }
+    }
+
+    /** @return a summary of the packets relayed so far */
+    public String summary() {
+        return String.format("%d forwarded, %d dropped, %d duplicated, %d corrupted",
+            this.forwarded, this.dropped, this.duplicated, this.corrupted);
+    }
+
+    /** Function to stop the relay and close its sockets. */
+    public void close() throws IOException {
+        this.running = false;
+        this.selector.close();
+        this.front.close();
+        this.back.close();
+        this.acks.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 4) {
+            System.out.println("Usage: java ImpairmentProxy <port> <receiverport> [<impairments> [<ackimpairments>]]");
+            System.out.println(
+                "\tport          - the port the sender is pointed at\n" +
+                "\treceiverport  - the port the receiver listens on\n" +
+                "\timpairments   - e.g. delay=20,jitter=5,loss=0.01,dup=0.001,corrupt=0.001,reorder=0.01,mtu=1400,seed=1\n" +
+                "\t                (milliseconds and probabilities), applied in both directions\n" +
+                "\tackimpairments - impairments of the acknowledgement direction, if different"
+            );
+            System.exit(1);
+        }
+        Profile data = Profile.parse(args.length > 2 ? args[2] : null);
+        Profile ack = args.length > 3 ? Profile.parse(args[3]) : data;
+        final ImpairmentProxy proxy = new ImpairmentProxy(
+            "localhost", Integer.parseInt(args[0]), Integer.parseInt(args[1]), data, ack);
+        System.out.println("Relaying " + args[0] + " -> " + args[1] + " with " + data + ", acknowledgements with " + ack + ".");
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+                System.out.println("Relayed " + proxy.summary() + ".");
+            }
+        });
+        proxy.run();
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * LatencyHistogram.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+/**
+ * A histogram of durations in nanoseconds with log-linear buckets, in the
+ * manner of HdrHistogram.
+ *
+ * Values below 2^SUB_BITS nanoseconds get a bucket each; above that every
+ * power of two is split into 2^SUB_BITS equal buckets, so any recorded value
+ * is reported to within about 3% across the whole range of a long. The
+ * buckets are allocated once and recording is a few shifts and an
+ * increment, so a histogram can sit on the packet path. A histogram has a
+ * single writer; other threads may read it while it is written, and see
+ * a slightly stale but consistent-enough view for monitoring.
+ */
+public class LatencyHistogram {
+
+    /** Constants. */
+    private static final int SUB_BITS = 5;              // Buckets per power of two, as a power of two
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    /** Instance variables. */
+    private long[] counts;          // the number of values in each bucket
+    private volatile long count;    // the number of values recorded
+    private long sum;               // the sum of the values recorded
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    /** Constructor for LatencyHistogram. */
+    public LatencyHistogram() {
+        this.counts = new long[(64 - SUB_BITS + 1) * SUB_COUNT];
+    }
+
+    /**
+     * Returns the bucket a value falls in.
+     * @param value  the value, at least 0
+     * @return the index of the bucket
+     */
+    private static int bucket(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift + 1) * SUB_COUNT + (int) (value >>> shift) - SUB_COUNT;
+    }
+
+    /**
+     * Returns the highest value that falls in a bucket.
+     * @param bucket  the index of the bucket
+     * @return the highest value in the bucket
+     */
+    private static long highestValue(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_COUNT - 1;
+        long sub = bucket % SUB_COUNT + SUB_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    /**
+     * Records a value.
+     * @param nanos  the duration in nanoseconds; negative values count as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        ++this.counts[bucket(value)];
+        this.sum += value;
+        this.min = Math.min(this.min, value);
+        this.max = Math.max(this.max, value);
+        this.count = this.count + 1;
+    }
+
+    /** @return the number of values recorded */
+    public long count() {
+        return this.count;
+    }
+
+    /** @return the smallest value recorded, or 0 if none */
+    public long min() {
+        return this.count == 0 ? 0 : this.min;
+    }
+
+    /** @return the largest value recorded */
+    public long max() {
+        return this.max;
+    }
+
+    /** @return the mean of the values recorded, or 0 if none */
+    public double mean() {
+        long n = this.count;
+        return n == 0 ? 0 : (double) this.sum / n;
+    }
+
+    /**
+     * Returns a percentile of the values recorded.
+     * @param percentile  the percentile, from 0 to 100
+     * @return the highest value of the bucket the percentile falls in, capped at the maximum; 0 if empty
+     */
+    public long percentile(double percentile) {
+        long n = this.count;
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < this.counts.length; ++i) {
+            seen += this.counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValue(i), this.max);
+            }
+        }
+        return this.max;
+    }
+
+    /**
+     * Returns the histogram as a JSON object, in microseconds.
+     * @return the histogram as JSON
+     */
+    public String toJson() {
+        return String.format(
+            "{\"count\":%d,\"minUs\":%.3f,\"meanUs\":%.3f,\"p50Us\":%.3f,\"p90Us\":%.3f,\"p99Us\":%.3f,\"p999Us\":%.3f,\"maxUs\":%.3f}",
+            this.count(), this.min() / 1e3, this.mean() / 1e3, this.percentile(50) / 1e3, this.percentile(90) / 1e3,
+            this.percentile(99) / 1e3, this.percentile(99.9) / 1e3, this.max() / 1e3);
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * Pacer.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A token bucket spacing a sender's packets out in time rather than letting
+ * it put a whole window on the wire back to back, where it overflows
+ * shallow switch buffers and receive queues.
+ *
+ * The bucket is kept as the theoretical time the next byte may go out
+ * (the generic cell rate algorithm), which fills it while the sender is
+ * idle without a refill timer. Its rate is the slower of two: a cap in
+ * Mbit/s an operator sets so a bulk transfer leaves room for other
+ * traffic, and, for the windowed senders, the congestion window spread
+ * over the minimum round-trip time. The smoothed round-trip time would
+ * feed back on itself: a paced sender reads acknowledgements later, so its
+ * samples grow and its rate falls. The bucket holds a few packets, so a
+ * sender may burst that many before it is paced.
+ *
+ * Waits are measured with System.nanoTime. LockSupport.parkNanos
+ * overshoots by tens of microseconds, so a wait parks until the last
+ * SPIN_NANOS of it and spins through the rest. Bookkeeping is synchronized,
+ * as the selective repeat timer thread charges its retransmissions to the
+ * bucket; the wait itself holds no lock.
+ */
+public class Pacer {
+
+    /** Constants. */
+    private static final long SPIN_NANOS = 50000;  // The tail of a wait spun through rather than parked
+    private static final int GAIN = 2;             // Pacing rate over window / RTT, so pacing alone never holds a sender below its window
+
+    /** Instance variables. */
+    private double capNanosPerByte;  // the time a byte takes at the cap, or 0 for no cap
+    private boolean adaptive;        // whether the rate follows the congestion window and round-trip time
+    private int burstBytes;          // the bytes the bucket holds
+    private double nanosPerByte;     // the time a byte takes at the current rate, or 0 if unpaced
+    private long tolerance;          // the time the bucket holds at the current rate, in nanoseconds
+    private long next;               // the time the next byte may go out once the bucket is empty
+
+    /**
+     * Constructor for Pacer.
+     * @param capMbit     the cap on the rate in Mbit/s, or 0 for none
+     * @param adaptive    whether the rate follows the congestion window and round-trip time
+     * @param burstBytes  the bytes the bucket holds
+     */
+    public Pacer(double capMbit, boolean adaptive, int burstBytes) {
+        this.capNanosPerByte = capMbit > 0 ? 8e3 / capMbit : 0;
+        this.adaptive = adaptive;
+        this.burstBytes = burstBytes;
+        this.rate(this.capNanosPerByte);
+        this.next = System.nanoTime();
+    }
+
+    /**
+     * Creates the pacer of one stream of a windowed sender, from the
+     * TransferOptions. Parallel streams split the cap evenly.
+     * @param packetBytes  the size of a full data packet
+     * @param streams      the number of streams the transfer is split across
+     * @return a new pacer
+     */
+    public static Pacer fromOptions(int packetBytes, int streams) {
+        return new Pacer(TransferOptions.rateMbit() / streams, TransferOptions.pacing(),
+            TransferOptions.pacingBurst() * packetBytes);
+    }
+
+    /**
+     * Sets the rate the bucket fills at.
+     * @param nanosPerByte  the time a byte takes, or 0 if unpaced
+     */
+    private void rate(double nanosPerByte) {
+        this.nanosPerByte = nanosPerByte;
+        this.tolerance = (long) (this.burstBytes * nanosPerByte);
+    }
+
+    /**
+     * Spreads the send window over the round-trip time, at most at the cap.
+     * Called whenever either changes.
+     * @param window       the send window in packets
+     * @param packetBytes  the size of a full data packet
+     * @param rttNanos     the minimum round-trip time, or 0 before the first sample
+     */
+    public synchronized void window(int window, int packetBytes, long rttNanos) {
+        if (!this.adaptive) {
+            return;
+        }
+        double windowNanosPerByte = rttNanos > 0 ? (double) rttNanos / ((long) GAIN * window * packetBytes) : 0;
+        this.rate(Math.max(this.capNanosPerByte, windowNanosPerByte));
+    }
+
+    /**
+     * Waits until the bucket holds a packet, and takes it.
+     * @param bytes  the size of the packet
+     */
+    public void pace(int bytes) {
+        long now = System.nanoTime();
+        long sendAt = this.take(bytes, now);
+        if (sendAt - now > 0) {
+            waitUntil(sendAt);
+        }
+    }
+
+    /**
+     * Takes a packet sent without waiting, such as a retransmission, so the
+     * packets after it wait for it.
+     * @param bytes  the size of the packet
+     */
+    public void charge(int bytes) {
+        this.take(bytes, System.nanoTime());
+    }
+
+    /**
+     * Takes a packet from the bucket.
+     * @param bytes  the size of the packet
+     * @param now    the current time
+     * @return the time the packet may go out
+     */
+    private synchronized long take(int bytes, long now) {
+        if (this.nanosPerByte == 0) {
+            return now;
+        }
+        if (this.next - now < 0) {
+            this.next = now;
+        }
+        long sendAt = Math.max(now, this.next - this.tolerance);
+        this.next += (long) (bytes * this.nanosPerByte);
+        return sendAt;
+    }
+
+    /**
+     * Waits until a time, parking through all but the tail of the wait.
+     * @param deadline  the time to wait until, from System.nanoTime
+     */
+    private static void waitUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > SPIN_NANOS) {
+            LockSupport.parkNanos(remaining - SPIN_NANOS);
+        }
+        while (deadline - System.nanoTime() > 0) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /** @return the current rate in Mbit/s, or 0 if unpaced */
+    public synchronized double mbit() {
+        return this.nanosPerByte > 0 ? 8e3 / this.nanosPerByte : 0;
+    }
+
+    /** @return the cap and current rate, as one line */
+    public synchronized String summary() {
+        if (this.capNanosPerByte == 0 && this.nanosPerByte == 0) {
+            return "off";
+        }
+        return String.format("%.1f Mbit/s%s", this.mbit(),
+            this.capNanosPerByte > 0 ? String.format(" (capped at %.1f)", 8e3 / this.capNanosPerByte) : "");
+    }
+}
@@ -0,0 +1,617 @@
+/**
+ * PacketCodec.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+/**
+ * Encodes and decodes packets in place in reusable buffers.
+ *
+ * A packet is a PacketHeader followed by the payload. The payload of an
+ * acknowledgement starts with the receiver's window, the number of packets
+ * it can take beyond those acknowledged, as a varint. A selective
+ * acknowledgement follows it with a bitmap: its sequence number is the next
+ * one the receiver expects, every earlier one having arrived, and bit i
+ * (least significant first within each byte) is set if seqNum + 1 + i has
+ * arrived out of order. The payload of a SYN is the number of parallel
+ * streams the file is split across, then the parity group size (0 for no
+ * forward error correction), then the largest payload the sender proposes
+ * to send, as varints; the payload of a SYN-ACK is the payload size the
+ * receiver agrees to, followed, if the receiver is resuming the transfer, by
+ * the first block of the sender's range it lacks as a varint and a bitmap of
+ * the blocks after it that it has, laid out as in a selective
+ * acknowledgement. A parity packet carries the first block it covers in
+ * place of the sequence number, and its payload is the number of blocks it
+ * covers as a varint followed by their XOR. A path MTU probe is padded
+ * with zeros to the size it carries in place of the sequence number, and
+ * is answered by a probe acknowledgement echoing that size, whose payload
+ * is the number of bytes of the probe that arrived as a varint. A FIN
+ * carries the end of the sender's range in place of the sequence number,
+ * and its payload is the sender's digest of the range; a FIN-ACK echoes
+ * the end and carries the receiver's digest.
+ * Every packet is sealed with a CRC32C in its header once encoded, and
+ * decoding rejects a packet whose checksum does not match, so a corrupt
+ * packet is dropped and recovered like a lost one.
+ * Packets of a transfer to a ReceiverServer are stamped with the session
+ * ID it assigned, once the codec is told it with session(). Encoding
+ * writes the header and payload straight into a caller-supplied buffer and
+ * decoding only records where the payload lies within the received buffer,
+ * so a sender or receiver that reuses its buffers produces no garbage per
+ * packet.
+ * A PacketCodec holds the fields of the last decoded packet and must not be
+ * shared between threads.
+ */
+public class PacketCodec {
+
+    /** Constants. */
+    public static final int DEFAULT_PAYLOAD = 1024;                         // Payload of a peer that names none
+    public static final int MAX_PAYLOAD = 65507 - PacketHeader.MAX_SIZE;   // Largest payload a UDP datagram carries
+
+    /** Instance variables. */
+    private int payloadSize;              // the maximum payload of a packet
+    private PacketHeader header;          // the header of the last decoded packet
+    private int payloadOffset;            // the offset of the last decoded payload
+    private int payloadLength;            // the length of the last decoded payload
+    private int window;                   // the receiver window of the last decoded acknowledgement, or -1
+    private int bitmapOffset;             // the offset of the bitmap of the last decoded selective acknowledgement
+    private int streams;                  // the number of streams announced by the last decoded SYN
+    private int parityGroup;              // the parity group size announced by the last decoded SYN, or 0
+    private int parityCount;              // the number of blocks covered by the last decoded parity packet
+    private int payload;                  // the payload size of the last decoded SYN or SYN-ACK, or the bytes a probe delivered
+    private long resumeSeqNum;            // the resume point of the last decoded SYN-ACK, or -1
+    private int varint;                   // the value of the last varint read
+    private long varlong;                 // the value of the last long varint read
+    private long session;                 // the session ID stamped on encoded packets, or 0
+    private CRC32C crc;                   // the checksum packets are sealed and verified with
+    private boolean corrupt;              // whether the last packet failed to decode for its checksum
+
+    /**
+     * Constructor for PacketCodec.
+     * @param payloadSize  the maximum payload of a packet in bytes
+     */
+    public PacketCodec(int payloadSize) {
+        this.payloadSize = payloadSize;
+        this.header = new PacketHeader();
+        this.crc = new CRC32C();
+    }
+
+    /**
+     * Returns the size of a buffer large enough to hold any packet.
+     * @return the maximum size in bytes of a packet
+     */
+    public int packetCapacity() {
+        return PacketHeader.MAX_SIZE + this.payloadSize;
+    }
+
+    /**
+     * Returns the maximum payload of a packet.
+     * @return the maximum payload of a packet in bytes
+     */
+    public int payloadSize() {
+        return this.payloadSize;
+    }
+
+    /**
+     * Sets the session ID stamped on every packet encoded from now on.
+     * @param sessionId  the session ID, or 0 for none
+     */
+    public void session(long sessionId) {
+        this.session = sessionId;
+    }
+
+    /**
+     * Encodes a data packet whose payload is a block of a file. On return the
+     * buffer's position is 0 and its limit is the end of the packet.
+     * @param buf     the buffer the packet is written into
+     * @param flags   the packet flags
+     * @param seqNum  the sequence number of the block
+     * @param source  the file the block is read from
+     * @return the size in bytes of the packet
+     */
+    public int encodeData(ByteBuffer buf, int flags, long seqNum, FileBlockSource source) throws IOException {
+        buf.clear();
+        PacketHeader.encode(buf, PacketHeader.TYPE_DATA, flags, seqNum, this.session);
+        source.read(seqNum, buf);
+        buf.flip();
+        return this.seal(buf);
+    }
+
+    /**
+     * Encodes an acknowledgement packet with no receiver window. On return the
+     * buffer's position is 0 and its limit is the end of the packet.
+     * @param buf     the buffer the packet is written into
+     * @param seqNum  the sequence number being acknowledged
+     * @return the size in bytes of the packet
+     */
+    public int encodeAck(ByteBuffer buf, long seqNum) {
+        return this.encodeControl(buf, PacketHeader.TYPE_ACK, seqNum);
+    }
+
+    /**
+     * Encodes an acknowledgement packet. On return the buffer's position is 0
+     * and its limit is the end of the packet.
+     * @param buf     the buffer the packet is written into
+     * @param seqNum  the sequence number being acknowledged
+     * @param window  the receiver window in packets
+     * @return the size in bytes of the packet
+     */
+    public int encodeAck(ByteBuffer buf, long seqNum, int window) {
+        buf.clear();
+        PacketHeader.encode(buf, PacketHeader.TYPE_ACK, 0, seqNum, this.session);
+        PacketHeader.writeVarint(buf, window);
+        buf.flip();
+        return this.seal(buf);
+    }
+
+    /**
+     * Encodes a SYN announcing a transfer. On return the buffer's position is
+     * 0 and its limit is the end of the packet.
+     * @param buf          the buffer the packet is written into
+     * @param fileSize     the size of the file in bytes
+     * @param streams      the number of parallel streams the file is split across
+     * @param parityGroup  the blocks each parity group covers, or 0 for no parity packets
+     * @param payload      the largest payload the sender proposes to send in bytes
+     * @return the size in bytes of the packet
+     */
+    public int encodeSyn(ByteBuffer buf, long fileSize, int streams, int parityGroup, int payload) {
+        buf.clear();
+        PacketHeader.encode(buf, PacketHeader.TYPE_SYN, 0, fileSize, this.session);
+        PacketHeader.writeVarint(buf, streams);
+        PacketHeader.writeVarint(buf, parityGroup);
+        PacketHeader.writeVarint(buf, payload);
+        buf.flip();
+        return this.seal(buf);
+    }
+
+    /**
+     * Encodes a SYN-ACK accepting a transfer. On return the buffer's position
+     * is 0 and its limit is the end of the packet.
+     * @param buf       the buffer the packet is written into
+     * @param fileSize  the size of the file in bytes, echoed from the SYN
+     * @param payload   the payload size the receiver agrees to in bytes
+     * @return the size in bytes of the packet
+     */
+    public int encodeSynAck(ByteBuffer buf, long fileSize, int payload) {
+        return this.encodeSynAck(buf, fileSize, payload, -1, null, 0);
+    }
+
+    /**
+     * Encodes a SYN-ACK accepting a transfer, telling a sender resuming it
+     * which blocks of its range the receiver already has. On return the
+     * buffer's position is 0 and its limit is the end of the packet.
+     * @param buf           the buffer the packet is written into
+     * @param fileSize      the size of the file in bytes, echoed from the SYN
+     * @param payload       the payload size the receiver agrees to in bytes
+     * @param resumeSeqNum  the first block of the range the receiver lacks, or -1 if it is not resuming
+     * @param bitmap        the blocks after it the receiver has, bit i for resumeSeqNum + 1 + i
+     * @param bitmapLength  the number of bytes of the bitmap to send
+     * @return the size in bytes of the packet
+     */
+    public int encodeSynAck(ByteBuffer buf, long fileSize, int payload, long resumeSeqNum, byte[] bitmap, int bitmapLength) {
+        buf.clear();
+        PacketHeader.encode(buf, PacketHeader.TYPE_SYN_ACK, 0, fileSize, this.session);
+        PacketHeader.writeVarint(buf, payload);
+        if (resumeSeqNum >= 0) {
+            PacketHeader.writeVarint(buf, resumeSeqNum);
+            buf.put(bitmap, 0, bitmapLength);
+        }
+        buf.flip();
+        return this.seal(buf);
+    }
+
+    /**
+     * Encodes a path MTU probe, padded with zeros to the size it carries. On
+     * return the buffer's position is 0 and its limit is the end of the packet.
+     * @param buf   the buffer the packet is written into
+     * @param size  the size in bytes of the packet, no more than the buffer's capacity
+     * @return the size in bytes of the packet
+     */
+    public int encodeProbe(ByteBuffer buf, int size) {
+        buf.clear();
+        PacketHeader.encode(buf, PacketHeader.TYPE_PROBE, 0, size, this.session);
+        while (buf.position() < size) {
+            buf.put((byte) 0);
+        }
+        buf.flip();
+        return this.seal(buf);
+    }
+
+    /**
+     * Encodes a parity packet. On return the buffer's position is 0 and its
+     * limit is the end of the packet.
+     * @param buf          the buffer the packet is written into
+     * @param firstSeqNum  the first block the parity covers
+     * @param count        the number of blocks it covers
+     * @param parity       the XOR of the blocks, from index 0
+     * @param length       the size in bytes of the longest block
+     * @return the size in bytes of the packet
+     */
+    public int encodeParity(ByteBuffer buf, long firstSeqNum, int count, ByteBuffer parity, int length) {
+        /*
+         * The count must fit within packetCapacity(), whose MAX_SIZE allows a 10-byte varint for both the
+         * sequence number and the session ID. A non-negative first block takes at most 9 bytes and a count
+         * below 128 takes 1, so the header and count together stay within MAX_SIZE.
+         */
+        if (firstSeqNum < 0 || count >= 128) {
+            throw new IllegalArgumentException(
+                "parity packet for " + count + " blocks from " + firstSeqNum + " exceeds the packet capacity");
+        }
+        buf.clear();
+        PacketHeader.encode(buf, PacketHeader.TYPE_PARITY, 0, firstSeqNum, this.session);
+        PacketHeader.writeVarint(buf, count);
+        for (int i = 0; i < length; ++i) {
+            buf.put(parity.get(i));
+        }
+        buf.flip();
+        return this.seal(buf);
+    }
+
+    /**
+     * Encodes the answer to a path MTU probe. On return the buffer's position
+     * is 0 and its limit is the end of the packet.
+     * @param buf       the buffer the packet is written into
+     * @param size      the size the probe carries
+     * @param received  the number of bytes of the probe that arrived
+     * @return the size in bytes of the packet
+     */
+    public int encodeProbeAck(ByteBuffer buf, long size, int received) {
+        buf.clear();
+        PacketHeader.encode(buf, PacketHeader.TYPE_PROBE_ACK, 0, size, this.session);
+        PacketHeader.writeVarint(buf, received);
+        buf.flip();
+        return this.seal(buf);
+    }
+
+    /**
+     * Encodes a FIN or FIN-ACK closing a range of a transfer. On return the
+     * buffer's position is 0 and its limit is the end of the packet.
+     * @param buf        the buffer the packet is written into
+     * @param type       TYPE_FIN or TYPE_FIN_ACK
+     * @param endSeqNum  the sequence number after the last block of the range
+     * @param digest     the digest of the range
+     * @return the size in bytes of the packet
+     */
+    public int encodeFin(ByteBuffer buf, int type, long endSeqNum, byte[] digest) {
+        buf.clear();
+        PacketHeader.encode(buf, type, 0, endSeqNum, this.session);
+        buf.put(digest);
+        buf.flip();
+        return this.seal(buf);
+    }
+
+    /**
+     * Encodes a packet with no payload. On return the buffer's position is 0
+     * and its limit is the end of the packet.
+     * @param buf     the buffer the packet is written into
+     * @param type    the packet type
+     * @param seqNum  the sequence number, or the value carried in its place
+     * @return the size in bytes of the packet
+     */
+    public int encodeControl(ByteBuffer buf, int type, long seqNum) {
+        buf.clear();
+        PacketHeader.encode(buf, type, 0, seqNum, this.session);
+        buf.flip();
+        return this.seal(buf);
+    }
+
+    /**
+     * Encodes a selective acknowledgement. On return the buffer's position is
+     * 0 and its limit is the end of the packet.
+     * @param buf           the buffer the packet is written into
+     * @param cumAck        the next sequence number expected; all earlier ones have arrived
+     * @param window        the receiver window in packets
+     * @param bitmap        the bitmap of the sequence numbers after cumAck + 1 that have arrived
+     * @param bitmapLength  the number of bytes of the bitmap to be sent
+     * @return the size in bytes of the packet
+     */
+    public int encodeSack(ByteBuffer buf, long cumAck, int window, byte[] bitmap, int bitmapLength) {
+        buf.clear();
+        PacketHeader.encode(buf, PacketHeader.TYPE_SACK, 0, cumAck, this.session);
+        int windowSize = PacketHeader.writeVarint(buf, window);
+        buf.put(bitmap, 0, Math.min(bitmapLength, this.payloadSize - windowSize));
+        buf.flip();
+        return this.seal(buf);
+    }
+
+    /**
+     * Writes the checksum of a complete packet into its header, as every
+     * encode method does; a packet changed after it was encoded must be
+     * sealed again.
+     * @param buf  the buffer holding the packet between index 0 and its limit
+     * @return the size in bytes of the packet
+     */
+    public int seal(ByteBuffer buf) {
+        buf.putInt(PacketHeader.CHECKSUM_OFFSET, this.checksum(buf));
+        return buf.limit();
+    }
+
+    /**
+     * Computes the checksum of a packet, skipping the bytes it is stored in.
+     * @param buf  the buffer holding the packet between index 0 and its limit
+     * @return the CRC32C of the packet
+     */
+    private int checksum(ByteBuffer buf) {
+        int limit = buf.limit();
+        this.crc.reset();
+        buf.limit(PacketHeader.CHECKSUM_OFFSET).position(0);
+        this.crc.update(buf);
+        buf.limit(limit).position(PacketHeader.FIXED_SIZE);
+        this.crc.update(buf);
+        buf.position(0);
+        return (int) this.crc.getValue();
+    }
+
+    /**
+     * Decodes a packet held at the start of a buffer.
+     * @param buf     the buffer holding the packet from index 0
+     * @param length  the size in bytes of the packet
+     * @return whether a well-formed packet was decoded; see isCorrupt() for
+     *         whether one was dropped for its checksum
+     */
+    public boolean decode(ByteBuffer buf, int length) {
+        buf.position(0).limit(length);
+        this.corrupt = false;
+        if (!this.header.decode(buf)) {
+            return false;
+        }
+        if (buf.getInt(PacketHeader.CHECKSUM_OFFSET) != this.checksum(buf)) {
+            this.corrupt = true;
+            return false;
+        }
+        this.payloadOffset = this.header.size();
+        this.payloadLength = length - this.header.size();
+        this.window = -1;
+        this.streams = 1;
+        this.parityGroup = 0;
+        this.parityCount = 0;
+        this.payload = 0;
+        this.resumeSeqNum = -1;
+        this.bitmapOffset = length;
+        int type = this.header.type();
+        if (type == PacketHeader.TYPE_PROBE) {
+            /* a probe is padded to the size being tested, header and all */
+            return true;
+        }
+        boolean leadingVarint = type == PacketHeader.TYPE_ACK || type == PacketHeader.TYPE_SACK
+            || type == PacketHeader.TYPE_SYN || type == PacketHeader.TYPE_SYN_ACK || type == PacketHeader.TYPE_PARITY
+            || type == PacketHeader.TYPE_PROBE_ACK;
+        if (!leadingVarint || this.payloadLength == 0) {
+            return this.payloadLength <= this.payloadSize;
+        }
+
+        /*
+         * Read the varint that leads the payload: the receiver window of an acknowledgement, the stream
+         * count of a SYN, which may be followed by its parity group size and proposed payload size, the
+         * agreed payload size of a SYN-ACK, the count of a parity packet, or the bytes a probe delivered.
+         */
+        int i = this.readVarint(buf, this.payloadOffset, length);
+        if (i < 0) {
+            return false;
+        }
+        if (type == PacketHeader.TYPE_SYN) {
+            this.streams = Math.max(1, this.varint);
+            if (i < length) {
+                i = this.readVarint(buf, i, length);
+                if (i < 0) {
+                    return false;
+                }
+                this.parityGroup = this.varint;
+            }
+            if (i < length) {
+                i = this.readVarint(buf, i, length);
+                if (i < 0) {
+                    return false;
+                }
+                this.payload = this.varint;
+            }
+        } else if (type == PacketHeader.TYPE_SYN_ACK || type == PacketHeader.TYPE_PROBE_ACK) {
+            this.payload = this.varint;
+            if (type == PacketHeader.TYPE_SYN_ACK && i < length) {
+                i = this.readVarlong(buf, i, length);
+                if (i < 0) {
+                    return false;
+                }
+                this.resumeSeqNum = this.varlong;
+            }
+        } else if (type == PacketHeader.TYPE_PARITY) {
+            this.parityCount = this.varint;
+            this.payloadOffset = i;
+            this.payloadLength = length - i;
+        } else {
+            this.window = this.varint;
+        }
+        this.bitmapOffset = i;
+        return this.payloadLength <= this.payloadSize;
+    }
+
+    /**
+     * Reads an unsigned LEB128 varint of up to 31 bits into the varint field,
+     * so a value read is never negative.
+     * @param buf  the buffer the varint is read from
+     * @param i    the index of its first byte
+     * @param end  the index it must end before
+     * @return the index after its last byte, or -1 if it is malformed or exceeds Integer.MAX_VALUE
+     */
+    private int readVarint(ByteBuffer buf, int i, int end) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (i >= end || shift > 28) {
+                return -1;
+            }
+            int b = buf.get(i++) & 0xFF;
+            if (shift == 28 && (b & 0xF8) != 0) {
+                /* the fifth byte holds bits 28 to 30; anything above them would overflow an int */
+                return -1;
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        this.varint = value;
+        return i;
+    }
+
+    /**
+     * Reads an unsigned LEB128 varint of up to 63 bits into the varlong field.
+     * @param buf  the buffer the varint is read from
+     * @param i    the index of its first byte
+     * @param end  the index it must end before
+     * @return the index after its last byte, or -1 if it is malformed
+     */
+    private int readVarlong(ByteBuffer buf, int i, int end) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (i >= end || shift > 56) {
+                return -1;
+            }
+            int b = buf.get(i++) & 0xFF;
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        this.varlong = value;
+        return i;
+    }
+
+    /**
+     * Returns whether the last decoded selective acknowledgement reports a
+     * sequence number after its cumulative acknowledgement as arrived.
+     * @param buf     the buffer the packet was decoded from
+     * @param seqNum  the sequence number
+     * @return whether the sequence number is set in the bitmap
+     */
+    public boolean isSelectivelyAcked(ByteBuffer buf, long seqNum) {
+        long bit = seqNum - this.header.seqNum() - 1;
+        int bitmapLength = this.payloadOffset + this.payloadLength - this.bitmapOffset;
+        if (bit < 0 || bit >= 8L * bitmapLength) {
+            return false;
+        }
+        int b = buf.get(this.bitmapOffset + (int) (bit >>> 3));
+        return (b & (1 << (bit & 7))) != 0;
+    }
+
+    /**
+     * Returns what the receiver already has of the sender's range, as told
+     * by the last decoded SYN-ACK.
+     * @param buf  the buffer the SYN-ACK was decoded from
+     * @return the resume point, or null if the receiver is not resuming the transfer
+     */
+    public ResumePoint resumePoint(ByteBuffer buf) {
+        if (this.resumeSeqNum < 0) {
+            return null;
+        }
+        byte[] bitmap = new byte[this.payloadOffset + this.payloadLength - this.bitmapOffset];
+        for (int i = 0; i < bitmap.length; ++i) {
+            bitmap[i] = buf.get(this.bitmapOffset + i);
+        }
+        return new ResumePoint(this.resumeSeqNum, bitmap);
+    }
+
+    /**
+     * Returns the digest carried by the last decoded FIN or FIN-ACK.
+     * @param buf  the buffer the packet was decoded from
+     * @return the digest
+     */
+    public byte[] digest(ByteBuffer buf) {
+        byte[] digest = new byte[this.payloadLength];
+        for (int i = 0; i < digest.length; ++i) {
+            digest[i] = buf.get(this.payloadOffset + i);
+        }
+        return digest;
+    }
+
+    /**
+     * Writes the payload of the last decoded packet to a stream.
+     * @param buf  the heap buffer the packet was decoded from
+     * @param out  the stream the payload is written to
+     */
+    public void writePayload(ByteBuffer buf, OutputStream out) throws IOException {
+        out.write(buf.array(), buf.arrayOffset() + this.payloadOffset, this.payloadLength);
+    }
+
+    /**
+     * Narrows a buffer to the payload of the last decoded packet, so its
+     * position and limit bound the payload.
+     * @param buf  the buffer the packet was decoded from
+     * @return the buffer
+     */
+    public ByteBuffer selectPayload(ByteBuffer buf) {
+        buf.limit(this.payloadOffset + this.payloadLength).position(this.payloadOffset);
+        return buf;
+    }
+
+    /** @return whether the last packet failed to decode because its checksum did not match */
+    public boolean isCorrupt() {
+        return this.corrupt;
+    }
+
+    /** @return the type of the last decoded packet */
+    public int type() {
+        return this.header.type();
+    }
+
+    /** @return the flags of the last decoded packet */
+    public int flags() {
+        return this.header.flags();
+    }
+
+    /** @return whether the last decoded packet carries the end-of-file flag */
+    public boolean isEof() {
+        return this.header.isEof();
+    }
+
+    /** @return the sequence number of the last decoded packet */
+    public long seqNum() {
+        return this.header.seqNum();
+    }
+
+    /** @return the receiver window of the last decoded acknowledgement, or -1 if it carries none */
+    public int window() {
+        return this.window;
+    }
+
+    /** @return the session ID of the last decoded packet, or 0 if it carries none */
+    public long sessionId() {
+        return this.header.sessionId();
+    }
+
+    /** @return the number of parallel streams announced by the last decoded SYN, 1 if it announced none */
+    public int streams() {
+        return this.streams;
+    }
+
+    /** @return the parity group size announced by the last decoded SYN, 0 if it announced none */
+    public int parityGroup() {
+        return this.parityGroup;
+    }
+
+    /**
+     * @return the payload size proposed by the last decoded SYN or agreed by a SYN-ACK, or the bytes of the probe
+     *         that arrived of a probe acknowledgement; 0 if it carried none
+     */
+    public int payload() {
+        return this.payload;
+    }
+
+    /** @return the number of blocks covered by the last decoded parity packet */
+    public int parityCount() {
+        return this.parityCount;
+    }
+
+    /** @return the offset of the payload of the last decoded packet */
+    public int payloadOffset() {
+        return this.payloadOffset;
+    }
+
+    /** @return the length of the payload of the last decoded packet */
+    public int payloadLength() {
+        return this.payloadLength;
+    }
+}
@@ -0,0 +1,243 @@
+/**
+ * PacketHeader.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encoder and decoder for the versioned packet header.
+ *
+ * The header is laid out as follows:
+ *   byte 0     - the header version
+ *   byte 1     - the packet type (data, acknowledgement, selective acknowledgement, handshake, parity or probe)
+ *   byte 2     - the packet flags (end-of-file, session, compressed)
+ *   byte 3..6  - the CRC32C of the whole packet but these four bytes, big-endian
+ *   byte 7..n  - the sequence number as an unsigned LEB128 varint
+ *   then       - the session ID as an unsigned LEB128 varint, if the session flag is set
+ *
+ * Handshake packets carry the size of the file in bytes in place of the
+ * sequence number, and path MTU probes the size of the probe. The session
+ * ID tags every packet of a transfer to a ReceiverServer, which runs many
+ * transfers on one port; it is 0, and takes no bytes, for transfers to a
+ * single-file receiver. The checksum is left zero by encode() and filled in
+ * by PacketCodec once the packet is complete, and a packet whose checksum
+ * does not match is dropped as if it were lost, rather than trusting the
+ * 16-bit UDP checksum alone.
+ *
+ * Sequence numbers are 64 bits wide but only take as many bytes on the wire
+ * as they need, so small transfers keep an 8-byte header while multi-gigabyte
+ * transfers are no longer capped at 65,536 packets.
+ */
+public class PacketHeader {
+
+    /** Constants. */
+    public static final int VERSION    = 3;   // Current header version
+    public static final int FIXED_SIZE = 7;   // Version, type, flags and checksum bytes
+    public static final int MAX_SIZE   = 27;  // Fixed bytes plus two 10-byte varints
+    public static final int CHECKSUM_OFFSET = 3;  // Index of the checksum within the header
+
+    public static final int TYPE_DATA  = 0;   // Packet carries file data
+    public static final int TYPE_ACK   = 1;   // Packet acknowledges file data
+    public static final int TYPE_SACK  = 2;   // Packet acknowledges file data cumulatively and selectively
+    public static final int TYPE_SYN   = 3;   // Packet announces a transfer and the size of the file
+    public static final int TYPE_SYN_ACK = 4; // Packet accepts a transfer
+    public static final int TYPE_PARITY  = 5; // Packet carries the XOR of a group of data packets
+    public static final int TYPE_PROBE   = 6; // Packet tests whether a packet of its size reaches the receiver
+    public static final int TYPE_PROBE_ACK = 7; // Packet reports the size of a probe received
+    public static final int TYPE_FIN     = 8; // Packet closes a range and carries the sender's digest of it
+    public static final int TYPE_FIN_ACK = 9; // Packet answers a FIN with the receiver's digest of the range
+
+    public static final int FLAG_EOF     = 0x01;  // Packet carries the final block of the file
+    public static final int FLAG_SESSION = 0x02;  // Packet carries a session ID after its sequence number
+    public static final int FLAG_COMPRESSED = 0x04;  // Packet carries its block deflated
+
+    /** Decoded fields. */
+    private int version;     // the version of the last decoded header
+    private int type;        // the type of the last decoded header
+    private int flags;       // the flags of the last decoded header
+    private long seqNum;     // the sequence number of the last decoded header
+    private long sessionId;  // the session ID of the last decoded header, or 0
+    private long varint;     // the value of the last varint read
+    private int size;        // the size in bytes of the last decoded header
+
+    /**
+     * Encodes a header into a buffer at its position, advancing the position.
+     * @param buf     the buffer the header is written into
+     * @param type    the packet type
+     * @param flags   the packet flags
+     * @param seqNum  the sequence number
+     * @return the size in bytes of the encoded header
+     */
+    public static int encode(ByteBuffer buf, int type, int flags, long seqNum) {
+        return encode(buf, type, flags, seqNum, 0);
+    }
+
+    /**
+     * Encodes a header with a session ID into a buffer at its position, advancing the position.
+     * @param buf        the buffer the header is written into
+     * @param type       the packet type
+     * @param flags      the packet flags
+     * @param seqNum     the sequence number
+     * @param sessionId  the session ID, or 0 for none
+     * @return the size in bytes of the encoded header
+     */
+    public static int encode(ByteBuffer buf, int type, int flags, long seqNum, long sessionId) {
+        buf.put((byte) VERSION);
+        buf.put((byte) type);
+        buf.put((byte) (sessionId != 0 ? flags | FLAG_SESSION : flags & ~FLAG_SESSION));
+        buf.putInt(0);
+        int size = FIXED_SIZE + writeVarint(buf, seqNum);
+        if (sessionId != 0) {
+            size += writeVarint(buf, sessionId);
+        }
+        return size;
+    }
+
+    /**
+     * Sets flags on a header already encoded at the start of a buffer.
+     * @param buf    the buffer holding the header from index 0
+     * @param flags  the flags to be set
+     */
+    public static void addFlags(ByteBuffer buf, int flags) {
+        buf.put(2, (byte) (buf.get(2) | flags));
+    }
+
+    /**
+     * Returns the size in bytes a header would take for a sequence number.
+     * @param seqNum  the sequence number
+     * @return the size in bytes of the header
+     */
+    public static int sizeOf(long seqNum) {
+        return FIXED_SIZE + varintSize(seqNum);
+    }
+
+    /**
+     * Decodes a header from a buffer into this object, reading from the
+     * buffer's position up to its limit without moving either.
+     * @param buf  the buffer the header is read from
+     * @return whether a well-formed header of the current version was decoded
+     */
+    public boolean decode(ByteBuffer buf) {
+        int offset = buf.position();
+        int end = buf.limit();
+        if (end - offset < FIXED_SIZE + 1) {
+            return false;
+        }
+        this.version = buf.get(offset) & 0xFF;
+        this.type    = buf.get(offset + 1) & 0xFF;
+        this.flags   = buf.get(offset + 2) & 0xFF;
+        if (this.version != VERSION) {
+            return false;
+        }
+
+        int i = this.readVarint(buf, offset + FIXED_SIZE, end);
+        if (i < 0) {
+            return false;
+        }
+        this.seqNum = this.varint;
+        this.sessionId = 0;
+        if ((this.flags & FLAG_SESSION) != 0) {
+            i = this.readVarint(buf, i, end);
+            if (i < 0) {
+                return false;
+            }
+            this.sessionId = this.varint;
+        }
+        this.size = i - offset;
+        return true;
+    }
+
+    /**
+     * Reads an unsigned LEB128 varint from a buffer into the varint field.
+     * @param buf    the buffer the varint is read from
+     * @param i      the index of its first byte
+     * @param end    the index it must end before
+     * @return the index after its last byte, or -1 if it is malformed
+     */
+    private int readVarint(ByteBuffer buf, int i, int end) {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            if (i >= end || shift > 63) {
+                return -1;
+            }
+            int b = buf.get(i++) & 0xFF;
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+            shift += 7;
+        }
+        this.varint = value;
+        return i;
+    }
+
+    /**
+     * Writes an unsigned LEB128 varint into a buffer at its position.
+     * @param buf    the buffer the varint is written into
+     * @param value  the value to be written, treated as unsigned
+     * @return the number of bytes written
+     */
+    public static int writeVarint(ByteBuffer buf, long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            buf.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+            ++size;
+        }
+        buf.put((byte) value);
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes an unsigned LEB128 varint takes.
+     * @param value  the value, treated as unsigned
+     * @return the number of bytes the varint takes
+     */
+    public static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            ++size;
+        }
+        return size;
+    }
+
+    /** @return the version of the last decoded header */
+    public int version() {
+        return this.version;
+    }
+
+    /** @return the type of the last decoded header */
+    public int type() {
+        return this.type;
+    }
+
+    /** @return the flags of the last decoded header */
+    public int flags() {
+        return this.flags;
+    }
+
+    /** @return whether the last decoded header carries the end-of-file flag */
+    public boolean isEof() {
+        return (this.flags & FLAG_EOF) != 0;
+    }
+
+    /** @return the sequence number of the last decoded header */
+    public long seqNum() {
+        return this.seqNum;
+    }
+
+    /** @return the session ID of the last decoded header, or 0 if it carries none */
+    public long sessionId() {
+        return this.sessionId;
+    }
+
+    /** @return the size in bytes of the last decoded header */
+    public int size() {
+        return this.size;
+    }
+}
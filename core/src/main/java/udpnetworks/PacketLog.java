@@ -0,0 +1,282 @@
+/**
+ * PacketLog.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.io.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The console log of the protocol endpoints.
+ *
+ * The level is set by TransferOptions.logLevel(): OFF prints nothing,
+ * SUMMARY prints startup and transfer summary lines, and PACKET also traces
+ * every packet event. Packet events are sampled by sequence number, so a
+ * sample of 1 in N traces the same packets on both ends; handshake events
+ * are never sampled out.
+ *
+ * Logging never formats on the calling thread. An event is a kind and three
+ * numbers, copied into a preallocated ring that any thread can append to
+ * without locking; a daemon thread formats and prints them in order. If the
+ * ring is full packet events are dropped and counted rather than stalling
+ * the caller. Below the PACKET level a packet event is a single comparison
+ * against a constant, so per-packet tracing can stay in the hot paths.
+ */
+public class PacketLog implements Runnable {
+
+    /** Levels. */
+    public static final int OFF     = 0;  // Log nothing
+    public static final int SUMMARY = 1;  // Log startup and summary lines
+    public static final int PACKET  = 2;  // Also log packet events
+
+    /** Packet event kinds. */
+    public static final int SENT             = 0;   // number, flag
+    public static final int RECEIVED         = 1;   // number, flag
+    public static final int WRITTEN          = 2;   // number
+    public static final int QUEUED           = 3;   // number
+    public static final int ACK_SENT         = 4;   // number, type, window
+    public static final int SACK_SENT        = 5;   // number, sacked, window
+    public static final int RESENT           = 6;   // number
+    public static final int TIMEOUT          = 7;   // first and last number resent
+    public static final int FAST_RETRANSMIT  = 8;   // first and last number resent
+    public static final int OUT_OF_ORDER     = 9;   // number, number expected
+    public static final int SYN_SENT         = 10;  // file size
+    public static final int SYN_RECEIVED     = 11;  // file size
+    public static final int SYN_ACK_SENT     = 12;  // file size
+    public static final int SYN_ACK_RECEIVED = 13;  // file size
+    public static final int PARITY_SENT      = 14;  // first number covered, count
+    public static final int PARITY_RECEIVED  = 15;  // first number covered, count
+    public static final int REPAIRED         = 16;  // number
+    public static final int PROBE_SENT       = 17;  // probe size
+    public static final int PROBE_ACKED      = 18;  // probe size
+    public static final int FIN_SENT         = 19;  // end of the range
+    public static final int FIN_RECEIVED     = 20;  // end of the range
+    public static final int FIN_ACK_SENT     = 21;  // end of the range
+    public static final int FIN_ACK_RECEIVED = 22;  // end of the range
+    public static final int CORRUPT          = 23;  // size of the packet dropped
+    private static final int TEXT            = -1;  // a summary line
+
+    /** The format of each packet event kind. */
+    private static final String[] FORMATS = {
+        "sent     : { number: %d, flag: %d }",
+        "received : { number: %d, flag: %d }",
+        "written  : { number: %d }",
+        "queued   : { number: %d }",
+        "sent     : { number: %d, flag: %d, window: %d }",
+        "sent     : { number: %d, sacked: %d, window: %d }",
+        "resending: { number: %d }",
+        "timeout  : { resending: %d to %d }",
+        "fast     : { resending: %d to %d }",
+        "error    : { number: %d, expected: %d }",
+        "sent     : { syn, size: %d }",
+        "received : { syn, size: %d }",
+        "sent     : { syn-ack, size: %d }",
+        "received : { syn-ack, size: %d }",
+        "sent     : { parity, number: %d, count: %d }",
+        "received : { parity, number: %d, count: %d }",
+        "repaired : { number: %d }",
+        "sent     : { probe, size: %d }",
+        "received : { probe-ack, size: %d }",
+        "sent     : { fin, end: %d }",
+        "received : { fin, end: %d }",
+        "sent     : { fin-ack, end: %d }",
+        "received : { fin-ack, end: %d }",
+        "corrupt  : { size: %d }",
+    };
+
+    /** Configuration, fixed for the life of the process. */
+    private static final int LEVEL  = TransferOptions.logLevel();
+    private static final long SAMPLE = TransferOptions.logSample();
+
+    /** The ring every thread appends to, created with the first line logged. */
+    private static PacketLog ring;
+
+    /** Instance variables. */
+    private int[] kinds;             // the kind of each event
+    private long[] numbers;          // the first number of each event
+    private long[] args1;            // the second number of each event
+    private long[] args2;            // the third number of each event
+    private String[] texts;          // the line of each summary event
+    private AtomicLongArray turns;   // the index each slot is ready to be written (or, plus one, read) at
+    private AtomicLong tail;         // the index of the next event to be appended
+    private long head;               // the index of the next event to be printed
+    private int mask;                // the ring index mask; the capacity is a power of two
+    private AtomicLong dropped;      // the number of packet events dropped because the ring was full
+    private PrintStream out;         // the stream events are printed to
+    private Thread thread;
+    private volatile boolean sleeping;
+
+    /**
+     * Constructor for the ring.
+     * @param capacity  the minimum number of events the ring holds; rounded up to a power of two
+     */
+    private PacketLog(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.kinds = new int[size];
+        this.numbers = new long[size];
+        this.args1 = new long[size];
+        this.args2 = new long[size];
+        this.texts = new String[size];
+        this.turns = new AtomicLongArray(size);
+        for (int i = 0; i < size; ++i) {
+            this.turns.set(i, i);
+        }
+        this.tail = new AtomicLong();
+        this.mask = size - 1;
+        this.dropped = new AtomicLong();
+        this.out = new PrintStream(new FileOutputStream(FileDescriptor.out), false);
+        this.thread = new Thread(this, "packet-log");
+        this.thread.setDaemon(true);
+        this.thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::drain, "packet-log-drain"));
+    }
+
+    /** @return the shared ring, creating it if need be */
+    private static synchronized PacketLog ring() {
+        if (ring == null) {
+            ring = new PacketLog(TransferOptions.logRing());
+        }
+        return ring;
+    }
+
+    /**
+     * Returns whether packet events are traced.
+     * @return whether the level is PACKET
+     */
+    public static boolean tracing() {
+        return LEVEL >= PACKET;
+    }
+
+    /**
+     * Logs a packet event with one number.
+     * @param kind    the kind of event
+     * @param number  the sequence number the event is about
+     */
+    public static void packet(int kind, long number) {
+        packet(kind, number, 0, 0);
+    }
+
+    /**
+     * Logs a packet event with two numbers.
+     * @param kind    the kind of event
+     * @param number  the sequence number the event is about
+     * @param arg     the second number of the event
+     */
+    public static void packet(int kind, long number, long arg) {
+        packet(kind, number, arg, 0);
+    }
+
+    /**
+     * Logs a packet event, if packet events are traced and the event's
+     * sequence number is sampled.
+     * @param kind    the kind of event
+     * @param number  the sequence number the event is about
+     * @param arg1    the second number of the event
+     * @param arg2    the third number of the event
+     */
+    public static void packet(int kind, long number, long arg1, long arg2) {
+        if (LEVEL < PACKET || (SAMPLE > 1 && kind < SYN_SENT && Long.remainderUnsigned(number, SAMPLE) != 0)) {
+            return;
+        }
+        ring().append(kind, number, arg1, arg2, null, false);
+    }
+
+    /**
+     * Logs a summary line, in order with the packet events before it.
+     * @param line  the line to be printed
+     */
+    public static void summary(String line) {
+        if (LEVEL < SUMMARY) {
+            return;
+        }
+        ring().append(TEXT, 0, 0, 0, line, true);
+    }
+
+    /**
+     * Appends an event to the ring.
+     * @param wait  whether to wait for space, rather than drop the event, if the ring is full
+     * @return whether the event was appended
+     */
+    private boolean append(int kind, long number, long arg1, long arg2, String text, boolean wait) {
+        long t;
+        while (true) {
+            t = this.tail.get();
+            long turn = this.turns.get((int) t & this.mask);
+            if (turn == t) {
+                if (this.tail.compareAndSet(t, t + 1)) {
+                    break;
+                }
+            } else if (turn < t) {
+                /* The slot still holds an event a revolution behind: the ring is full. */
+                if (!wait) {
+                    this.dropped.incrementAndGet();
+                    return false;
+                }
+                LockSupport.unpark(this.thread);
+                Thread.yield();
+            }
+        }
+        int slot = (int) t & this.mask;
+        this.kinds[slot] = kind;
+        this.numbers[slot] = number;
+        this.args1[slot] = arg1;
+        this.args2[slot] = arg2;
+        this.texts[slot] = text;
+        this.turns.lazySet(slot, t + 1);
+        if (this.sleeping) {
+            LockSupport.unpark(this.thread);
+        }
+        return true;
+    }
+
+    /** Prints events as they are appended. */
+    public void run() {
+        while (true) {
+            if (!this.printNext()) {
+                this.out.flush();
+                this.sleeping = true;
+                if (this.turns.get((int) this.head & this.mask) != this.head + 1) {
+                    LockSupport.parkNanos(1000000);
+                }
+                this.sleeping = false;
+            }
+        }
+    }
+
+    /**
+     * Prints the next event, if it has been appended.
+     * @return whether an event was printed
+     */
+    private synchronized boolean printNext() {
+        long h = this.head;
+        int slot = (int) h & this.mask;
+        if (this.turns.get(slot) != h + 1) {
+            return false;
+        }
+        int kind = this.kinds[slot];
+        if (kind == TEXT) {
+            this.out.println(this.texts[slot]);
+            this.texts[slot] = null;
+        } else {
+            this.out.println(String.format(FORMATS[kind], this.numbers[slot], this.args1[slot], this.args2[slot]));
+        }
+        this.head = h + 1;
+        this.turns.lazySet(slot, h + this.kinds.length);
+        return true;
+    }
+
+    /** Prints every event appended so far; run at exit so no line is lost. */
+    private void drain() {
+        while (this.printNext()) {
+        }
+        long lost = this.dropped.get();
+        if (lost > 0) {
+            this.out.println("log      : { dropped: " + lost + " }");
+        }
+        this.out.flush();
+    }
+}
@@ -0,0 +1,109 @@
+/** 
+ * PacketTimerTask.java 
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+
+/**
+ * The retransmission timer of one packet in flight. It is armed on a
+ * TimingWheel when the packet is sent and resends the packet every time it
+ * expires, until it is cancelled by an acknowledgement. Each expiry backs
+ * off the shared RttEstimator and re-arms with its current timeout; the
+ * first expiry of a flight also tells the CongestionController. The timer
+ * thread cannot wait on the Pacer, so a resend is charged to it instead,
+ * and delays the packets sent after it. A task is reused for every
+ * packet that occupies its slot of the send window.
+ */
+public class PacketTimerTask extends TimingWheel.Timeout {
+	
+	private Transport socket;
+	private SocketAddress target;
+	private TimingWheel wheel;
+	private RttEstimator rtt;
+	private CongestionController cc;
+	private Pacer pacer;
+	private TransferMetrics metrics;
+	private ByteBuffer buffer;
+	private long seqNum;
+	private long sentAt;
+	private boolean inFlight;
+	private boolean retransmitted;
+    
+	PacketTimerTask(Transport socket, SocketAddress target, TimingWheel wheel, RttEstimator rtt, CongestionController cc, Pacer pacer, TransferMetrics metrics) {
+        this.socket = socket;
+        this.target = target;
+        this.wheel = wheel;
+        this.rtt = rtt;
+        this.cc = cc;
+        this.pacer = pacer;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sends a packet and arms the timer to resend it.
+     * @param seqNum  the sequence number of the packet
+     * @param buffer  the buffer holding the packet
+     */
+    public void send(long seqNum, ByteBuffer buffer) throws IOException {
+        this.seqNum = seqNum;
+        this.buffer = buffer;
+        this.inFlight = true;
+        this.retransmitted = false;
+        this.socket.send(this.buffer, this.target);
+        this.sentAt = System.nanoTime();
+        this.wheel.arm(this, this.rtt.rtoNanos());
+    }
+
+    /**
+     * Stops resending the packet. On return the buffer is safe to reuse.
+     * @return the buffer holding the packet
+     */
+    public ByteBuffer cancel() {
+        this.wheel.cancel(this);
+        this.inFlight = false;
+        return this.buffer;
+    }
+
+    /** @return whether the packet has been sent and not yet acknowledged */
+    public boolean isInFlight() {
+        return this.inFlight;
+    }
+
+    /** @return the sequence number of the packet */
+    public long seqNum() {
+        return this.seqNum;
+    }
+
+    /** @return the time the packet was last sent; read only after cancel */
+    public long sentAt() {
+        return this.sentAt;
+    }
+
+    /** @return whether the packet has been retransmitted; read only after cancel */
+    public boolean isRetransmitted() {
+        return this.retransmitted;
+    }
+
+    protected void expired() {
+        if (this.rtt.backoff(this.sentAt)) {
+            this.cc.onTimeout();
+        }
+        PacketLog.packet(PacketLog.RESENT, this.seqNum);
+        this.metrics.timeout();
+        this.metrics.resent(this.buffer.remaining());
+        this.pacer.charge(this.buffer.remaining());
+        try {
+            this.socket.send(this.buffer, this.target);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        this.sentAt = System.nanoTime();
+        this.retransmitted = true;
+        this.wheel.arm(this, this.rtt.rtoNanos());
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * ParallelStreams.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.io.*;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * The partitioning of a file across parallel selective repeat streams, and
+ * the threads they run on.
+ *
+ * A file of n blocks is split into contiguous ranges of whole 64-block
+ * chunks, one per stream, so streams sharing a FileBlockSink never touch
+ * the same word of its bitmap. Sequence numbers stay the block numbers of
+ * the whole file. Stream i sends to the receiver's port plus 2i and takes
+ * acknowledgements on that port plus one, so stream 0 uses the ports of a
+ * single-stream transfer. Both ends compute the ranges from the file size
+ * and the stream count the SYN announces.
+ */
+public class ParallelStreams {
+
+    /** Constants. */
+    public static final int ALIGNMENT = 64;  // Blocks per chunk; ranges start on a chunk
+
+    /** Not instantiable. */
+    private ParallelStreams() {}
+
+    /**
+     * Returns the number of streams a file is split across: as many as
+     * requested, but no more than it has chunks.
+     * @param requested   the number of streams requested
+     * @param blockCount  the number of blocks in the file
+     * @return the number of streams, at least 1
+     */
+    public static int count(int requested, long blockCount) {
+        long chunks = (blockCount + ALIGNMENT - 1) / ALIGNMENT;
+        return (int) Math.max(1, Math.min(requested, chunks));
+    }
+
+    /**
+     * Returns the first block of a stream's range; the range ends where the
+     * next stream's begins.
+     * @param blockCount  the number of blocks in the file
+     * @param streams     the number of streams
+     * @param stream      the index of the stream, or streams for the end of the file
+     * @return the sequence number of the first block of the range
+     */
+    public static long firstSeqNum(long blockCount, int streams, int stream) {
+        long chunks = (blockCount + ALIGNMENT - 1) / ALIGNMENT;
+        return Math.min(blockCount, chunks * stream / streams * ALIGNMENT);
+    }
+
+    /**
+     * Names a stream's range of a file for its transfer's summary.
+     * @param filename     the name of the file
+     * @param blockCount   the number of blocks in the file
+     * @param firstSeqNum  the first block of the range
+     * @param endSeqNum    the block after the last one of the range
+     * @return the file name, followed by the blocks of the range unless it is the whole file
+     */
+    public static String label(String filename, long blockCount, long firstSeqNum, long endSeqNum) {
+        if (firstSeqNum == 0 && endSeqNum == blockCount) {
+            return filename;
+        }
+        return filename + " blocks " + firstSeqNum + "-" + (endSeqNum - 1);
+    }
+
+    /**
+     * Returns the data port of a stream.
+     * @param port    the data port of stream 0
+     * @param stream  the index of the stream
+     * @return the data port of the stream
+     */
+    public static int port(int port, int stream) {
+        return port + 2 * stream;
+    }
+
+    /**
+     * Runs streams on threads of their own and waits for them all. If one
+     * fails the rest are interrupted and its failure is rethrown.
+     * @param streams  the streams to be run
+     */
+    public static void run(List<Callable<Void>> streams) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(streams.size(), new ThreadFactory() {
+            private int next = 0;
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "stream-" + this.next++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        CompletionService<Void> done = new ExecutorCompletionService<Void>(executor);
+        for (Callable<Void> stream : streams) {
+            done.submit(stream);
+        }
+        try {
+            for (int i = 0; i < streams.size(); ++i) {
+                done.take().get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the streams");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("stream failed", cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
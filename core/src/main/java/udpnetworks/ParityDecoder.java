@@ -0,0 +1,163 @@
+/**
+ * ParityDecoder.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The receiving half of forward error correction for selective repeat.
+ *
+ * Every block received is XORed into the running parity of its group,
+ * before it is handed to the disk writer. When a parity packet arrives for
+ * groups missing exactly one block between them, XORing it with their
+ * running parities leaves that block, which is then taken as if it had
+ * arrived. Groups are tracked at the size the SYN announces, in a ring
+ * covering the receive window, so a parity packet for blocks long since
+ * received, or beyond the window, finds nothing to rebuild.
+ */
+public class ParityDecoder {
+
+    /** The running parity of one group. */
+    private static class Group {
+        private long index = -1;    // the group held, or -1
+        private long received;      // bit i is set if block i of the group has been added
+        private ByteBuffer xor;     // the XOR of the blocks added
+    }
+
+    /** Instance variables. */
+    private int group;          // the group size in blocks
+    private int payloadSize;    // the size of every block but the last
+    private long fileSize;      // the size of the file in bytes
+    private long blockCount;    // the number of blocks in the file
+    private Group[] groups;     // the groups of the window, by group index modulo the ring size
+    private ByteBuffer repair;  // the block being rebuilt
+
+    /**
+     * Constructor for ParityDecoder.
+     * @param payloadSize  the size of every block but the last
+     * @param group        the group size announced by the sender
+     * @param windowSize   the receive window in packets
+     * @param fileSize     the size of the file in bytes
+     */
+    public ParityDecoder(int payloadSize, int group, int windowSize, long fileSize) {
+        this.group = group;
+        this.payloadSize = payloadSize;
+        this.fileSize = fileSize;
+        this.blockCount = (fileSize + payloadSize - 1) / payloadSize;
+        this.groups = new Group[windowSize / group + 2];
+        this.repair = ByteBuffer.allocate(payloadSize);
+    }
+
+    /**
+     * Returns whether a SYN announced a group size a decoder can track.
+     * @param group  the announced group size
+     * @return whether it is a power of two from 2 to 64
+     */
+    public static boolean isGroupSize(int group) {
+        return group >= 2 && group <= ParallelStreams.ALIGNMENT && Integer.bitCount(group) == 1;
+    }
+
+    /**
+     * Adds a block received for the first time.
+     * @param seqNum   the sequence number of the block
+     * @param payload  the block, between its position and limit
+     */
+    public void add(long seqNum, ByteBuffer payload) {
+        Group g = this.claim(seqNum / this.group);
+        long bit = 1L << (seqNum % this.group);
+        if ((g.received & bit) == 0) {
+            g.received |= bit;
+            ParityEncoder.xor(g.xor, payload, payload.position(), payload.remaining());
+        }
+    }
+
+    /**
+     * Rebuilds the one block a parity packet's groups are missing, if they
+     * are missing exactly one. The block is left in the packet's buffer,
+     * between its position and limit, in place of the parity packet.
+     * @param codec       the codec the parity packet was decoded with
+     * @param message     the buffer holding the parity packet
+     * @param nextSeqNum  the next block expected; every earlier one has been received
+     * @param windowSize  the receive window in packets
+     * @return the sequence number of the rebuilt block, or -1 if none could be rebuilt
+     */
+    public long repair(PacketCodec codec, ByteBuffer message, long nextSeqNum, int windowSize) {
+        long first = codec.seqNum();
+        long end = first + codec.parityCount();
+        if (first % this.group != 0 || end <= first || end - first > ParallelStreams.ALIGNMENT || end > this.blockCount
+                || end <= nextSeqNum || first - nextSeqNum >= windowSize) {
+            return -1;
+        }
+
+        /* Find the missing block; give up if there is more than one. */
+        long missing = -1;
+        for (long index = first / this.group; index * this.group < end; ++index) {
+            Group g = this.groups[this.slot(index)];
+            long received = (g != null && g.index == index) ? g.received : 0;
+            long groupEnd = Math.min(end, (index + 1) * this.group);
+            for (long seqNum = index * this.group; seqNum < groupEnd; ++seqNum) {
+                if ((received & (1L << (seqNum % this.group))) == 0) {
+                    if (missing >= 0) {
+                        return -1;
+                    }
+                    missing = seqNum;
+                }
+            }
+        }
+        if (missing < 0) {
+            return -1;
+        }
+
+        /* The missing block is the parity XORed with every block received. */
+        Arrays.fill(this.repair.array(), (byte) 0);
+        ParityEncoder.xor(this.repair, message, codec.payloadOffset(), codec.payloadLength());
+        for (long index = first / this.group; index * this.group < end; ++index) {
+            Group g = this.groups[this.slot(index)];
+            if (g != null && g.index == index) {
+                ParityEncoder.xor(this.repair, g.xor, 0, this.payloadSize);
+            }
+        }
+        int length = (int) Math.min(this.payloadSize, this.fileSize - missing * this.payloadSize);
+        message.clear();
+        for (int i = 0; i < length; ++i) {
+            message.put(i, this.repair.get(i));
+        }
+        message.limit(length);
+        return missing;
+    }
+
+    /**
+     * Returns the running parity of a group, starting it afresh if its slot
+     * held an older group.
+     * @param index  the group index
+     * @return the group
+     */
+    private Group claim(long index) {
+        int slot = this.slot(index);
+        Group g = this.groups[slot];
+        if (g == null) {
+            g = new Group();
+            g.xor = ByteBuffer.allocate(this.payloadSize);
+            this.groups[slot] = g;
+        }
+        if (g.index != index) {
+            g.index = index;
+            g.received = 0;
+            Arrays.fill(g.xor.array(), (byte) 0);
+        }
+        return g;
+    }
+
+    /**
+     * Returns the slot of the ring a group maps to.
+     * @param index  the group index
+     * @return the slot
+     */
+    private int slot(long index) {
+        return (int) Long.remainderUnsigned(index, this.groups.length);
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * ParityEncoder.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The sending half of forward error correction for selective repeat.
+ *
+ * Blocks are XORed together in groups as they are first sent, and the
+ * group's last block is followed by a parity packet carrying the XOR, so
+ * the receiver can rebuild any one lost block of the group without waiting
+ * a round trip for its retransmission. Groups are a power of two blocks,
+ * no larger than a 64-block chunk, and start on a multiple of their size,
+ * so they never straddle the ranges of parallel streams.
+ *
+ * A fixed group size costs one parity packet per group. An adaptive
+ * encoder sizes each group so that no more than a fifth of a block of it
+ * is expected to be lost, judging the loss from the share of packets it
+ * has had to retransmit: 64 blocks on a clean link, down to 4 on a lossy
+ * one. The receiver tracks groups of the smallest size, and rebuilds from
+ * a parity packet covering several of them with the running parities of
+ * them all.
+ */
+public class ParityEncoder {
+
+    /** Constants. */
+    public static final int MIN_ADAPTIVE_GROUP = 4;  // Smallest group an adaptive encoder uses
+    private static final double EXPECTED_LOSS = 0.2;  // Blocks an adaptive group may expect to lose
+
+    /** Instance variables. */
+    private int group;                  // the group size, or the smallest if adaptive
+    private boolean adaptive;           // whether the group size follows the measured loss
+    private TransferMetrics metrics;    // the sender's metrics, giving the loss
+    private long rangeEnd;              // the block after the last one of the sender's range
+    private ByteBuffer parity;          // the XOR of the current group's blocks so far
+    private int length;                 // the size in bytes of the longest block in the group
+    private long firstSeqNum;           // the first block of the current group
+    private long endSeqNum;             // the block after the last one of the current group
+    private boolean open;               // whether a group has been started and not yet completed
+
+    /**
+     * Constructor for ParityEncoder.
+     * @param payloadSize  the maximum payload of a packet in bytes
+     * @param group        the group size, a power of two from 2 to 64; the smallest group if adaptive
+     * @param adaptive     whether to size groups by the measured loss
+     * @param metrics      the sender's metrics
+     * @param rangeEnd     the block after the last one of the sender's range
+     */
+    public ParityEncoder(int payloadSize, int group, boolean adaptive, TransferMetrics metrics, long rangeEnd) {
+        this.group = group;
+        this.adaptive = adaptive;
+        this.metrics = metrics;
+        this.rangeEnd = rangeEnd;
+        this.parity = ByteBuffer.allocate(payloadSize);
+    }
+
+    /**
+     * Adds a block sent for the first time; blocks are added in order.
+     * @param seqNum  the sequence number of the block
+     * @param buf     the buffer holding the block
+     * @param offset  the index of its first byte
+     * @param length  its size in bytes
+     * @return whether the block completes a group, whose parity packet is to be sent now
+     */
+    public boolean add(long seqNum, ByteBuffer buf, int offset, int length) {
+        if (!this.open) {
+            this.firstSeqNum = seqNum;
+            this.endSeqNum = Math.min(this.rangeEnd, seqNum + this.groupAt(seqNum));
+            this.length = 0;
+            Arrays.fill(this.parity.array(), (byte) 0);
+            this.open = true;
+        }
+        xor(this.parity, buf, offset, length);
+        this.length = Math.max(this.length, length);
+        if (seqNum + 1 == this.endSeqNum) {
+            this.open = false;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Encodes the parity packet of the group just completed.
+     * @param codec  the codec used to encode the packet
+     * @param buf    the buffer the packet is written into
+     * @return the size in bytes of the packet
+     */
+    public int encode(PacketCodec codec, ByteBuffer buf) {
+        return codec.encodeParity(buf, this.firstSeqNum, this.count(), this.parity, this.length);
+    }
+
+    /** @return the first block of the last group */
+    public long firstSeqNum() {
+        return this.firstSeqNum;
+    }
+
+    /** @return the number of blocks in the last group */
+    public int count() {
+        return (int) (this.endSeqNum - this.firstSeqNum);
+    }
+
+    /**
+     * Returns the size of a group starting at a block.
+     * @param seqNum  the first block of the group
+     * @return the group size in blocks
+     */
+    private int groupAt(long seqNum) {
+        int size = this.group;
+        if (this.adaptive) {
+            /* start from a loss of one packet in a chunk, until enough packets have been sent to tell */
+            double loss = (this.metrics.getRetransmits() + 1.0) / (this.metrics.getPacketsSent() + ParallelStreams.ALIGNMENT);
+            int target = (int) Math.min(ParallelStreams.ALIGNMENT, EXPECTED_LOSS / loss);
+            size = Integer.highestOneBit(Math.max(this.group, target));
+        }
+        /* a group starts on a multiple of its size */
+        while (size > this.group && seqNum % size != 0) {
+            size >>>= 1;
+        }
+        return size;
+    }
+
+    /**
+     * XORs bytes of a buffer into an accumulator, eight at a time.
+     * @param acc     the accumulator, from index 0
+     * @param src     the buffer XORed into it
+     * @param offset  the index of the first byte of src
+     * @param length  the number of bytes
+     */
+    static void xor(ByteBuffer acc, ByteBuffer src, int offset, int length) {
+        int i = 0;
+        for (; i + 8 <= length; i += 8) {
+            acc.putLong(i, acc.getLong(i) ^ src.getLong(offset + i));
+        }
+        for (; i < length; ++i) {
+            acc.put(i, (byte) (acc.get(i) ^ src.get(offset + i)));
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * PathMtu.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Path MTU discovery by probing, run by a sender before its handshake.
+ *
+ * The sender sends probe packets padded to the size of a data packet
+ * carrying a given payload, and the receiver answers each with how much
+ * of it arrived. A probe that goes unanswered, or arrives cut short, means
+ * packets of that size are lost on the path, so a binary search between a
+ * payload every IP path carries and an upper bound finds the largest that
+ * gets through. The upper bound is the MTU of the interface the receiver
+ * is reached through, less the IP and UDP headers, so packets are never
+ * fragmented by the sender's own stack; probes then find any smaller link
+ * beyond it that drops what it cannot carry.
+ */
+public class PathMtu {
+
+    /** Constants. */
+    public static final int MIN_PAYLOAD = 512;  // Payload every path carries: 576-byte IPv4 datagrams less headers
+    private static final int IPV4_OVERHEAD = 28; // IPv4 and UDP header bytes
+    private static final int IPV6_OVERHEAD = 48; // IPv6 and UDP header bytes
+    private static final int ATTEMPTS = 3;       // Probes of a size lost before it is taken not to fit
+    private static final int MIN_WAIT = 20;      // Least time in milliseconds a probe is waited for
+
+    /** Not instantiable. */
+    private PathMtu() {}
+
+    /**
+     * Finds the largest payload that reaches the receiver unfragmented. The
+     * receiver must be waiting for a handshake; the smallest size is probed
+     * until it answers, as a SYN would be.
+     * @param out         the transport probes are sent on
+     * @param in          the transport probe acknowledgements are received on
+     * @param target      the address of the receiver
+     * @param codec       the codec used to encode and decode packets
+     * @param buf         a buffer large enough to hold a packet with maxPayload bytes of payload
+     * @param maxPayload  the largest payload worth trying in bytes
+     * @param rtt         the estimator timing the probes
+     * @return the largest payload in bytes that got through, at least MIN_PAYLOAD unless maxPayload is smaller
+     */
+    public static int probe(Transport out, Transport in, SocketAddress target, PacketCodec codec,
+                            ByteBuffer buf, int maxPayload, RttEstimator rtt) throws IOException {
+        int high = Math.min(maxPayload, interfaceLimit(target));
+        int low = Math.min(MIN_PAYLOAD, high);
+        if (!probe(out, in, target, codec, buf, low, rtt, Handshake.MAX_ATTEMPTS, true)) {
+            throw new SocketTimeoutException("receiver did not answer " + Handshake.MAX_ATTEMPTS + " probes");
+        }
+
+        /* Most paths carry the whole interface MTU, so try it before searching below it. */
+        if (high > low && !probe(out, in, target, codec, buf, high, rtt, ATTEMPTS, false)) {
+            --high;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (probe(out, in, target, codec, buf, mid, rtt, ATTEMPTS, false)) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Probes one payload size.
+     * @param payload   the payload size tested in bytes
+     * @param attempts  the probes sent before giving up
+     * @param backoff   whether to back off after each lost probe, as while waiting for the receiver to start
+     * @return whether a probe of the size was answered in full
+     */
+    private static boolean probe(Transport out, Transport in, SocketAddress target, PacketCodec codec, ByteBuffer buf,
+                                 int payload, RttEstimator rtt, int attempts, boolean backoff) throws IOException {
+        /* The probe is as large as a data packet with the longest header. */
+        int size = PacketHeader.MAX_SIZE + payload;
+        for (int attempt = 0; attempt < attempts; ++attempt) {
+            codec.encodeProbe(buf, size);
+            out.send(buf, target);
+            long sentAt = System.nanoTime();
+            PacketLog.packet(PacketLog.PROBE_SENT, size);
+            try {
+                while (true) {
+                    /* probes are few, so they are waited for well past the floor of the retransmission timeout */
+                    int length = in.receive(buf, Math.max(MIN_WAIT, rtt.rtoMillis()));
+                    if (codec.decode(buf, length) && codec.type() == PacketHeader.TYPE_PROBE_ACK && codec.seqNum() == size) {
+                        PacketLog.packet(PacketLog.PROBE_ACKED, codec.payload());
+                        if (codec.payload() != size) {
+                            /* the receiver's buffer took less than was sent */
+                            return false;
+                        }
+                        if (attempt == 0) {
+                            rtt.sample(System.nanoTime() - sentAt);
+                        }
+                        return true;
+                    }
+                }
+            } catch (SocketTimeoutException e) {
+                /* a probe of a size the path drops is lost to its size, not to congestion */
+                if (backoff) {
+                    rtt.backoff(sentAt);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Answers a probe with how much of it arrived.
+     * @param out        the transport the answer is sent on
+     * @param target     the address it is sent to
+     * @param codec      the codec the probe was decoded with
+     * @param ackBuffer  the buffer the answer is encoded into
+     * @param length     the size in bytes of the probe received
+     */
+    public static void answer(Transport out, SocketAddress target, PacketCodec codec,
+                              ByteBuffer ackBuffer, int length) throws IOException {
+        codec.encodeProbeAck(ackBuffer, codec.seqNum(), length);
+        out.send(ackBuffer, target);
+    }
+
+    /**
+     * Returns the largest payload the interface the target is reached
+     * through can send in one unfragmented datagram.
+     * @param target  the address of the receiver
+     * @return the payload limit in bytes, or MAX_PAYLOAD if the interface is unknown
+     */
+    static int interfaceLimit(SocketAddress target) {
+        try (DatagramSocket socket = new DatagramSocket()) {
+            /* connecting a datagram socket sends nothing, but picks the route and so the local address */
+            socket.connect(target);
+            InetAddress local = socket.getLocalAddress();
+            NetworkInterface nic = NetworkInterface.getByInetAddress(local);
+            int mtu = nic != null ? nic.getMTU() : -1;
+            if (mtu <= 0) {
+                return PacketCodec.MAX_PAYLOAD;
+            }
+            int overhead = (local instanceof Inet6Address ? IPV6_OVERHEAD : IPV4_OVERHEAD) + PacketHeader.MAX_SIZE;
+            return Math.max(0, Math.min(PacketCodec.MAX_PAYLOAD, mtu - overhead));
+        } catch (IOException e) {
+            return PacketCodec.MAX_PAYLOAD;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * ProgressFile.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The record of which blocks of a file being received are safely on disk,
+ * kept in a small file beside it so a receiver stopped partway through a
+ * transfer can resume it rather than start over.
+ *
+ * The record is a header naming the size and block size of the file,
+ * followed by a bitmap with one bit per block, and is memory-mapped. Blocks
+ * are noted as they are written, but only copied into the map at a
+ * checkpoint: the blocks noted are snapshotted, the file itself is forced
+ * to disk, and only then is the snapshot recorded, so the record never
+ * claims a block a crash could still lose; a block written since the
+ * snapshot is simply sent again.
+ */
+public class ProgressFile implements Closeable {
+
+    /** Constants. */
+    private static final int MAGIC = 0x55445052;  // Marks a progress file: "UDPR"
+    private static final int HEADER_SIZE = 16;    // Bytes of magic, block size and file size before the bitmap
+
+    /** Instance variables. */
+    private Path path;                  // the progress file
+    private FileChannel channel;        // the channel the record is mapped from
+    private MappedByteBuffer map;       // the record, as of the last checkpoint
+    private AtomicLongArray written;    // the bitmap of blocks written, ahead of the record
+    private long[] snapshot;            // the bitmap as of the last snapshot, to be recorded by commit
+    private boolean resumed;            // whether the record was left by an earlier transfer of the file
+
+    /**
+     * Constructor for ProgressFile; opens the record beside a file, keeping
+     * it if it describes a file of the same size and block size, and
+     * starting it afresh otherwise.
+     * @param filename    name of the file being received
+     * @param size        size of the file in bytes
+     * @param blockSize   size of each block in bytes
+     * @param blockCount  number of blocks in the file
+     * @param keep        whether an earlier record may be kept; false if the file itself is gone
+     */
+    public ProgressFile(String filename, long size, int blockSize, long blockCount, boolean keep) throws IOException {
+        int words = (int) ((blockCount + 63) >>> 6);
+        long length = HEADER_SIZE + 8L * words;
+        this.path = path(filename);
+        this.channel = FileChannel.open(this.path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.resumed = keep && this.channel.size() == length && blockSizeOf(this.channel, size) == blockSize;
+        if (!this.resumed) {
+            this.channel.truncate(0);
+        }
+
+        /* Mapping past the end of the file extends it with zeros, so a fresh record starts with no blocks. */
+        this.map = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        this.written = new AtomicLongArray(words);
+        this.snapshot = new long[words];
+        if (this.resumed) {
+            for (int i = 0; i < words; ++i) {
+                this.written.set(i, this.map.getLong(HEADER_SIZE + 8 * i));
+            }
+        } else {
+            this.map.putInt(0, MAGIC).putInt(4, blockSize).putLong(8, size);
+            this.map.force();
+        }
+    }
+
+    /**
+     * Returns the block size an earlier transfer of a file recorded, so a
+     * receiver can agree to the same size and resume it.
+     * @param filename  name of the file being received
+     * @param size      size of the file in bytes
+     * @return the block size in bytes, or 0 if there is no record of a file of that size
+     */
+    public static int recordedBlockSize(String filename, long size) {
+        try (FileChannel channel = FileChannel.open(path(filename), StandardOpenOption.READ)) {
+            return blockSizeOf(channel, size);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the path of the record kept beside a file.
+     * @param filename  name of the file being received
+     * @return the path of its progress file
+     */
+    private static Path path(String filename) {
+        return Paths.get(filename + ".progress");
+    }
+
+    /**
+     * Reads the header of a record.
+     * @param channel  the channel of the progress file
+     * @param size     the size in bytes the file must have
+     * @return the block size recorded, or 0 if the header is not a record of a file of that size
+     */
+    private static int blockSizeOf(FileChannel channel, long size) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+            /* keep reading until the header is whole or the file ends */
+        }
+        if (header.hasRemaining() || header.getInt(0) != MAGIC || header.getLong(8) != size) {
+            return 0;
+        }
+        return header.getInt(4);
+    }
+
+    /** @return whether the record was left by an earlier transfer of the file, and kept */
+    public boolean isResumed() {
+        return this.resumed;
+    }
+
+    /**
+     * Copies the blocks recorded into a bitmap.
+     * @param bitmap  the bitmap, one bit per block
+     * @return the number of blocks recorded
+     */
+    public long load(long[] bitmap) {
+        long count = 0;
+        for (int i = 0; i < bitmap.length; ++i) {
+            bitmap[i] = this.written.get(i);
+            count += Long.bitCount(bitmap[i]);
+        }
+        return count;
+    }
+
+    /**
+     * Notes a block as written; it is recorded at the next checkpoint.
+     * @param seqNum  the sequence number of the block
+     */
+    public void written(long seqNum) {
+        int i = (int) (seqNum >>> 6);
+        long bit = 1L << seqNum;
+        long word;
+        do {
+            word = this.written.get(i);
+        } while ((word & bit) == 0 && !this.written.compareAndSet(i, word, word | bit));
+    }
+
+    /**
+     * Copies the blocks noted as written so far, the first step of a
+     * checkpoint. The file is then forced to disk and the copy recorded
+     * with commit, so blocks noted while the file is forced, by another
+     * stream's writer, wait for the next checkpoint.
+     */
+    public synchronized void snapshot() {
+        for (int i = 0; i < this.snapshot.length; ++i) {
+            this.snapshot[i] = this.written.get(i);
+        }
+    }
+
+    /**
+     * Records the blocks of the last snapshot. The file must have been
+     * forced to disk since the snapshot was taken.
+     */
+    public synchronized void commit() {
+        for (int i = 0; i < this.snapshot.length; ++i) {
+            this.map.putLong(HEADER_SIZE + 8 * i, this.snapshot[i]);
+        }
+        this.map.force();
+    }
+
+    /** Function to close the record, keeping it for a later transfer to resume from. */
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /** Function to close and remove the record, once the file is whole. */
+    public void delete() throws IOException {
+        this.channel.close();
+        Files.deleteIfExists(this.path);
+    }
+}
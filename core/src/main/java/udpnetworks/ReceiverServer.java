@@ -0,0 +1,357 @@
+/**
+ * ReceiverServer.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A long-running selective repeat receiver that takes any number of
+ * concurrent transfers on one port.
+ *
+ * Each SYN from a new sender opens a session: the server picks a session ID,
+ * creates the file session-&lt;id&gt;.bin in its directory and answers with a
+ * SYN-ACK carrying the ID. The sender stamps every later packet with it, so
+ * the server finds the session a packet belongs to without regard to where
+ * it came from, and sends acknowledgements back to the sender's own socket
+ * rather than to its port plus one (senders run with -Dudp.session=true).
+ * Each session's payload size is agreed in its handshake, up to the
+ * server's own udp.payload, and path MTU probes are answered as they come.
+ *
+ * One thread drains the socket and runs every session; each session writes
+ * its file on a disk writer thread of its own. To use more cores, several
+ * servers bind the same port with SO_REUSEPORT (see open): the kernel
+ * hashes each sender's flow to one of their sockets, so every server keeps
+ * a session table and buffers of its own and they share no locks. A
+ * finished session lingers for the idle timeout so a sender that lost its
+ * final acknowledgement still gets it again, and a session that hears
+ * nothing for the idle timeout is abandoned.
+ */
+public class ReceiverServer implements Runnable, Closeable {
+
+    /** Constants. */
+    private static final long SWEEP_NANOS = 1000000000L; // Interval between looks for idle sessions
+
+    /** An acknowledgement held back, due ackDelay after the packet that started it. */
+    private static class Hold {
+        private ReceiverSession session;
+        private long since;
+
+        private Hold(ReceiverSession session, long since) {
+            this.session = session;
+            this.since = since;
+        }
+    }
+
+    /** Instance variables. */
+    private File directory;                     // the directory files are written into
+    private int windowSize;                     // the receive window of each session
+    private long idleNanos;                     // how long a session may go unheard before it is dropped
+    private long ackDelay;                      // how long an acknowledgement may be held back
+    private Transport socket;                   // the socket every session shares
+    private PacketCodec codec;                  // the codec used to encode and decode packets
+    private BufferPool pool;                    // the buffers received into, shared by every session's writer
+    private ByteBuffer ackBuffer;               // the buffer every session encodes acknowledgements into
+    private BlockDecompressor decompressor;     // the inflater of compressed blocks, shared by every session
+    private Map<Long, ReceiverSession> sessions = new HashMap<Long, ReceiverSession>();
+    private Map<SocketAddress, ReceiverSession> bySource = new HashMap<SocketAddress, ReceiverSession>();
+    private ArrayDeque<Hold> holds = new ArrayDeque<Hold>();
+    private ExecutorService closer;             // closes finished and abandoned sessions off the network thread
+    private volatile boolean running = true;
+
+    /**
+     * Constructor for ReceiverServer; binds the socket.
+     * @param hostname    hostname of the server socket
+     * @param port        port number of the server socket
+     * @param directory   the directory files are written into
+     * @param windowSize  the receive window of each session
+     * @param reusePort   whether to share the port with other servers through SO_REUSEPORT
+     * @throws UnsupportedOperationException if reusePort is set but the platform lacks SO_REUSEPORT
+     */
+    public ReceiverServer(String hostname, int port, File directory, int windowSize, boolean reusePort) throws IOException {
+        this.directory = directory;
+        this.windowSize = windowSize;
+        this.idleNanos = TransferOptions.sessionIdleMillis() * 1000000L;
+        this.ackDelay = TransferOptions.ackDelayMicros() * 1000;
+        this.codec = new PacketCodec(TransferOptions.payload());
+        this.socket = Transport.open(new InetSocketAddress(InetAddress.getByName(hostname), port), reusePort);
+        this.pool = this.socket.newBufferPool(this.windowSize + TransferOptions.writeQueue(), this.codec.packetCapacity());
+        this.ackBuffer = this.socket.newBufferPool(1, this.codec.packetCapacity()).acquire();
+        this.decompressor = new BlockDecompressor();
+        this.closer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "session-closer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        PacketLog.summary(
+            "Server socket running on " +
+            this.socket.localAddress().getAddress().toString() + ":" +
+            this.socket.localAddress().getPort() + "."
+        );
+    }
+
+    /** Receives packets and runs the sessions until the server is closed. */
+    public void run() {
+        ByteBuffer message = this.pool.acquire();
+        long lastSweep = System.nanoTime();
+        try {
+            while (this.running) {
+                int length = -1;
+                try {
+                    length = this.socket.receive(message, this.waitMillis());
+                } catch (SocketTimeoutException e) {
+                    /* an acknowledgement or a sweep is due */
+                }
+                long now = System.nanoTime();
+                if (length >= 0 && this.codec.decode(message, length)) {
+                    if (this.dispatch(message, length, now)) {
+                        message = this.pool.acquire();
+                    }
+                } else if (length >= 0 && this.codec.isCorrupt()) {
+                    /* which session it belongs to cannot be trusted, so it is only logged */
+                    PacketLog.packet(PacketLog.CORRUPT, length);
+                }
+                this.flushHolds(now);
+                if (now - lastSweep >= SWEEP_NANOS) {
+                    this.sweep(now);
+                    lastSweep = now;
+                }
+            }
+        } catch (IOException e) {
+            if (this.running) {
+                e.printStackTrace();
+            }
+        }
+        this.decompressor.close();
+    }
+
+    /**
+     * Returns how long the socket may wait for a packet: until the oldest
+     * held acknowledgement is due, or the next sweep. Waits are whole
+     * milliseconds, rounded down so as never to outlast the deadline;
+     * flushHolds sends an acknowledgement due within one before waiting.
+     * @return the timeout in milliseconds, at least 1
+     */
+    private int waitMillis() {
+        Hold head = this.holds.peek();
+        if (head == null) {
+            return (int) (SWEEP_NANOS / 1000000L);
+        }
+        return (int) Math.max(1, (head.since + this.ackDelay - System.nanoTime()) / 1000000);
+    }
+
+    /**
+     * Hands a packet to its session, opening one for a SYN.
+     * @param message  the buffer holding the packet
+     * @param length   the size in bytes of the packet
+     * @param now      the arrival time of the packet
+     * @return whether the buffer was kept by a session
+     */
+    private boolean dispatch(ByteBuffer message, int length, long now) throws IOException {
+        PacketCodec codec = this.codec;
+        if (codec.type() == PacketHeader.TYPE_SYN) {
+            this.accept(this.socket.lastSource(), codec.seqNum(), codec.parityGroup(), Handshake.agree(codec, codec.payloadSize()));
+            return false;
+        } else if (codec.type() == PacketHeader.TYPE_PROBE) {
+            codec.session(0);
+            PathMtu.answer(this.socket, this.socket.lastSource(), codec, this.ackBuffer, length);
+            return false;
+        } else if (codec.type() != PacketHeader.TYPE_DATA && codec.type() != PacketHeader.TYPE_PARITY
+            && codec.type() != PacketHeader.TYPE_FIN) {
+            return false;
+        }
+        ReceiverSession session = this.sessions.get(codec.sessionId());
+        if (session == null) {
+            /* a packet of a session long gone, or of no session at all */
+            return false;
+        } else if (codec.type() == PacketHeader.TYPE_FIN) {
+            session.fin(codec, message, this.socket);
+            return false;
+        }
+        boolean wasHolding = session.isHolding();
+        boolean wasComplete = session.isComplete();
+        boolean kept = codec.type() == PacketHeader.TYPE_DATA
+            ? session.receive(codec, message, length, this.socket, now)
+            : session.receiveParity(codec, message, length, this.socket, now);
+        if (!wasHolding && session.isHolding()) {
+            this.holds.add(new Hold(session, session.heldSince()));
+        }
+        if (!wasComplete && session.isComplete()) {
+            this.closer.execute(session::close);
+        }
+        return kept;
+    }
+
+    /**
+     * Answers a SYN, opening a session unless the sender's SYN-ACK was lost.
+     * @param source       the address the SYN came from
+     * @param fileSize     the size of the file announced
+     * @param parityGroup  the parity group size announced, or 0
+     * @param payload      the payload size agreed
+     */
+    private void accept(SocketAddress source, long fileSize, int parityGroup, int payload) throws IOException {
+        PacketLog.packet(PacketLog.SYN_RECEIVED, fileSize);
+        ReceiverSession session = this.bySource.get(source);
+        if (session != null && session.fileSize() == fileSize) {
+            /* a resent SYN; answer it with the same session */
+            session.reply(this.codec, this.socket);
+            return;
+        }
+        if (session != null) {
+            this.remove(session);
+        }
+
+        long id;
+        File file;
+        do {
+            id = ThreadLocalRandom.current().nextInt(1, Integer.MAX_VALUE);
+            file = new File(this.directory, "session-" + id + ".bin");
+        } while (this.sessions.containsKey(id) || !file.createNewFile());
+
+        session = new ReceiverSession(id, source, file.getPath(), fileSize, payload, this.windowSize, parityGroup,
+            this.pool, this.ackBuffer, this.decompressor);
+        this.sessions.put(id, session);
+        this.bySource.put(source, session);
+        PacketLog.summary("session " + id + ": receiving " + fileSize + " bytes from " + source + " into " + file + ".");
+        session.reply(this.codec, this.socket);
+        if (session.isComplete()) {
+            this.closer.execute(session::close);
+        }
+    }
+
+    /**
+     * Sends every held acknowledgement that is due, or due within a
+     * millisecond and so too soon to wait for.
+     * @param now  the current time
+     */
+    private void flushHolds(long now) throws IOException {
+        Hold head;
+        while ((head = this.holds.peek()) != null) {
+            ReceiverSession session = head.session;
+            if (!session.isHolding() || session.heldSince() != head.since) {
+                /* acknowledged since, or dropped */
+                this.holds.poll();
+            } else if (now - head.since > this.ackDelay - 1000000) {
+                this.holds.poll();
+                session.sendAck(this.codec, this.socket);
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Drops every session unheard for the idle timeout, abandoning any that
+     * were not finished.
+     * @param now  the current time
+     */
+    private void sweep(long now) {
+        List<ReceiverSession> idle = new ArrayList<ReceiverSession>();
+        for (ReceiverSession session : this.sessions.values()) {
+            if (now - session.lastActive() >= this.idleNanos) {
+                idle.add(session);
+            }
+        }
+        for (ReceiverSession session : idle) {
+            this.remove(session);
+        }
+    }
+
+    /**
+     * Forgets a session, closing it first unless it already finished.
+     * @param session  the session to be dropped
+     */
+    private void remove(ReceiverSession session) {
+        this.sessions.remove(session.id());
+        this.bySource.remove(session.source(), session);
+        if (!session.isComplete()) {
+            this.closer.execute(session::close);
+        }
+    }
+
+    /** @return the number of sessions open or lingering */
+    public int sessionCount() {
+        return this.sessions.size();
+    }
+
+    /** Function to stop the server and close its socket; sessions still open are abandoned. */
+    public void close() throws IOException {
+        this.running = false;
+        this.socket.close();
+        this.closer.shutdown();
+    }
+
+    /**
+     * Opens the workers of a server on one port, each on a socket of its own
+     * bound with SO_REUSEPORT. Where the platform lacks SO_REUSEPORT a single
+     * worker is opened instead.
+     * @param hostname    hostname of the server sockets
+     * @param port        port number of the server sockets
+     * @param directory   the directory files are written into
+     * @param windowSize  the receive window of each session
+     * @param workers     the number of workers wanted
+     * @return the workers, not yet running
+     */
+    public static List<ReceiverServer> open(String hostname, int port, File directory, int windowSize, int workers)
+            throws IOException {
+        List<ReceiverServer> servers = new ArrayList<ReceiverServer>();
+        if (workers > 1) {
+            try {
+                for (int i = 0; i < workers; ++i) {
+                    servers.add(new ReceiverServer(hostname, port, directory, windowSize, true));
+                }
+                return servers;
+            } catch (UnsupportedOperationException e) {
+                for (ReceiverServer server : servers) {
+                    server.close();
+                }
+                servers.clear();
+                PacketLog.summary("SO_REUSEPORT is not supported; running a single worker.");
+            }
+        }
+        servers.add(new ReceiverServer(hostname, port, directory, windowSize, false));
+        return servers;
+    }
+
+    /** Function to print out user error message. */
+    private static void printUserErrorMessage() {
+        System.out.println("Usage: java ReceiverServer <port> <directory> <window>");
+        System.out.println(
+            "\tport      - an integer specifying the port number this socket\n" +
+            "\tdirectory - the directory received files are written into, as session-<id>.bin\n" +
+            "\twindow    - an integer specifying the window size of each transfer\n"
+        );
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            printUserErrorMessage();
+            System.exit(1);
+        }
+        int port;
+        int windowSize;
+        try {
+            port = Integer.parseInt(args[0]);
+            windowSize = Integer.parseInt(args[2]);
+        } catch (NumberFormatException e) {
+            printUserErrorMessage();
+            System.exit(1);
+            return;
+        }
+        File directory = new File(args[1]);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("cannot create directory " + directory);
+        }
+        List<ReceiverServer> servers = open("localhost", port, directory, windowSize, TransferOptions.serverWorkers());
+        for (int i = 1; i < servers.size(); ++i) {
+            new Thread(servers.get(i), "worker-" + i).start();
+        }
+        servers.get(0).run();
+    }
+}
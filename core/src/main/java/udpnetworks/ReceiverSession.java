@@ -0,0 +1,326 @@
+/**
+ * ReceiverSession.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The state of one selective repeat transfer to a ReceiverServer.
+ *
+ * A session is driven by the server's network thread one packet at a time,
+ * rather than owning a socket and a loop as a SelectiveRepeatReceiver does.
+ * Blocks are written at their offsets in the session's file by a disk
+ * writer of its own, and acknowledgements are coalesced just as the
+ * single-file receiver coalesces them; the server sends any that are held
+ * back once their deadline passes. Acknowledgements go to the address the
+ * transfer's packets come from, stamped with the session ID. Once the
+ * file is closed, and its digest with it, the session answers the sender's
+ * FIN with a FIN-ACK carrying the digest; a FIN that arrives before then
+ * goes unanswered, and the sender sends it again.
+ */
+public class ReceiverSession {
+
+    /** Instance variables. */
+    private long id;                    // the session ID
+    private SocketAddress source;       // the address the sender sends from and takes acknowledgements on
+    private String filename;            // the name of the file being written
+    private long fileSize;              // the size of the file in bytes
+    private int blockSize;              // the payload size agreed with the sender
+    private int windowSize;             // the receive window in packets
+    private FileBlockSink sink;         // the file blocks are written at their offsets in
+    private DiskWriter writer;          // the thread writing the blocks
+    private BlockDigest blockDigest;    // the digest of the file, taken by the writer
+    private volatile byte[] digest;     // the digest of the file, once it is closed
+    private boolean verified;           // whether the digest has been compared with the sender's
+    private BufferPool pool;            // the pool compressed blocks are inflated into buffers of
+    private BlockDecompressor inflater; // the inflater of compressed blocks, shared by the server's sessions
+    private TransferMetrics metrics;    // the metrics of the transfer
+    private ByteBuffer ackBuffer;       // the buffer acknowledgements are encoded into, shared by the server's sessions
+    private byte[] sackBitmap;          // the reusable bitmap of blocks received out of order
+    private ParityDecoder parity;       // the running parity of each group of blocks, or null
+    private long nextSeqNum;            // the next block expected; every earlier one has been received
+    private long endSeqNum;             // the block count of the file
+    private long highestSeqNum = -1;    // the highest block received
+    private int unacked;                // the packets received since the last acknowledgement
+    private long heldSince;             // the arrival time of the oldest packet not yet acknowledged
+    private long lastActive;            // the arrival time of the last packet
+    private boolean complete;           // whether every block has been received
+
+    /**
+     * Constructor for ReceiverSession; creates the file at its final size.
+     * @param id           the session ID
+     * @param source       the address of the sender
+     * @param filename     the name of the file to be written
+     * @param fileSize     the size of the file in bytes
+     * @param blockSize    the payload size agreed with the sender, the size of each block in bytes
+     * @param windowSize   the receive window in packets
+     * @param parityGroup  the parity group size announced by the sender, or 0
+     * @param pool         the pool written buffers are released to
+     * @param ackBuffer    the buffer acknowledgements are encoded into
+     * @param inflater     the inflater of compressed blocks
+     */
+    ReceiverSession(long id, SocketAddress source, String filename, long fileSize, int blockSize, int windowSize,
+                    int parityGroup, BufferPool pool, ByteBuffer ackBuffer, BlockDecompressor inflater) throws IOException {
+        this.id = id;
+        this.source = source;
+        this.filename = filename;
+        this.fileSize = fileSize;
+        this.blockSize = blockSize;
+        this.windowSize = windowSize;
+        this.ackBuffer = ackBuffer;
+        this.pool = pool;
+        this.inflater = inflater;
+        this.sink = new FileBlockSink(filename, blockSize, fileSize);
+        this.metrics = new TransferMetrics("SelectiveRepeat", "receiver");
+        this.blockDigest = new BlockDigest(this.sink, 0, this.sink.blockCount(), this.metrics);
+        this.writer = new DiskWriter(this.sink, pool, TransferOptions.writeQueue(), this.blockDigest);
+        this.metrics.start(fileSize);
+        this.metrics.payloadBytes(blockSize);
+        this.sackBitmap = new byte[(windowSize + 7) / 8];
+        if (ParityDecoder.isGroupSize(parityGroup)) {
+            this.parity = new ParityDecoder(blockSize, parityGroup, windowSize, fileSize);
+        }
+        this.endSeqNum = this.sink.blockCount();
+        this.complete = this.endSeqNum == 0;
+        this.lastActive = System.nanoTime();
+    }
+
+    /**
+     * Takes a data packet of the session.
+     * @param codec    the codec the packet was decoded with
+     * @param message  the buffer holding the packet
+     * @param length   the size in bytes of the packet
+     * @param out      the transport acknowledgements are sent on
+     * @param now      the arrival time of the packet
+     * @return whether the buffer was queued to be written, so the caller must receive into a fresh one
+     */
+    boolean receive(PacketCodec codec, ByteBuffer message, int length, Transport out, long now) throws IOException {
+        long seqNum = codec.seqNum();
+        this.lastActive = now;
+        this.metrics.received(length);
+        PacketLog.packet(PacketLog.RECEIVED, seqNum, codec.flags());
+
+        if (this.complete) {
+            /* The final acknowledgement was lost; repeat it. */
+            this.metrics.duplicatePacket();
+            this.sendAck(codec, out);
+            return false;
+        }
+        ByteBuffer payload = codec.selectPayload(message);
+        if ((codec.flags() & PacketHeader.FLAG_COMPRESSED) != 0) {
+            /* Inflate the block into a buffer of the pool; the server keeps receiving into the message. */
+            ByteBuffer plain = this.pool.acquire();
+            plain.limit(this.blockSize);
+            if (!this.inflater.inflate(payload, plain, this.metrics)) {
+                this.pool.release(plain);
+            } else if (!this.take(seqNum, plain, codec, out, now)) {
+                this.pool.release(plain);
+            }
+            return false;
+        }
+        return this.take(seqNum, payload, codec, out, now);
+    }
+
+    /**
+     * Takes a parity packet of the session, rebuilding the one block its
+     * groups are missing, if they are missing only one.
+     * @param codec    the codec the packet was decoded with
+     * @param message  the buffer holding the packet
+     * @param length   the size in bytes of the packet
+     * @param out      the transport acknowledgements are sent on
+     * @param now      the arrival time of the packet
+     * @return whether the buffer was queued to be written, so the caller must receive into a fresh one
+     */
+    boolean receiveParity(PacketCodec codec, ByteBuffer message, int length, Transport out, long now) throws IOException {
+        this.lastActive = now;
+        this.metrics.received(length);
+        this.metrics.parityPacket();
+        PacketLog.packet(PacketLog.PARITY_RECEIVED, codec.seqNum(), codec.parityCount());
+        if (this.complete || this.parity == null) {
+            return false;
+        }
+        long seqNum = this.parity.repair(codec, message, this.nextSeqNum, this.windowSize);
+        if (seqNum < 0) {
+            return false;
+        }
+        this.metrics.repair();
+        PacketLog.packet(PacketLog.REPAIRED, seqNum);
+        return this.take(seqNum, message, codec, out, now);
+    }
+
+    /**
+     * Takes a block, received or rebuilt.
+     * @param seqNum   the sequence number of the block
+     * @param payload  the block, between its position and limit
+     * @param codec    the codec used to encode acknowledgements
+     * @param out      the transport acknowledgements are sent on
+     * @param now      the arrival time of the block
+     * @return whether the buffer was queued to be written
+     */
+    private boolean take(long seqNum, ByteBuffer payload, PacketCodec codec, Transport out, long now) throws IOException {
+        boolean packetInOrder = SequenceNumbers.inWindow(seqNum, this.nextSeqNum, this.windowSize)
+            && SequenceNumbers.before(seqNum, this.endSeqNum);
+        boolean packetKnown = packetInOrder || SequenceNumbers.before(seqNum, this.nextSeqNum);
+        boolean ackNow = seqNum != this.nextSeqNum || SequenceNumbers.after(this.highestSeqNum, this.nextSeqNum);
+        boolean stored = false;
+
+        if (packetInOrder && this.sink.mark(seqNum, payload.remaining())) {
+            stored = true;
+            if (this.parity != null) {
+                this.parity.add(seqNum, payload);
+            }
+            this.writer.put(seqNum, payload);
+            PacketLog.packet(PacketLog.QUEUED, seqNum);
+            while (SequenceNumbers.before(this.nextSeqNum, this.endSeqNum) && this.sink.has(this.nextSeqNum)) {
+                ++this.nextSeqNum;
+            }
+            this.complete = this.nextSeqNum == this.endSeqNum;
+        }
+        if (packetInOrder && SequenceNumbers.after(seqNum, this.highestSeqNum)) {
+            this.highestSeqNum = seqNum;
+        }
+
+        if (packetKnown) {
+            if (!stored) {
+                this.metrics.duplicatePacket();
+            }
+            if (this.unacked++ == 0) {
+                this.heldSince = now;
+            }
+            if (ackNow || this.unacked >= TransferOptions.ackEvery() || this.complete) {
+                this.sendAck(codec, out);
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * Sends a selective acknowledgement of everything received so far.
+     * @param codec  the codec used to encode the acknowledgement
+     * @param out    the transport it is sent on
+     */
+    void sendAck(PacketCodec codec, Transport out) throws IOException {
+        if (this.unacked > 0) {
+            this.metrics.ackDelay(System.nanoTime() - this.heldSince);
+            this.unacked = 0;
+        }
+        int bitmapLength = 0;
+        int sacked = 0;
+        if (SequenceNumbers.after(this.highestSeqNum, this.nextSeqNum)) {
+            int bits = (int) Math.min(this.highestSeqNum - this.nextSeqNum, this.windowSize - 1);
+            Arrays.fill(this.sackBitmap, (byte) 0);
+            for (int i = 0; i < bits; ++i) {
+                if (this.sink.has(this.nextSeqNum + 1 + i)) {
+                    this.sackBitmap[i >>> 3] |= (byte) (1 << (i & 7));
+                    bitmapLength = (i >>> 3) + 1;
+                    ++sacked;
+                }
+            }
+        }
+        int window = Math.min(this.windowSize, this.writer.remainingCapacity());
+        codec.session(this.id);
+        codec.encodeSack(this.ackBuffer, this.nextSeqNum, window, this.sackBitmap, bitmapLength);
+        out.send(this.ackBuffer, this.source);
+        this.metrics.sent(this.ackBuffer.limit());
+        this.metrics.ackSent();
+        PacketLog.packet(PacketLog.SACK_SENT, this.nextSeqNum, sacked, window);
+    }
+
+    /**
+     * Answers the SYN that opened the session, or a resent one.
+     * @param codec  the codec used to encode the SYN-ACK
+     * @param out    the transport it is sent on
+     */
+    void reply(PacketCodec codec, Transport out) throws IOException {
+        this.lastActive = System.nanoTime();
+        codec.session(this.id);
+        Handshake.reply(out, this.source, codec, this.ackBuffer, this.fileSize, this.blockSize);
+    }
+
+    /**
+     * Answers the sender's FIN, once the file is closed, with the digest of
+     * the file, and compares the sender's digest with it the first time.
+     * @param codec    the codec the FIN was decoded with
+     * @param message  the buffer holding the FIN
+     * @param out      the transport the FIN-ACK is sent on
+     */
+    void fin(PacketCodec codec, ByteBuffer message, Transport out) throws IOException {
+        this.lastActive = System.nanoTime();
+        PacketLog.packet(PacketLog.FIN_RECEIVED, codec.seqNum());
+        byte[] digest = this.digest;
+        if (digest == null || codec.seqNum() != this.endSeqNum) {
+            return;
+        }
+        if (!this.verified) {
+            this.verified = true;
+            try {
+                BlockDigest.verify("session " + this.id + " " + this.filename, digest, codec.digest(message), this.metrics);
+            } catch (IOException e) {
+                PacketLog.summary("session " + this.id + ": " + e.getMessage());
+            }
+        }
+        codec.session(this.id);
+        codec.encodeFin(this.ackBuffer, PacketHeader.TYPE_FIN_ACK, this.endSeqNum, digest);
+        out.send(this.ackBuffer, this.source);
+        PacketLog.packet(PacketLog.FIN_ACK_SENT, this.endSeqNum);
+    }
+
+    /**
+     * Stops the session: writes every queued block, closes the file and
+     * reports the transfer. Called off the network thread, since draining the
+     * disk writer may take a while.
+     */
+    void close() {
+        try {
+            this.writer.close();
+        } catch (IOException e) {
+            PacketLog.summary("session " + this.id + ": " + e);
+        }
+        this.digest = this.blockDigest.value();
+        this.metrics.finish();
+        PacketLog.summary("session " + this.id + ": " + this.filename
+            + (this.complete ? " successfully received in " + this.blockSize + "-byte packets from " : " abandoned by ") + this.source
+            + ", write queue: " + this.writer.summary());
+    }
+
+    /** @return the session ID */
+    long id() {
+        return this.id;
+    }
+
+    /** @return the address of the sender */
+    SocketAddress source() {
+        return this.source;
+    }
+
+    /** @return the size of the file in bytes */
+    long fileSize() {
+        return this.fileSize;
+    }
+
+    /** @return whether every block has been received */
+    boolean isComplete() {
+        return this.complete;
+    }
+
+    /** @return whether an acknowledgement is being held back */
+    boolean isHolding() {
+        return this.unacked > 0;
+    }
+
+    /** @return the arrival time of the oldest packet not yet acknowledged */
+    long heldSince() {
+        return this.heldSince;
+    }
+
+    /** @return the arrival time of the last packet */
+    long lastActive() {
+        return this.lastActive;
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * ReorderBuffer.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The receive window of a selective repeat receiver: the packets that have
+ * arrived ahead of the next one expected, held until they can be written in
+ * order.
+ *
+ * Packets are kept in a preallocated ring of slots indexed by sequence
+ * number modulo the window size, with a bitmap recording which slots are
+ * occupied. Every sequence number in the window maps to its own slot, so
+ * storing, finding and removing a packet are O(1) with no boxing and no
+ * allocation per packet.
+ */
+public class ReorderBuffer {
+
+    /** Instance variables. */
+    private ByteBuffer[] slots;  // the buffered packets, indexed by sequence number modulo the window size
+    private long[] seqNums;      // the sequence number of the packet in each slot
+    private long[] present;      // the bitmap of occupied slots
+    private int windowSize;      // the number of slots
+    private int size;            // the number of occupied slots
+
+    /**
+     * Constructor for ReorderBuffer.
+     * @param windowSize  the size of the receive window in packets
+     */
+    public ReorderBuffer(int windowSize) {
+        this.windowSize = windowSize;
+        this.slots = new ByteBuffer[windowSize];
+        this.seqNums = new long[windowSize];
+        this.present = new long[(windowSize + 63) / 64];
+    }
+
+    /**
+     * Returns the slot a sequence number maps to.
+     * @param seqNum  the sequence number
+     * @return the index of the slot
+     */
+    private int slot(long seqNum) {
+        return (int) Long.remainderUnsigned(seqNum, this.windowSize);
+    }
+
+    /**
+     * Returns whether a packet is buffered.
+     * @param seqNum  the sequence number of the packet
+     * @return whether the packet is buffered
+     */
+    public boolean contains(long seqNum) {
+        int slot = this.slot(seqNum);
+        return (this.present[slot >>> 6] & (1L << slot)) != 0 && this.seqNums[slot] == seqNum;
+    }
+
+    /**
+     * Buffers a packet. The sequence number must lie within the window, so
+     * that its slot is not held by another packet.
+     * @param seqNum  the sequence number of the packet
+     * @param packet  the buffer holding the packet
+     */
+    public void put(long seqNum, ByteBuffer packet) {
+        int slot = this.slot(seqNum);
+        if ((this.present[slot >>> 6] & (1L << slot)) == 0) {
+            ++this.size;
+        }
+        this.slots[slot] = packet;
+        this.seqNums[slot] = seqNum;
+        this.present[slot >>> 6] |= 1L << slot;
+    }
+
+    /**
+     * Removes a packet from the buffer.
+     * @param seqNum  the sequence number of the packet
+     * @return the buffer holding the packet, or null if it is not buffered
+     */
+    public ByteBuffer take(long seqNum) {
+        if (!this.contains(seqNum)) {
+            return null;
+        }
+        int slot = this.slot(seqNum);
+        ByteBuffer packet = this.slots[slot];
+        this.slots[slot] = null;
+        this.present[slot >>> 6] &= ~(1L << slot);
+        --this.size;
+        return packet;
+    }
+
+    /**
+     * Returns the number of buffered packets.
+     * @return the number of buffered packets
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns whether no packets are buffered.
+     * @return whether no packets are buffered
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+}
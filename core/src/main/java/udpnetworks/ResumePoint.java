@@ -0,0 +1,49 @@
+/**
+ * ResumePoint.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+/**
+ * What a receiver resuming a transfer already has of a sender's range, as
+ * told in its SYN-ACK: every block before the resume point, and the blocks
+ * after it set in a bitmap. The bitmap reaches only as far as the SYN-ACK
+ * holds, so blocks beyond it are sent whether or not the receiver has them.
+ */
+public class ResumePoint {
+
+    /** Instance variables. */
+    private long seqNum;    // the first block of the range the receiver lacks
+    private byte[] bitmap;  // bit i is set if the receiver has seqNum + 1 + i
+
+    /**
+     * Constructor for ResumePoint.
+     * @param seqNum  the first block of the range the receiver lacks
+     * @param bitmap  the blocks after it the receiver has, bit i for seqNum + 1 + i
+     */
+    public ResumePoint(long seqNum, byte[] bitmap) {
+        this.seqNum = seqNum;
+        this.bitmap = bitmap;
+    }
+
+    /** @return the first block of the range the receiver lacks */
+    public long seqNum() {
+        return this.seqNum;
+    }
+
+    /**
+     * Returns whether the receiver already has a block, so it need not be sent.
+     * @param seqNum  the sequence number of the block
+     * @return whether the block is before the resume point or set in the bitmap
+     */
+    public boolean has(long seqNum) {
+        long bit = seqNum - this.seqNum - 1;
+        if (bit < -1) {
+            return true;
+        } else if (bit < 0 || bit >= 8L * this.bitmap.length) {
+            return false;
+        }
+        return (this.bitmap[(int) (bit >>> 3)] & (1 << (bit & 7))) != 0;
+    }
+}
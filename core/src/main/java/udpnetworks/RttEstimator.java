@@ -0,0 +1,160 @@
+/**
+ * RttEstimator.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+/**
+ * Retransmission timeout estimation from measured round-trip times, as
+ * described in RFC 6298.
+ *
+ * The estimator keeps a smoothed round-trip time (SRTT) and its variation
+ * (RTTVAR) and derives RTO = SRTT + 4 * RTTVAR, clamped to a minimum and
+ * maximum. Callers follow Karn's rule and only sample packets that were
+ * never retransmitted. Every timeout doubles the RTO until the next valid
+ * sample. In fixed mode the RTO stays at its initial value, as it did when
+ * the timeout was taken straight from the command line.
+ */
+public class RttEstimator {
+
+    /** Constants. */
+    private static final int ALPHA_SHIFT = 3;  // SRTT gain of 1/8
+    private static final int BETA_SHIFT  = 2;  // RTTVAR gain of 1/4
+    private static final int K           = 4;  // RTTVAR multiplier
+
+    /** Instance variables. */
+    private boolean adaptive;     // whether samples update the RTO
+    private long minRto;          // the lower bound on the RTO in nanoseconds
+    private long maxRto;          // the upper bound on the RTO in nanoseconds
+    private long srtt;            // the smoothed round-trip time in nanoseconds
+    private long rttvar;          // the round-trip time variation in nanoseconds
+    private long minRtt;          // the smallest round-trip time sampled in nanoseconds
+    private long rto;             // the current retransmission timeout in nanoseconds
+    private long lastBackoff;     // the time of the last backoff
+    private int samples;          // the number of round-trip times sampled
+    private int backoffs;         // the number of backoffs
+
+    /**
+     * Constructor for RttEstimator.
+     * @param initialRto  the RTO used until the first sample, in nanoseconds
+     * @param minRto      the lower bound on the RTO in nanoseconds
+     * @param maxRto      the upper bound on the RTO in nanoseconds
+     * @param adaptive    whether samples update the RTO
+     */
+    public RttEstimator(long initialRto, long minRto, long maxRto, boolean adaptive) {
+        this.adaptive = adaptive;
+        this.minRto = minRto;
+        this.maxRto = Math.max(maxRto, initialRto);
+        this.rto = initialRto;
+        this.lastBackoff = Long.MIN_VALUE;
+    }
+
+    /**
+     * Creates an estimator configured by TransferOptions.
+     * @param initialTimeout  the timeout given on the command line, in milliseconds
+     * @return a new estimator
+     */
+    public static RttEstimator fromOptions(int initialTimeout) {
+        return new RttEstimator(
+            initialTimeout * 1000000L,
+            TransferOptions.minRtoMillis() * 1000000L,
+            TransferOptions.maxRtoMillis() * 1000000L,
+            TransferOptions.adaptiveRto()
+        );
+    }
+
+    /**
+     * Records a round-trip time measured on a packet that was not retransmitted.
+     * @param rttNanos  the round-trip time in nanoseconds
+     */
+    public synchronized void sample(long rttNanos) {
+        if (rttNanos < 0) {
+            return;
+        }
+        ++this.samples;
+        if (this.samples == 1 || rttNanos < this.minRtt) {
+            this.minRtt = rttNanos;
+        }
+        if (this.samples == 1) {
+            this.srtt = rttNanos;
+            this.rttvar = rttNanos / 2;
+        } else {
+            this.rttvar += (Math.abs(this.srtt - rttNanos) - this.rttvar) >> BETA_SHIFT;
+            this.srtt += (rttNanos - this.srtt) >> ALPHA_SHIFT;
+        }
+        if (this.adaptive) {
+            this.rto = Math.min(this.maxRto, Math.max(this.minRto, this.srtt + K * this.rttvar));
+        }
+    }
+
+    /**
+     * Doubles the RTO after a timeout. When several packets of the same flight
+     * time out, only the first backs off: a packet last sent before the
+     * previous backoff does not back off again.
+     * @param sentAtNanos  the time the timed out packet was last sent
+     * @return whether this timeout is the first of its flight
+     */
+    public synchronized boolean backoff(long sentAtNanos) {
+        if (sentAtNanos < this.lastBackoff) {
+            return false;
+        }
+        this.lastBackoff = System.nanoTime();
+        if (this.adaptive) {
+            ++this.backoffs;
+            this.rto = Math.min(this.maxRto, this.rto * 2);
+        }
+        return true;
+    }
+
+    /** @return the current retransmission timeout in nanoseconds */
+    public synchronized long rtoNanos() {
+        return this.rto;
+    }
+
+    /** @return the current retransmission timeout in whole milliseconds, at least 1 */
+    public synchronized int rtoMillis() {
+        return (int) Math.max(1, (this.rto + 999999) / 1000000);
+    }
+
+    /** @return the smoothed round-trip time in nanoseconds, or 0 before the first sample */
+    public synchronized long srttNanos() {
+        return this.srtt;
+    }
+
+    /**
+     * Returns the smallest round-trip time sampled: the path's own delay,
+     * without the queueing the other samples may include.
+     * @return the minimum round-trip time in nanoseconds, or 0 before the first sample
+     */
+    public synchronized long minRttNanos() {
+        return this.minRtt;
+    }
+
+    /** @return the round-trip time variation in nanoseconds */
+    public synchronized long rttvarNanos() {
+        return this.rttvar;
+    }
+
+    /** @return the number of round-trip times sampled */
+    public synchronized int samples() {
+        return this.samples;
+    }
+
+    /** @return the number of backoffs */
+    public synchronized int backoffs() {
+        return this.backoffs;
+    }
+
+    /**
+     * Returns a one-line summary for the transmission details.
+     * @return the summary
+     */
+    public synchronized String summary() {
+        return String.format(
+            "SRTT %.3fms, RTTVAR %.3fms, RTO %.3fms (%s, %d samples, %d backoffs)",
+            this.srtt / 1e6, this.rttvar / 1e6, this.rto / 1e6,
+            this.adaptive ? "adaptive" : "fixed", this.samples, this.backoffs
+        );
+    }
+}
@@ -0,0 +1,463 @@
+/**
+ * SelectiveRepeatReceiver.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.LongPredicate;
+
+public class SelectiveRepeatReceiver {
+
+	/* Constants */
+	private static final int PORT_OFFSET = 1; 	  // Port offset used to receive acknowledgements
+	
+	/* Instance variables */
+	private InetAddress address;  			// the address of this receiver socket
+	private int port;			  			// the port number of this receiver socket
+	private String filename;	  			// the name of the file to be saved as
+	private int windowSize;		  			// the window size of each transmission
+	private Transport receiverSocket;  		// the receiver socket
+	private Transport senderSocket;    		// the sender socket
+	private InetSocketAddress ackTarget;	// the address and port acknowledgements are sent to
+	private PacketCodec codec;				// the codec used to encode and decode packets
+	private ByteBuffer ackBuffer;			// the reusable buffer acknowledgements are encoded into
+	private byte[] sackBitmap;				// the reusable bitmap of messages received out of order
+	private TransferMetrics metrics;		// the metrics of the transfer
+	private int parityGroup;				// the parity group size announced by the sender, or 0
+	private int payload;					// the payload size agreed with the sender
+	
+	/**
+     * Constructor for Receiver2a.
+     * @param hostname    hostname of the receiver socket
+     * @param port        port number of the receiver socket
+     * @param filename    name of the file to be saved as
+     * @param windowSize  size of each transmission window
+     */
+	public SelectiveRepeatReceiver(String hostname, int port, String filename, int windowSize) throws UnknownHostException {
+		this(InetAddress.getByName(hostname), port, filename, windowSize, new TransferMetrics("SelectiveRepeat", "receiver"));
+	}
+
+	/**
+     * Constructor for one stream of a SelectiveRepeatReceiver, sharing the metrics of the transfer.
+     * @param address     address of the receiver socket
+     * @param port        port number of the receiver socket
+     * @param filename    name of the file to be saved as
+     * @param windowSize  size of each transmission window
+     * @param metrics     the metrics of the transfer
+     */
+	private SelectiveRepeatReceiver(InetAddress address, int port, String filename, int windowSize, TransferMetrics metrics) {
+		this.address 	= address;
+		this.port 		= port;
+		this.filename 	= filename;
+		this.windowSize = windowSize;
+		this.ackTarget 	= new InetSocketAddress(this.address, this.port + PORT_OFFSET);
+		this.codec 		= new PacketCodec(TransferOptions.payload());
+		this.sackBitmap = new byte[(windowSize + 7) / 8];
+		this.metrics 	= metrics;
+	}
+
+	/** Function to start the sender and receiver sockets. */
+	public void start() throws IOException {
+		this.receiverSocket = Transport.open(new InetSocketAddress(this.address, this.port));
+        PacketLog.summary(
+            "Receiver socket running on " + 
+            this.receiverSocket.localAddress().getAddress().toString() + ":" + 
+            this.receiverSocket.localAddress().getPort() + "."
+        );
+        this.senderSocket = Transport.open(null);
+        PacketLog.summary(
+            "Sender socket running on " + 
+            this.senderSocket.localAddress().getAddress().toString() + ":" + 
+            this.senderSocket.localAddress().getPort() + "."
+        );
+        this.ackBuffer = this.senderSocket.newBufferPool(1, this.codec.packetCapacity()).acquire();
+	}
+	
+	/** Function to receive a file from a sender. */
+	public void receiveFile() throws IOException {
+		
+		/* Wait for the sender to announce the transfer, the size of the file, the number of streams and the payload size. */
+		PacketCodec codec = this.codec;
+		ByteBuffer handshake = this.receiverSocket.newBufferPool(1, codec.packetCapacity()).acquire();
+		final long fileSize = Handshake.accept(this.receiverSocket, this.senderSocket, this.ackTarget, codec, handshake, this.ackBuffer);
+		final int streams = codec.streams();
+		this.parityGroup = codec.parityGroup();
+
+		/* A file written at its offsets may be resumed, keeping the block size it was started with. */
+		boolean positional = TransferOptions.positionalWrites() || streams > 1;
+		boolean resumable = positional && TransferOptions.resume();
+		int maxPayload = codec.payloadSize();
+		int recorded = resumable ? ProgressFile.recordedBlockSize(this.filename, fileSize) : 0;
+		this.payload = Handshake.agree(codec, recorded > 0 ? Math.min(maxPayload, recorded) : maxPayload);
+		this.metrics.start(fileSize);
+		this.metrics.payloadBytes(this.payload);
+		final long blockCount = (fileSize + this.payload - 1) / this.payload;
+
+		/* Initialize a pool of reusable buffers, sized to the payload agreed, for the messages received, buffered and queued to be written. */
+		int queueSize = TransferOptions.writeQueue();
+		BufferPool pool = this.receiverSocket.newBufferPool((positional ? 2 : this.windowSize + 2) + queueSize, PacketHeader.MAX_SIZE + this.payload);
+		ByteBuffer message = pool.acquire();
+
+		if (streams == 1) {
+			FileBlockSink sink = positional ? new FileBlockSink(this.filename, this.payload, fileSize, resumable) : null;
+			this.resumed(sink);
+			Handshake.reply(this.senderSocket, this.ackTarget, codec, this.ackBuffer, fileSize, this.payload, sink, 0, blockCount);
+			this.receiveRange(sink, fileSize, 0, blockCount, pool, message);
+		} else {
+			/*
+			 * Every stream writes its range at its offsets in one shared file; stream 0 carries on from this
+			 * handshake, the others get receivers of their own on the ports that follow and wait for theirs.
+			 */
+			final FileBlockSink sink = new FileBlockSink(this.filename, this.payload, fileSize, resumable);
+			this.resumed(sink);
+			Handshake.reply(this.senderSocket, this.ackTarget, codec, this.ackBuffer, fileSize, this.payload,
+				sink, 0, ParallelStreams.firstSeqNum(blockCount, streams, 1));
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+			for (int i = 0; i < streams; ++i) {
+				final long firstSeqNum = ParallelStreams.firstSeqNum(blockCount, streams, i);
+				final long endSeqNum = ParallelStreams.firstSeqNum(blockCount, streams, i + 1);
+				if (i == 0) {
+					final BufferPool streamPool = pool;
+					final ByteBuffer streamMessage = message;
+					tasks.add(() -> {
+						this.receiveRange(sink, fileSize, firstSeqNum, endSeqNum, streamPool, streamMessage);
+						return null;
+					});
+				} else {
+					final SelectiveRepeatReceiver stream = new SelectiveRepeatReceiver(
+						this.address, ParallelStreams.port(this.port, i), this.filename, this.windowSize, this.metrics);
+					stream.start();
+					sink.retain();
+					tasks.add(() -> {
+						stream.acceptRange(sink, fileSize, firstSeqNum, endSeqNum);
+						return null;
+					});
+				}
+			}
+			ParallelStreams.run(tasks);
+		}
+
+        this.metrics.finish();
+        PacketLog.summary(this.filename + " successfully received in " + this.payload + "-byte packets"
+            + (streams > 1 ? " over " + streams + " streams." : "."));
+	}
+
+	/**
+	 * Function to report the blocks a resumed file already has.
+	 * @param sink  the file, or null if it is written in order
+	 */
+	private void resumed(FileBlockSink sink) {
+		if (sink != null && sink.isResumed()) {
+			this.metrics.resumed(sink.receivedCount());
+			PacketLog.summary("Resuming " + this.filename + ": " + sink.receivedCount() + " of " + sink.blockCount() + " blocks already received.");
+		}
+	}
+
+	/**
+	 * Function to receive one stream's range of a file, from its handshake on.
+	 * @param sink         the file, shared by every stream
+	 * @param fileSize     the size of the file in bytes
+	 * @param firstSeqNum  the sequence number of the first block of the range
+	 * @param endSeqNum    the sequence number after the last block of the range
+	 */
+	private void acceptRange(FileBlockSink sink, long fileSize, long firstSeqNum, long endSeqNum) throws IOException {
+		ByteBuffer handshake = this.receiverSocket.newBufferPool(1, this.codec.packetCapacity()).acquire();
+		long announced;
+		do {
+			announced = Handshake.accept(this.receiverSocket, this.senderSocket, this.ackTarget, this.codec, handshake, this.ackBuffer);
+		} while (announced != fileSize);
+		this.parityGroup = this.codec.parityGroup();
+		this.payload = Handshake.agree(this.codec, this.codec.payloadSize());
+		Handshake.reply(this.senderSocket, this.ackTarget, this.codec, this.ackBuffer, fileSize, this.payload, sink, firstSeqNum, endSeqNum);
+		BufferPool pool = this.receiverSocket.newBufferPool(2 + TransferOptions.writeQueue(), PacketHeader.MAX_SIZE + this.payload);
+		ByteBuffer message = pool.acquire();
+		this.receiveRange(sink, fileSize, firstSeqNum, endSeqNum, pool, message);
+	}
+
+	/**
+	 * Function to receive a range of a file once its handshake is done, until every block of it is received.
+	 * @param sink         the file blocks are written at their offsets in, or null to write them in order
+	 * @param fileSize     the size of the file in bytes
+	 * @param firstSeqNum  the sequence number of the first block of the range
+	 * @param endSeqNum    the sequence number after the last block of the range
+	 * @param pool         the buffers of the messages received, buffered and queued to be written
+	 * @param message      the buffer the next message is received into, from the pool
+	 */
+	private void receiveRange(FileBlockSink sink, long fileSize, long firstSeqNum, long endSeqNum,
+							  BufferPool pool, ByteBuffer message) throws IOException {
+		PacketCodec codec = this.codec;
+		int queueSize = TransferOptions.writeQueue();
+
+		/*
+		 * In positional mode each block is written at its offset as soon as it arrives. Otherwise blocks are
+		 * written in order through a stream, and those that arrive early are held in a reorder buffer. Either
+		 * way the writing is done by a disk writer thread, so this thread only drains the socket.
+		 */
+		boolean positional = sink != null;
+		ReorderBuffer buffer = null;
+		DiskWriter writer;
+		LongPredicate received;
+		BlockDigest digest;
+		if (positional) {
+			digest = new BlockDigest(sink, firstSeqNum, endSeqNum, this.metrics);
+			writer = new DiskWriter(sink, pool, queueSize, digest);
+			received = sink::has;
+		} else {
+			digest = new BlockDigest(firstSeqNum, endSeqNum, this.metrics);
+			writer = new DiskWriter(new FileOutputStream(this.filename).getChannel(), pool, queueSize, digest);
+			buffer = new ReorderBuffer(this.windowSize);
+			received = buffer::contains;
+		}
+
+		/*
+		 * Keep the running parity of each group of blocks, if the sender sends parity packets. A resumed file
+		 * has blocks on disk that are not in the running parity, so the sender sends none for it.
+		 */
+		boolean resumed = positional && sink.isResumed();
+		ParityDecoder parity = ParityDecoder.isGroupSize(this.parityGroup) && !resumed
+			? new ParityDecoder(this.payload, this.parityGroup, this.windowSize, fileSize) : null;
+		BlockDecompressor decompressor = new BlockDecompressor();
+
+		/* Initialize tracking variables; a resumed range starts at the first block not yet received. */
+		long nextSeqNum  = resumed ? sink.firstMissing(firstSeqNum, endSeqNum) : firstSeqNum;
+		long finalSeqNum = endSeqNum - 1;
+		long highestSeqNum = nextSeqNum - 1;
+		boolean fileReceived = nextSeqNum == endSeqNum;
+
+		/* Acknowledgements are coalesced: one covers up to ackEvery packets, or however many arrive within ackDelay. */
+		int ackEvery = TransferOptions.ackEvery();
+		long ackDelay = TransferOptions.ackDelayMicros() * 1000;
+		int unacked = 0;
+		long heldSince = 0;  // the arrival time of the oldest packet not yet acknowledged
+    	
+    	/* Iterate over every message while there are still packets in flight. */
+        while (fileReceived == false) {
+        	
+        	/*
+        	 * While an acknowledgement is held back, wait no longer than its deadline. Waits are whole milliseconds,
+        	 * rounded down so as never to outlast it, and one due within a millisecond is sent now.
+        	 */
+        	int length;
+        	try {
+        		int wait = 0;
+        		if (unacked > 0) {
+        			wait = (int) ((heldSince + ackDelay - System.nanoTime()) / 1000000);
+        			if (wait <= 0) {
+        				throw new SocketTimeoutException();
+        			}
+        		}
+        		length = this.receiverSocket.receive(message, wait);
+        	} catch (SocketTimeoutException e) {
+        		this.metrics.ackDelay(System.nanoTime() - heldSince);
+        		this.sendAck(nextSeqNum, highestSeqNum, received, Math.min(this.windowSize, writer.remainingCapacity()));
+        		unacked = 0;
+        		continue;
+        	}
+	        
+	        if (!codec.decode(message, length)) {
+	        	if (codec.isCorrupt()) {
+	        		this.metrics.corruptPacket();
+	        		PacketLog.packet(PacketLog.CORRUPT, length);
+	        	}
+	        	continue;
+	        } else if (codec.type() == PacketHeader.TYPE_SYN) {
+	        	/* The SYN-ACK was lost; answer the sender again. */
+	        	Handshake.reply(this.senderSocket, this.ackTarget, codec, this.ackBuffer, fileSize, this.payload, sink, firstSeqNum, endSeqNum);
+	        	continue;
+	        }
+	        long seqNum;
+	        if (codec.type() == PacketHeader.TYPE_DATA) {
+	        	seqNum = codec.seqNum();
+	        	PacketLog.packet(PacketLog.RECEIVED, seqNum, codec.flags());
+	        	this.metrics.received(length);
+	        	codec.selectPayload(message);
+	        	if ((codec.flags() & PacketHeader.FLAG_COMPRESSED) != 0) {
+	        		/* Inflate the block into a fresh buffer, which stands in for the message from here on. */
+	        		ByteBuffer plain = pool.acquire();
+	        		plain.limit(this.payload);
+	        		if (!decompressor.inflate(message, plain, this.metrics)) {
+	        			pool.release(plain);
+	        			continue;
+	        		}
+	        		pool.release(message);
+	        		message = plain;
+	        	}
+	        } else if (codec.type() == PacketHeader.TYPE_PARITY) {
+	        	/* A parity packet stands in for the one block of its groups that was lost, if only one was. */
+	        	PacketLog.packet(PacketLog.PARITY_RECEIVED, codec.seqNum(), codec.parityCount());
+	        	this.metrics.received(length);
+	        	this.metrics.parityPacket();
+	        	seqNum = parity != null ? parity.repair(codec, message, nextSeqNum, this.windowSize) : -1;
+	        	if (seqNum < 0) {
+	        		continue;
+	        	}
+	        	this.metrics.repair();
+	        	PacketLog.packet(PacketLog.REPAIRED, seqNum);
+	        } else {
+	        	continue;
+	        }
+	        
+	        /* Check if the packet is within the window. */
+			boolean packetInOrder = SequenceNumbers.inWindow(seqNum, nextSeqNum, this.windowSize) && SequenceNumbers.before(seqNum, endSeqNum);
+			boolean packetKnown = packetInOrder || SequenceNumbers.before(seqNum, nextSeqNum);
+
+			/* Acknowledge at once anything but the next expected packet with no gap behind it, so the sender learns of gaps quickly. */
+			boolean ackNow = seqNum != nextSeqNum || SequenceNumbers.after(highestSeqNum, nextSeqNum);
+			boolean stored = false;
+			
+			if (packetInOrder && positional) {
+				/* Queue the block to be written at its offset straight away. */
+				if (sink.mark(seqNum, message.remaining())) {
+					stored = true;
+					if (parity != null) {
+						parity.add(seqNum, message);
+					}
+					writer.put(seqNum, message);
+					message = pool.acquire();
+					PacketLog.packet(PacketLog.QUEUED, seqNum);
+				}
+				while (SequenceNumbers.before(nextSeqNum, endSeqNum) && sink.has(nextSeqNum)) {
+					++nextSeqNum;
+				}
+				fileReceived = nextSeqNum == endSeqNum;
+			} else if (packetInOrder && !buffer.contains(seqNum)) {
+				/* Keep the message buffer itself and receive the next message into a fresh one. */
+				if (parity != null) {
+					parity.add(seqNum, message);
+				}
+            	buffer.put(seqNum, message);
+            	message = pool.acquire();
+            	stored = true;
+            	
+            	/* While there are valid messages in the buffer... */
+            	ByteBuffer data;
+            	while ((data = buffer.take(nextSeqNum)) != null) {
+            		writer.put(nextSeqNum, data);
+            		PacketLog.packet(PacketLog.QUEUED, nextSeqNum);
+            		if (nextSeqNum == finalSeqNum) {
+            			fileReceived = true;
+            		}
+            		++nextSeqNum;
+            	}
+            }
+			if (packetInOrder && SequenceNumbers.after(seqNum, highestSeqNum)) {
+				highestSeqNum = seqNum;
+			}
+	        
+        	/* If the packet is within the window, it is covered by the next acknowledgement. */
+			if (packetKnown) {
+				if (!stored) {
+					this.metrics.duplicatePacket();
+				}
+				if (unacked++ == 0) {
+					heldSince = System.nanoTime();
+				}
+				long now = System.nanoTime();
+				if (ackNow || unacked >= ackEvery || fileReceived || now - heldSince >= ackDelay) {
+					this.metrics.ackDelay(now - heldSince);
+					this.sendAck(nextSeqNum, highestSeqNum, received, Math.min(this.windowSize, writer.remainingCapacity()));
+					unacked = 0;
+				}
+			}
+        }
+
+        /* Write every queued block and close the file, which completes its digest. */
+        writer.close();
+        decompressor.close();
+        PacketLog.summary("Write queue: " + writer.summary());
+
+        /* Compare digests with the sender, repeating the final acknowledgement should it have been lost. */
+        codec.encodeSack(this.ackBuffer, endSeqNum, this.windowSize, this.sackBitmap, 0);
+        byte[] senderDigest = Handshake.linger(this.receiverSocket, this.senderSocket, this.ackTarget, codec, message,
+        	this.ackBuffer, endSeqNum, digest.value());
+        BlockDigest.verify(ParallelStreams.label(this.filename, (fileSize + this.payload - 1) / this.payload, firstSeqNum, endSeqNum),
+        	digest.value(), senderDigest, this.metrics);
+
+        /* Close the sockets. */
+		this.senderSocket.close();
+        this.receiverSocket.close();
+	}
+	
+	/**
+     * Function to send a selective acknowledgement to a sender.
+     * @param nextSeqNum     the next sequence number expected; every earlier one has been received
+     * @param highestSeqNum  the highest sequence number received
+     * @param received       whether a sequence number after the next expected has been received
+     * @param window         the number of packets the receiver can take beyond the next expected
+     */
+	public void sendAck(long nextSeqNum, long highestSeqNum, LongPredicate received, int window) throws IOException {
+		int bitmapLength = 0;
+		int sacked = 0;
+		if (SequenceNumbers.after(highestSeqNum, nextSeqNum)) {
+			int bits = (int) Math.min(highestSeqNum - nextSeqNum, this.windowSize - 1);
+			Arrays.fill(this.sackBitmap, (byte) 0);
+			for (int i = 0; i < bits; ++i) {
+				if (received.test(nextSeqNum + 1 + i)) {
+					this.sackBitmap[i >>> 3] |= (byte) (1 << (i & 7));
+					bitmapLength = (i >>> 3) + 1;
+					++sacked;
+				}
+			}
+		}
+		this.codec.encodeSack(this.ackBuffer, nextSeqNum, window, this.sackBitmap, bitmapLength);
+		this.senderSocket.send(this.ackBuffer, this.ackTarget);
+		this.metrics.sent(this.ackBuffer.limit());
+		this.metrics.ackSent();
+		PacketLog.packet(PacketLog.SACK_SENT, nextSeqNum, sacked, window);
+	}
+
+	/** Function to print the usage instructions to the user. */
+	public static void printUserErrorMessage() {
+		System.err.println("Invalid command line arguments.");
+        System.out.println("Usage: java Receiver2a <port> <filename> <window>");
+        System.out.println(
+            "\tport     - an integer specifying the port number this socket\n" + 
+            "\tfilename - a string specifying the name of the file to be written\n" +
+            "\twindow   - an integer specifying the window size of the transmission\n"
+        );
+	}
+	
+	public static void main(String[] args) throws IOException {
+
+		SelectiveRepeatReceiver receiver = null;
+		boolean inputOkay = false;
+
+		if (args.length != 3) {
+			printUserErrorMessage();
+			System.exit(1);
+		} else {
+			try {
+				String hostname = "localhost";
+				int port 		= Integer.parseInt(args[0]);
+				String filename = args[1];
+				int windowSize 	= Integer.parseInt(args[2]);
+
+				receiver = new SelectiveRepeatReceiver(
+					hostname, 
+					port, 
+					filename, 
+					windowSize
+				);
+				inputOkay = true;
+			} catch (NumberFormatException e) {
+				printUserErrorMessage();
+				System.exit(1);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+
+		if (inputOkay) {
+			receiver.start();
+			receiver.receiveFile();
+		}
+	}
+}
@@ -0,0 +1,547 @@
+/** 
+ * SelectiveRepeatSender.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+public class SelectiveRepeatSender {
+	
+	/* Constants */
+	private static final int PORT_OFFSET    = 1;     // Port offset used to receive acknowledgements
+	
+	/* Instance variables */
+	private InetAddress address;			// the address to be sent to
+	private int port;						// the port to be sent to
+	private String filename;				// the name of the file to be sent
+	private FileBlockSource source;			// the blocks of the file to be sent
+	private int timeout;					// the initial retry timeout
+	private RttEstimator rtt;				// the estimator of the retry timeout
+	private CongestionController cc;		// the controller of the congestion window
+	private Pacer pacer;					// the pacer spacing packets out over the round trip
+	private int receiveWindow;				// the window last advertised by the receiver
+	private TransferMetrics metrics;		// the metrics of the transfer
+	private int windowSize;					// the window size of each transmission
+	private InetSocketAddress target;		// the address and port to be sent to
+	private Transport senderSocket;    		// the sender socket
+	private Transport receiverSocket;		// the receiver socket
+	private long startTime;
+	private long endTime;
+	private TimingWheel timer;				// the wheel the retransmission timers run on
+	private PacketTimerTask[] timers;		// the retransmission timers, indexed by sequence number modulo window
+	private int inFlight;					// the number of packets sent and not yet acknowledged
+	private PacketCodec codec;				// the codec used to encode and decode packets
+	private BufferPool pool;				// the buffers of the packets in flight
+	private long sampleSentAt;				// the latest send time of the packets covered by an acknowledgement
+	private int streams = 1;				// the number of parallel streams the file is split across
+	private ParityEncoder parity;			// the encoder of parity packets, or null if they are off
+	private ByteBuffer parityBuffer;		// the reusable buffer parity packets are encoded into
+	private int payload;					// the payload size agreed with the receiver
+	private boolean probed;					// whether the payload size was found by probing the path MTU
+	private BlockCompressor compressor;		// the compressor of blocks, or null if compression is off
+	private ResumePoint resume;				// the blocks of the range the receiver already has, or null
+	private BlockDigest digest;				// the digest of the range, taken as each block is first sent
+	private ByteBuffer skipped;				// the buffer blocks the receiver already has are read into for the digest
+	
+	/**
+     * Constructor for SelectiveRepeatSender.
+     * @param hostname    hostname of the address being sent to
+     * @param port        port number being sent to
+     * @param filename    name of the file to be sent
+     * @param timeout 	  retry timeout value
+     * @param windowSize  size of each transmission window
+     */
+	public SelectiveRepeatSender(String hostname, int port, String filename, int timeout, int windowSize) throws IOException {
+		this(InetAddress.getByName(hostname), port, filename, timeout, windowSize, new TransferMetrics("SelectiveRepeat", "sender"));
+	}
+
+	/**
+	 * Constructor for one stream of a SelectiveRepeatSender, sharing the metrics of the transfer.
+	 * @param address     address being sent to
+	 * @param port        port number being sent to
+	 * @param filename    name of the file to be sent
+	 * @param timeout     retry timeout value
+	 * @param windowSize  size of each transmission window
+	 * @param metrics     the metrics of the transfer
+	 */
+	private SelectiveRepeatSender(InetAddress address, int port, String filename, int timeout, int windowSize, TransferMetrics metrics) {
+		this.address = address;
+		this.port = port;
+		this.filename = filename;
+		this.timeout = timeout;
+		this.windowSize = windowSize;
+		this.target = new InetSocketAddress(this.address, this.port);
+		this.rtt = RttEstimator.fromOptions(timeout);
+		this.cc = CongestionController.fromOptions(windowSize);
+		this.receiveWindow = windowSize;
+		this.metrics = metrics;
+		this.codec = new PacketCodec(TransferOptions.payload());
+	}
+
+	/** Function to start the sender and receiver sockets. */
+	public void start() throws IOException {
+		this.senderSocket = Transport.open(null);
+        PacketLog.summary(
+            "Sender socket running on " + 
+            this.senderSocket.localAddress().getAddress().toString() + ":" + 
+            this.senderSocket.localAddress().getPort() + "."
+        );
+        if (TransferOptions.sessions()) {
+        	/* A ReceiverServer acknowledges to the socket the packets come from. */
+        	this.receiverSocket = this.senderSocket;
+        } else {
+        	this.receiverSocket = Transport.open(new InetSocketAddress(this.port + PORT_OFFSET));
+        }
+        PacketLog.summary(
+            "Receiver socket running on " + 
+            this.receiverSocket.localAddress().getAddress().toString() + ":" + 
+            this.receiverSocket.localAddress().getPort() + "."
+        );
+        this.timer = new TimingWheel(TransferOptions.wheelTickNanos(), TransferOptions.wheelSlots(), "retransmit");
+	}
+
+	/** Function to send the file. */
+	public void sendFile() throws IOException {
+
+		/* Start a timer to time the file transmission. */
+		this.startTimer();
+
+		/* Open the file to be sent; blocks are read from it on demand, once their size is agreed. */
+		final FileBlockSource source = new FileBlockSource(this.filename, this.codec.payloadSize());
+		this.source = source;
+		this.metrics.start(source.size());
+
+		/* Find the largest payload that crosses the path unfragmented, if asked to. */
+		int payload = this.codec.payloadSize();
+		if (TransferOptions.probePathMtu()) {
+			ByteBuffer probe = this.receiverSocket.newBufferPool(1, this.codec.packetCapacity()).acquire();
+			payload = PathMtu.probe(this.senderSocket, this.receiverSocket, this.target, this.codec, probe, payload, this.rtt);
+			source.resize(payload);
+			this.probed = true;
+		}
+
+		/*
+		 * Split the file across parallel streams, each on sockets and threads of its own; a session is one stream.
+		 * Stream 0's handshake settles the payload size, which can only shrink the blocks, and the other streams
+		 * propose the size it settled.
+		 */
+		final int streams = TransferOptions.sessions() ? 1 : ParallelStreams.count(TransferOptions.streams(), source.blockCount());
+		this.streams = streams;
+		final int agreed = this.connect(source.size(), streams, payload);
+		source.resize(agreed);
+		this.metrics.payloadBytes(agreed);
+		final long blockCount = source.blockCount();
+		if (streams == 1) {
+			this.sendRange(source, 1, 0, blockCount);
+		} else {
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+			for (int i = 0; i < streams; ++i) {
+				final SelectiveRepeatSender stream = (i == 0) ? this : new SelectiveRepeatSender(
+					this.address, ParallelStreams.port(this.port, i), this.filename, this.timeout, this.windowSize, this.metrics);
+				if (i > 0) {
+					stream.start();
+				}
+				final boolean connected = i == 0;
+				final long firstSeqNum = ParallelStreams.firstSeqNum(blockCount, streams, i);
+				final long endSeqNum = ParallelStreams.firstSeqNum(blockCount, streams, i + 1);
+				tasks.add(() -> {
+					if (!connected) {
+						stream.connect(source.size(), streams, agreed);
+					}
+					stream.sendRange(source, streams, firstSeqNum, endSeqNum);
+					return null;
+				});
+			}
+			ParallelStreams.run(tasks);
+		}
+
+		/* Close the file. */
+		source.close();
+
+		/* End the timer that times the file transmission. */
+		this.endTimer();
+		this.metrics.finish();
+
+		PacketLog.summary(this.filename + " successfully sent to " + this.address + ":" + this.port);
+	}
+
+	/**
+	 * Function to announce one stream's transfer to the receiver: the size of the file, the number of streams,
+	 * the parity group size and the payload size proposed.
+	 * @param fileSize  the size of the file in bytes
+	 * @param streams   the number of parallel streams
+	 * @param payload   the largest payload proposed in bytes
+	 * @return the payload size agreed with the receiver
+	 */
+	private int connect(long fileSize, int streams, int payload) throws IOException {
+		ByteBuffer handshake = this.receiverSocket.newBufferPool(1, this.codec.packetCapacity()).acquire();
+		this.payload = Handshake.connect(this.senderSocket, this.receiverSocket, this.target, this.codec, handshake,
+			fileSize, streams, TransferOptions.parityGroup(), payload, this.rtt);
+		this.resume = this.codec.resumePoint(handshake);
+		return this.payload;
+	}
+
+	/**
+	 * Function to send one stream's range of the file, once its handshake is done, until every packet is acknowledged.
+	 * @param source       the file, shared by every stream
+	 * @param streams      the number of streams, which share the cap on the rate
+	 * @param firstSeqNum  the sequence number of the first block of the range
+	 * @param endSeqNum    the sequence number after the last block of the range
+	 */
+	private void sendRange(FileBlockSource source, int streams, long firstSeqNum, long endSeqNum) throws IOException {
+		this.source = source;
+		this.pool = this.senderSocket.newBufferPool(this.windowSize, PacketHeader.MAX_SIZE + this.payload);
+
+		/* Pace first sends and charge the timers' retransmissions to the same bucket. */
+		this.pacer = Pacer.fromOptions(PacketHeader.MAX_SIZE + this.payload, streams);
+		this.timers = new PacketTimerTask[this.windowSize];
+		for (int i = 0; i < this.windowSize; ++i) {
+			this.timers[i] = new PacketTimerTask(this.senderSocket, this.target, this.timer, this.rtt, this.cc, this.pacer, this.metrics);
+		}
+
+		/*
+		 * Follow each group of blocks with a parity packet, if forward error correction is on. A receiver
+		 * resuming the transfer cannot rebuild blocks from groups it has some of from before, so it gets none.
+		 */
+		int parityGroup = TransferOptions.parityGroup();
+		if (parityGroup > 0 && this.resume == null) {
+			this.parity = new ParityEncoder(this.payload, parityGroup, TransferOptions.parityAdaptive(), this.metrics, endSeqNum);
+			this.parityBuffer = this.senderSocket.newBufferPool(1, PacketHeader.MAX_SIZE + this.payload).acquire();
+		}
+
+		/* Deflate each block that shrinks, if compression is on. */
+		int level = TransferOptions.compressionLevel();
+		if (level > 0) {
+			this.compressor = new BlockCompressor(level, this.payload, this.metrics);
+		}
+
+		/* Send until all packets are acknowledged, then compare digests of the range with the receiver. */
+		this.digest = new BlockDigest(firstSeqNum, endSeqNum, this.metrics);
+		this.receiveAck(firstSeqNum, endSeqNum - 1);
+		this.timer.stop();
+		ByteBuffer fin = this.receiverSocket.newBufferPool(1, this.codec.packetCapacity()).acquire();
+		byte[] receiverDigest = Handshake.finish(this.senderSocket, this.receiverSocket, this.target, this.codec, fin,
+			endSeqNum, this.digest.value(), this.rtt);
+		BlockDigest.verify(ParallelStreams.label(this.filename, source.blockCount(), firstSeqNum, endSeqNum),
+			this.digest.value(), receiverDigest, this.metrics);
+
+		/* Close the sockets. */
+		this.senderSocket.close();
+		if (this.receiverSocket != this.senderSocket) {
+			this.receiverSocket.close();
+		}
+		if (this.compressor != null) {
+			this.compressor.close();
+		}
+	}
+
+	/** 
+	 * Function to send a single packet. 
+	 * @param seqNum 		   the sequence number of the message to be sent
+	 * @param finalSeqNum      the final sequence number of the file
+	 */
+	public void sendPacket(long seqNum, long finalSeqNum) throws IOException {
+		
+		int flag = (seqNum == finalSeqNum) ? PacketHeader.FLAG_EOF : 0;
+		ByteBuffer message = this.pool.acquire();
+		this.codec.encodeData(message, flag, seqNum, this.source);
+		int blockSize = this.source.blockSize(seqNum);
+		int offset = message.limit() - blockSize;
+		boolean groupComplete = this.parity != null && this.parity.add(seqNum, message, offset, blockSize);
+		this.digest.add(seqNum, message.position(offset));
+		message.position(0);
+
+		/* Parity and the digest cover the block as it is written, so compress it only once they have it. */
+		if (this.compressor != null && this.compressor.compress(message, offset)) {
+			flag |= PacketHeader.FLAG_COMPRESSED;
+			this.codec.seal(message);
+		}
+		
+		/* Send the packet and arm its retransmission timer. */
+		this.pacer.pace(message.limit());
+		this.timers[this.slot(seqNum)].send(seqNum, message);
+		++this.inFlight;
+		this.metrics.sent(message.limit());
+		PacketLog.packet(PacketLog.SENT, seqNum, flag);
+
+		/* Follow the last block of a group with its parity; parity packets are never retransmitted. */
+		if (groupComplete) {
+			this.parity.encode(this.codec, this.parityBuffer);
+			this.pacer.pace(this.parityBuffer.limit());
+			this.senderSocket.send(this.parityBuffer, this.target);
+			this.metrics.sent(this.parityBuffer.limit());
+			this.metrics.parityPacket();
+			PacketLog.packet(PacketLog.PARITY_SENT, this.parity.firstSeqNum(), this.parity.count());
+		}
+	}
+
+	/**
+	 * Adds a block the receiver already has to the digest of the range, reading it from the file.
+	 * @param seqNum  the sequence number of the block
+	 */
+	private void digestSkipped(long seqNum) throws IOException {
+		if (this.skipped == null) {
+			this.skipped = ByteBuffer.allocate(this.payload);
+		}
+		this.skipped.clear();
+		this.source.read(seqNum, this.skipped);
+		this.skipped.flip();
+		this.digest.add(seqNum, this.skipped);
+	}
+
+	/**
+	 * Returns the number of packets that may be in flight: the smaller of the congestion window, which never
+	 * exceeds the window size, and the receiver's window. At least one packet is always allowed, so a sender
+	 * facing a closed receive window keeps probing it.
+	 * @return the send window in packets
+	 */
+	private int sendWindow() {
+		return Math.max(1, Math.min(this.cc.window(), this.receiveWindow));
+	}
+
+	/**
+	 * Returns the slot of the send window a sequence number maps to.
+	 * @param seqNum  the sequence number
+	 * @return the index of the slot in the send window
+	 */
+	private int slot(long seqNum) {
+		return (int) Long.remainderUnsigned(seqNum, this.windowSize);
+	}
+	
+	/** 
+	 * Function to send the window and receive acknowledgements until every packet is acknowledged. 
+	 * @param firstSeqNum      the first sequence number of the range
+	 * @param finalSeqNum      the final sequence number of the range
+	 */
+	public void receiveAck(long firstSeqNum, long finalSeqNum) throws IOException {
+		
+		ByteBuffer message = this.receiverSocket.newBufferPool(1, this.codec.packetCapacity()).acquire();
+		int length = 0;
+
+		/*
+		 * The send window covers every sequence number from the send base up to, not including, the next. A
+		 * resumed transfer starts at the first block the receiver lacks.
+		 */
+		long sendBase = this.resume != null ? this.resume.seqNum() : firstSeqNum;
+		long nextSeqNum = sendBase;
+		int silentTimeouts = 0;  // the retransmission timeouts waited out since the receiver was last heard
+		this.metrics.resumed(sendBase - firstSeqNum);
+		for (long seqNum = firstSeqNum; seqNum < sendBase; ++seqNum) {
+			this.digestSkipped(seqNum);
+		}
+		
+		while (!SequenceNumbers.after(sendBase, finalSeqNum)) {
+
+			/*
+			 * If we are within the congestion and receive windows and have not reached the last packet, send the next
+			 * packets, paced over the round trip.
+			 */
+			this.pacer.window(this.sendWindow(), PacketHeader.MAX_SIZE + this.payload, this.rtt.minRttNanos());
+			while (nextSeqNum - sendBase < this.sendWindow() && !SequenceNumbers.after(nextSeqNum, finalSeqNum)) {
+				if (this.resume != null && this.resume.has(nextSeqNum)) {
+					/* The receiver has the block already; one at the base leaves nothing to wait for. */
+					this.metrics.resumed(1);
+					this.digestSkipped(nextSeqNum);
+					if (sendBase == nextSeqNum) {
+						++sendBase;
+					}
+				} else {
+					this.sendPacket(nextSeqNum, this.source.finalSeqNum());
+				}
+				++nextSeqNum;
+			}
+			if (SequenceNumbers.after(sendBase, finalSeqNum)) {
+				break;
+			}
+
+			/*
+			 * The timing wheel resends unacknowledged packets, so a wait that times out simply waits again; a
+			 * receiver that stays silent through Handshake.MAX_ATTEMPTS timeouts in a row is taken to be gone.
+			 */
+			try {
+				length = this.receiverSocket.receive(message, this.rtt.rtoMillis());
+				silentTimeouts = 0;
+			} catch (SocketTimeoutException e) {
+				if (++silentTimeouts >= Handshake.MAX_ATTEMPTS) {
+					throw new SocketTimeoutException("receiver did not acknowledge " + Handshake.MAX_ATTEMPTS
+						+ " retransmission timeouts in a row");
+				}
+				continue;
+			}
+			
+	        if (!this.codec.decode(message, length)) {
+	        	if (this.codec.isCorrupt()) {
+	        		this.metrics.corruptPacket();
+	        		PacketLog.packet(PacketLog.CORRUPT, length);
+	        	}
+	        	continue;
+	        } else if (this.codec.type() != PacketHeader.TYPE_ACK && this.codec.type() != PacketHeader.TYPE_SACK) {
+	        	continue;
+	        }
+	        long ackSeqNum = this.codec.seqNum();
+
+	        PacketLog.packet(PacketLog.RECEIVED, ackSeqNum, this.codec.type());
+	        this.metrics.received(length);
+	        this.metrics.ackReceived();
+	        if (this.codec.window() >= 0) {
+	        	this.receiveWindow = this.codec.window();
+	        }
+	        
+	        /* Acknowledge every packet the acknowledgement covers; a selective one may cover many. */
+	        int acked = 0;
+	        this.sampleSentAt = 0;
+	        if (this.codec.type() == PacketHeader.TYPE_ACK) {
+	        	acked += this.acknowledge(ackSeqNum);
+	        } else if (this.codec.type() == PacketHeader.TYPE_SACK) {
+	        	for (long seqNum = sendBase; SequenceNumbers.before(seqNum, ackSeqNum) && SequenceNumbers.before(seqNum, nextSeqNum); ++seqNum) {
+	        		acked += this.acknowledge(seqNum);
+	        	}
+	        	for (long seqNum = ackSeqNum + 1; SequenceNumbers.before(seqNum, nextSeqNum); ++seqNum) {
+	        		if (this.codec.isSelectivelyAcked(message, seqNum)) {
+	        			acked += this.acknowledge(seqNum);
+	        		}
+	        	}
+	        }
+
+	        if (acked > 0) {
+				/* Time the most recently sent packet acknowledged, unless every one was retransmitted (Karn's rule). */
+				long sample = 0;
+				if (this.sampleSentAt != 0) {
+					sample = System.nanoTime() - this.sampleSentAt;
+					this.rtt.sample(sample);
+					this.metrics.rtt(sample);
+				}
+				this.cc.onAck(acked, sample);
+
+				/* Slide the window past every acknowledged packet at its base. */
+				while (SequenceNumbers.before(sendBase, nextSeqNum) && !this.timers[this.slot(sendBase)].isInFlight()) {
+					++sendBase;
+				}
+	        } else {
+	        	this.metrics.duplicateAck();
+	        }
+		}
+	}
+
+	/**
+	 * Cancels the timer of an acknowledged packet and recycles its buffer.
+	 * @param seqNum  the sequence number of the acknowledged packet
+	 * @return 1 if the packet was in flight, 0 if it had already been acknowledged
+	 */
+	private int acknowledge(long seqNum) {
+		PacketTimerTask packetTimer = this.timers[this.slot(seqNum)];
+		if (!packetTimer.isInFlight() || packetTimer.seqNum() != seqNum) {
+			return 0;
+		}
+		this.pool.release(packetTimer.cancel());
+		--this.inFlight;
+		if (!packetTimer.isRetransmitted() && (this.sampleSentAt == 0 || packetTimer.sentAt() - this.sampleSentAt > 0)) {
+			this.sampleSentAt = packetTimer.sentAt();
+		}
+		return 1;
+	}
+
+	/**
+	 * Sets the start time in milliseconds of the file transmission.
+	 * @return the start time in milliseconds of the file transmission
+	 */
+	private long startTimer() {
+		this.startTime = System.currentTimeMillis();
+		return this.startTime;
+	}
+
+	/**
+	 * Sets the end time in milliseconds of the file transmission.
+	 * @return the end time in milliseconds of the file transmission
+	 */
+	private long endTimer() {
+		this.endTime = System.currentTimeMillis();
+		return this.endTime;
+	}
+
+	/**
+	 * Returns the elapsed time in milliseconds of the file transmission.
+	 * @return the elapsed time in milliseconds of the file transmission
+	 */
+	public long getElapsedTime() {
+		return this.endTime - this.startTime;
+	}
+
+	/** Function to print the transmission details to stdout. */
+	public void printTransmissionDetails() {
+		/* Calculate file transfer details. */
+        double fsizeKb = this.source.size() / 1024.0;
+        double transferTime = this.metrics.elapsedNanos() / 1e9;
+        double throughput = transferTime > 0 ? fsizeKb / transferTime : 0;
+
+		PacketLog.summary(
+            "{" + 
+            "\n\tFile Size: " + String.format("%.0f", fsizeKb) + "kb," + 
+            "\n\tTransfer Time: " + String.format("%.3f", transferTime) + "s," +
+            "\n\tThroughput: " + String.format("%.3f", throughput) + "kb/s," +
+            "\n\tRetransmissions: " + this.metrics.getRetransmits() + "," +
+            "\n\tParity Packets: " + this.metrics.getParityPackets() + "," +
+            (this.metrics.getResumedBlocks() > 0 ? "\n\tResumed: " + this.metrics.getResumedBlocks() + " blocks already received," : "") +
+            "\n\tVerified: " + this.metrics.getVerifiedRanges() + " of " + this.streams + " ranges (" + BlockDigest.ALGORITHM + ")," +
+            "\n\tCorrupt Packets: " + this.metrics.getCorruptPackets() + "," +
+            (TransferOptions.compressionLevel() > 0 ? "\n\tCompression: " + this.metrics.compressionSummary() + "," : "") +
+            "\n\tStreams: " + this.streams + "," +
+            "\n\tPayload: " + this.payload + " bytes (" + (this.probed ? "path MTU probed" : "negotiated") + ")," +
+            "\n\tRTT: " + this.rtt.summary() + "," +
+            "\n\tCongestion Window: " + this.cc.window() + " packets (" + this.cc.name() + ")," +
+            "\n\tPacing: " + this.pacer.summary() +
+            "\n}"
+        );
+	}
+
+	/** Function to print the usage instructions to the user. */
+	public static void printUserErrorMessage() {
+		System.err.println("Invalid command line arguments.");
+        System.out.println("Usage: java SelectiveRepeatSender localhost <port> <filename> <timeout> <window>");
+        System.out.println(
+            "\tport     - an integer specifying the port number of the receiver socket\n" + 
+            "\tfilename - a string specifying the name of the file to be sent\n" +
+            "\ttimeout  - an integer specifying the initial timeout value of the socket in ms\n" +
+            "\twindow   - an integer specifying the window size of the transmission\n"
+        );
+	}
+	
+	public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+		if (args.length != 5) {
+            printUserErrorMessage();
+        } else {
+            try {
+                SelectiveRepeatSender sender = new SelectiveRepeatSender(
+                    args[0], 					// String - hostname (localhost)
+                    Integer.parseInt(args[1]), 	// int 	  - port number
+                    args[2], 					// String - filename
+                    Integer.parseInt(args[3]), 	// int 	  - retry timeout
+                    Integer.parseInt(args[4])	// int 	  - window size
+                );
+                sender.start();
+                sender.sendFile();
+                sender.printTransmissionDetails();
+            } catch (NumberFormatException e) {
+                printUserErrorMessage();
+                System.exit(1);
+            } catch (FileNotFoundException e) {
+            	System.out.println(args[2] + " does not exist.");
+            } catch (IOException e) {
+            	e.printStackTrace();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+		
+		/* Need to tell System to exit due to multithreading. */
+		System.exit(0);
+	}
+}
@@ -0,0 +1,48 @@
+/**
+ * SequenceNumbers.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+/**
+ * Serial-number arithmetic for 64-bit sequence numbers, in the spirit of
+ * RFC 1982. Comparisons are made on the signed difference of two sequence
+ * numbers, so window checks stay correct if the sequence space wraps.
+ */
+public class SequenceNumbers {
+
+    private SequenceNumbers() {}
+
+    /**
+     * Returns whether one sequence number comes before another.
+     * @param a  the first sequence number
+     * @param b  the second sequence number
+     * @return whether a comes before b
+     */
+    public static boolean before(long a, long b) {
+        return a - b < 0;
+    }
+
+    /**
+     * Returns whether one sequence number comes after another.
+     * @param a  the first sequence number
+     * @param b  the second sequence number
+     * @return whether a comes after b
+     */
+    public static boolean after(long a, long b) {
+        return a - b > 0;
+    }
+
+    /**
+     * Returns whether a sequence number falls within a window.
+     * @param seqNum  the sequence number to check
+     * @param base    the first sequence number of the window
+     * @param size    the number of sequence numbers in the window
+     * @return whether base <= seqNum < base + size in serial-number order
+     */
+    public static boolean inWindow(long seqNum, long base, int size) {
+        long offset = seqNum - base;
+        return offset >= 0 && offset < size;
+    }
+}
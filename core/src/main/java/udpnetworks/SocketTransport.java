@@ -0,0 +1,85 @@
+/**
+ * SocketTransport.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+
+/** A Transport backed by a blocking java.net.DatagramSocket and heap buffers. */
+public class SocketTransport implements Transport {
+
+    /** Instance variables. */
+    private DatagramSocket socket;    // the underlying socket
+    private DatagramPacket inPacket;  // the reusable datagram packets are received with
+    private DatagramPacket outPacket; // the reusable datagram packets are sent with
+    private int timeout;              // the timeout currently set on the socket
+
+    /**
+     * Constructor for SocketTransport.
+     * @param bind  the local address to bind to, or null for any ephemeral port
+     */
+    public SocketTransport(InetSocketAddress bind) throws IOException {
+        this(bind, false);
+    }
+
+    /**
+     * Constructor for SocketTransport.
+     * @param bind       the local address to bind to, or null for any ephemeral port
+     * @param reusePort  whether to set SO_REUSEPORT, so other sockets can bind the same port
+     * @throws UnsupportedOperationException if reusePort is set but the platform lacks SO_REUSEPORT
+     */
+    public SocketTransport(InetSocketAddress bind, boolean reusePort) throws IOException {
+        this.socket = new DatagramSocket(null);
+        if (reusePort) {
+            this.socket.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        }
+        if (TransferOptions.sendBufferSize() > 0) {
+            this.socket.setSendBufferSize(TransferOptions.sendBufferSize());
+        }
+        if (TransferOptions.receiveBufferSize() > 0) {
+            this.socket.setReceiveBufferSize(TransferOptions.receiveBufferSize());
+        }
+        this.socket.bind(bind);
+        this.inPacket = new DatagramPacket(new byte[0], 0);
+        this.outPacket = new DatagramPacket(new byte[0], 0);
+        this.timeout = -1;
+    }
+
+    public void send(ByteBuffer packet, SocketAddress target) throws IOException {
+        synchronized (this.outPacket) {
+            this.outPacket.setData(packet.array(), packet.arrayOffset() + packet.position(), packet.remaining());
+            this.outPacket.setSocketAddress(target);
+            this.socket.send(this.outPacket);
+        }
+    }
+
+    public int receive(ByteBuffer dst, int timeout) throws IOException {
+        if (timeout != this.timeout) {
+            this.socket.setSoTimeout(timeout);
+            this.timeout = timeout;
+        }
+        this.inPacket.setData(dst.array(), dst.arrayOffset(), dst.capacity());
+        this.socket.receive(this.inPacket);
+        return this.inPacket.getLength();
+    }
+
+    public SocketAddress lastSource() {
+        return this.inPacket.getSocketAddress();
+    }
+
+    public InetSocketAddress localAddress() {
+        return (InetSocketAddress) this.socket.getLocalSocketAddress();
+    }
+
+    public BufferPool newBufferPool(int count, int bufferSize) {
+        return new BufferPool(count, bufferSize, false);
+    }
+
+    public void close() {
+        this.socket.close();
+    }
+}
@@ -3,14 +3,16 @@
  * @author Hugh Han
  */
 
+package udpnetworks;
+
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
 
 public class StopAndWaitReceiver {
 
     /** Constants. */
     private static final int PAYLOAD     = 1024; // Maximum payload of 1024 bytes
-    private static final int HEADER_SIZE = 3;    // Header size of 3 bytes
     private static final int TIMEOUT     = 0;    // Receiver does not have a timeout.
 
     /** Instance variables. */
@@ -34,7 +36,7 @@ public class StopAndWaitReceiver {
     /** Function to start the receiver socket. */
     public void start() throws SocketException {
         this.receiverSocket = new DatagramSocket(this.port, this.address);
-        System.out.println(
+        PacketLog.summary(
             "Receiver socket running on " + 
             this.receiverSocket.getLocalAddress().toString() + ":" + 
             this.receiverSocket.getLocalPort() + "."
@@ -48,72 +50,65 @@ public class StopAndWaitReceiver {
         File file = new File(this.filename);
         FileOutputStream fostream = new FileOutputStream(file);
 
-        InetAddress sendAddress; // address to send acknowledgements to.
-        int sendPort;            // port to send acknowledgements to.
+        /* Initialize reusable buffers and datagrams for messages and acknowledgements. */
+        PacketCodec codec = new PacketCodec(PAYLOAD);
+        ByteBuffer message = ByteBuffer.allocate(codec.packetCapacity());
+        DatagramPacket receivedPacket = new DatagramPacket(message.array(), message.capacity());
+        ByteBuffer ack = ByteBuffer.allocate(codec.packetCapacity());
+        DatagramPacket ackPacket = new DatagramPacket(ack.array(), ack.capacity());
 
         // Store sequence number
-        int currSeqNum = 0;      // Indicates the current sequence number
-        int prevSeqNum = 0;      // Indicates the previous sequence number
+        long currSeqNum = 0;     // Indicates the current sequence number
+        long prevSeqNum = -1;    // Indicates the previous sequence number
         boolean eofFlag = false; // Indicates the end-of-file
 
         /* Iterate over each received message. */
         while (!eofFlag) {
 
-            byte[] message = new byte[PAYLOAD + HEADER_SIZE]; // Initialize full message
-            byte[] fbarr = new byte[PAYLOAD];                 // Initialize message without header
-
-            /* Receive packet and obtain message. */
-            DatagramPacket receivedPacket = new DatagramPacket(message, message.length);
+            /* Receive packet and decode its header. */
+            receivedPacket.setLength(message.capacity());
             this.receiverSocket.setSoTimeout(TIMEOUT);
             this.receiverSocket.receive(receivedPacket);
-            message = receivedPacket.getData();
-
-            sendAddress = receivedPacket.getAddress(); // Obtain the address to send an acknowledgement to.
-            sendPort = receivedPacket.getPort();       // Obtain the port to send an acknowledgement to.
+            if (!codec.decode(message, receivedPacket.getLength()) || codec.type() != PacketHeader.TYPE_DATA) {
+                continue;
+            }
 
-            currSeqNum = ((message[0] & 0xFF) << 8) + (message[1] & 0xFF); // Obtain current sequence number
+            /* Acknowledgements are sent back to wherever the message came from. */
+            ackPacket.setAddress(receivedPacket.getAddress());
+            ackPacket.setPort(receivedPacket.getPort());
 
-            /* Set the end-of-file flag. */
-            if ((message[2] & 0xFF) == 1) {
-                eofFlag = true;
-            } else {
-                eofFlag = false;
-            }
+            currSeqNum = codec.seqNum(); // Obtain current sequence number
 
             /* Attempt to write the obtained data to the specified file. */
             if (currSeqNum == (prevSeqNum + 1)) {
                 prevSeqNum = currSeqNum;
-                for (int i = 3; i < PAYLOAD + HEADER_SIZE; ++i) {
-                    fbarr[i - 3] = message[i];
-                }
-                fostream.write(fbarr);
-                System.out.println("received : { number: " + currSeqNum + ", flag: " + (eofFlag ? 1 : 0) + " }");
-                this.sendAck(prevSeqNum, sendAddress, sendPort);
+                eofFlag = codec.isEof();
+                codec.writePayload(message, fostream);
+                PacketLog.packet(PacketLog.RECEIVED, currSeqNum, eofFlag ? 1 : 0);
+                this.sendAck(codec, ack, ackPacket, prevSeqNum);
             } else {
-                System.out.println("error    : expected " + (prevSeqNum + 1) + " but received " + currSeqNum + ". Retrying.");
-                this.sendAck(prevSeqNum, sendAddress, sendPort);
+                PacketLog.packet(PacketLog.OUT_OF_ORDER, currSeqNum, prevSeqNum + 1);
+                this.sendAck(codec, ack, ackPacket, prevSeqNum);
             }
         }
         
         /* Close the socket, write output, and finish. */
         fostream.close();
         this.receiverSocket.close();
-        System.out.println(this.filename + " succesfully received.");
+        PacketLog.summary(this.filename + " succesfully received.");
     }
 
     /**
      * Function to send an acknowledgement to a sender.
+     * @param codec        the codec used to encode the acknowledgement
+     * @param ack          the reusable buffer the acknowledgement is encoded into
+     * @param packet       the reusable datagram, addressed to the sender
      * @param prevSeqNum   the previous sequence number
-     * @param sendAddress  the address to which the acknowledgement will be sent
-     * @param sendPort     the port to which the acknowledgement will be sent
      */
-    public void sendAck(int prevSeqNum, InetAddress sendAddress, int sendPort) throws IOException {
-        byte[] ackPacket = new byte[2];
-        ackPacket[0] = (byte) (prevSeqNum >> 8);
-        ackPacket[1] = (byte) (prevSeqNum);
-        DatagramPacket ack = new DatagramPacket(ackPacket, ackPacket.length, sendAddress, sendPort);
-        this.receiverSocket.send(ack);
-        System.out.println("sent     : { number: " + prevSeqNum + " }");
+    public void sendAck(PacketCodec codec, ByteBuffer ack, DatagramPacket packet, long prevSeqNum) throws IOException {
+        packet.setLength(codec.encodeAck(ack, prevSeqNum));
+        this.receiverSocket.send(packet);
+        PacketLog.packet(PacketLog.SENT, prevSeqNum, PacketHeader.TYPE_ACK);
     }
 
     public static void main(String args[]) {
@@ -0,0 +1,180 @@
+/**
+ * StopAndWaitSender.java 
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+
+public class StopAndWaitSender {
+
+    /* Constants */
+    private static final int PAYLOAD     = 1024; // Maximum payload of 1024 bytes
+
+    /* Instance variables */
+    private InetAddress address;                 // the address to be sent to
+    private int port;                            // the port to be sent to
+    private String filename;                     // the file that will be sent
+    private DatagramSocket senderSocket;         // the sender socket
+    private int timeout;                         // initial retry timeout
+    private RttEstimator rtt;                    // the estimator of the retry timeout
+
+    /**
+     * Constructor for StopAndWaitSender.
+     * @param hostname  name of the host
+     * @param port      port number
+     * @param filename  name of the file to be sent
+     */
+    public StopAndWaitSender(String hostname, int port, String filename, int timeout) throws IOException {
+        this.address = InetAddress.getByName(hostname);
+        this.port = port;
+        this.filename = filename;
+        this.timeout = timeout;
+        this.rtt = RttEstimator.fromOptions(timeout);
+    }
+
+    /* Function to start the sender socket. */
+    public void start() throws SocketException {
+        this.senderSocket = new DatagramSocket();
+        PacketLog.summary(
+            "Sender socket running on " + 
+            this.senderSocket.getLocalAddress().toString() + ":" + 
+            this.senderSocket.getLocalPort() + "."
+        );
+    }
+
+    public void sendData() throws IOException {
+
+        /* Open the file to be sent; blocks are read from it on demand. */
+        FileBlockSource source = new FileBlockSource(this.filename, PAYLOAD);
+
+        /* Initialize reusable buffers and datagrams for messages and acknowledgements. */
+        PacketCodec codec = new PacketCodec(PAYLOAD);
+        ByteBuffer message = ByteBuffer.allocate(codec.packetCapacity());
+        DatagramPacket sendPacket = new DatagramPacket(message.array(), 0, this.address, this.port);
+        ByteBuffer ack = ByteBuffer.allocate(codec.packetCapacity());
+        DatagramPacket ackPacket = new DatagramPacket(ack.array(), ack.capacity());
+        Pacer pacer = new Pacer(TransferOptions.rateMbit(), false, codec.packetCapacity());
+
+        /* Initialize tracking variables */
+        long seqNum = 0;                                    // Indicates the sequence number received
+        long ackSeqNum = -1;                                // Indicates the sequence number to be sent
+        int retransmissions = 0;                            // Indicates the number of retransmissions
+        boolean eofFlag = false;                            // Indicates the end-of-file
+        TransferMetrics metrics = new TransferMetrics("StopAndWait", "sender");
+        metrics.start(source.size());
+
+        /* Iterate over every message to send. */
+        for (long i = 0; i < source.size(); i += PAYLOAD, ++seqNum) {
+
+            /* Set EOF flag depending on whether it is the end of the file. */
+            eofFlag = (i + PAYLOAD) >= source.size();
+
+            /* Populate and send the packet. */
+            int flag = eofFlag ? PacketHeader.FLAG_EOF : 0;
+            sendPacket.setLength(codec.encodeData(message, flag, seqNum, source));
+            pacer.pace(sendPacket.getLength());
+            this.senderSocket.send(sendPacket);
+            long sentAt = System.nanoTime();
+            metrics.sent(sendPacket.getLength());
+            PacketLog.packet(PacketLog.SENT, seqNum, flag);
+
+            /* Initialize variables to verify acknowledgements. */
+            boolean ackRecievedCorrect = false;
+            boolean retransmitted = false;
+            long deadline = sentAt + this.rtt.rtoNanos();
+
+            while (!ackRecievedCorrect) {
+                try {
+                    /* Stale and duplicate acknowledgements do not restart the timeout; only its expiry resends. */
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        throw new SocketTimeoutException();
+                    }
+                    this.senderSocket.setSoTimeout((int) Math.max(1, (remaining + 999999) / 1000000));
+                    ackPacket.setLength(ack.capacity());
+                    this.senderSocket.receive(ackPacket);
+                    if (codec.decode(ack, ackPacket.getLength()) && codec.type() == PacketHeader.TYPE_ACK) {
+                        ackSeqNum = codec.seqNum();
+                        metrics.received(ackPacket.getLength());
+                        metrics.ackReceived();
+
+                        /* Check whether the packet has been acknowledged; by Karn's rule only first transmissions are timed. */
+                        if (ackSeqNum == seqNum) {
+                            ackRecievedCorrect = true;
+                            if (!retransmitted) {
+                                long sample = System.nanoTime() - sentAt;
+                                this.rtt.sample(sample);
+                                metrics.rtt(sample);
+                            }
+                            PacketLog.packet(PacketLog.RECEIVED, ackSeqNum, PacketHeader.TYPE_ACK);
+                        } else {
+                            metrics.duplicateAck();
+                        }
+                    }
+                } catch (SocketTimeoutException e) {
+                    this.rtt.backoff(sentAt);
+                    metrics.timeout();
+                    PacketLog.packet(PacketLog.RESENT, seqNum);
+                    pacer.pace(sendPacket.getLength());
+                    this.senderSocket.send(sendPacket);
+                    sentAt = System.nanoTime();
+                    deadline = sentAt + this.rtt.rtoNanos();
+                    metrics.resent(sendPacket.getLength());
+                    retransmitted = true;
+                    ++retransmissions;
+                }
+            }
+        }
+
+        /* Close the socket. */
+        source.close();
+        this.senderSocket.close();
+        PacketLog.summary(this.filename + " successfully sent to " + this.address + ":" + this.port);
+
+        /* Calculate file transfer details. */
+        metrics.finish();
+        double fsizeKb = source.size() / 1024.0;
+        double transferTime = metrics.elapsedNanos() / 1e9;
+        double throughput = transferTime > 0 ? fsizeKb / transferTime : 0;
+
+        /* Write output and finish. */
+        PacketLog.summary(
+            "{" + 
+            "\n\tFile Size: " + String.format("%.0f", fsizeKb) + "kb," + 
+            "\n\tTransfer Time: " + String.format("%.3f", transferTime) + "s," +
+            "\n\tThroughput: " + String.format("%.3f", throughput) + "kb/s," +
+            "\n\tRetransmissions: " + retransmissions + "," +
+            "\n\tRTT: " + this.rtt.summary() +
+            "\n}"
+        );
+    }
+
+    public static void main(String args[]) throws Exception {
+        if (args.length != 4) {
+            System.err.println("Invalid command line arguments.");
+            System.out.println("Usage: java StopAndWaitSender localhost <port> <filename> <timeout>");
+            System.exit(1);
+        } else {
+            try {
+                StopAndWaitSender sender = new StopAndWaitSender(args[0], Integer.parseInt(args[1]), args[2], Integer.parseInt(args[3]));
+                sender.start();
+                sender.sendData();
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid command line arguments.");
+                System.out.println("Usage: java StopAndWaitSender localhost <port> <filename> <timeout>");
+                System.out.println(
+                    "\tport     - an integer specifying the port number of the receiver socket\n" + 
+                    "\tfilename - a string specifying the name of the file to be sent\n" +
+                    "\ttimeout  - an integer specifying the initial timeout value of the socket in ms\n"
+                );
+                System.exit(1);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
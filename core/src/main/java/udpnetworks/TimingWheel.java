@@ -0,0 +1,165 @@
+/**
+ * TimingWheel.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hashed timing wheel for retransmission timeouts.
+ *
+ * Timeouts are hashed into a ring of slots by their expiry tick and kept
+ * in intrusive doubly-linked lists, so arming and cancelling a timeout is
+ * O(1) and neither allocates nor leaves a cancelled entry behind. A single
+ * daemon thread advances the wheel one tick at a time and expires the
+ * timeouts in the current slot; timeouts further away than one revolution
+ * carry a count of remaining rounds.
+ *
+ * Expiry callbacks run on the wheel thread while it holds the wheel's
+ * lock, so once cancel returns the callback of that timeout is guaranteed
+ * not to be running. Callbacks must therefore be short; they may re-arm
+ * their own timeout.
+ */
+public class TimingWheel implements Runnable {
+
+    /** A timeout that can be armed on a wheel, reused across arms. */
+    public static abstract class Timeout {
+        private Timeout prev;       // the previous timeout in the slot
+        private Timeout next;       // the next timeout in the slot
+        private int slot = -1;      // the slot the timeout is in, or -1 if not armed
+        private long rounds;        // the revolutions left before the timeout expires
+
+        /** @return whether the timeout is currently armed */
+        public boolean isArmed() {
+            return this.slot >= 0;
+        }
+
+        /** Called on the wheel thread when the timeout expires. */
+        protected abstract void expired();
+    }
+
+    /** Instance variables. */
+    private Timeout[] heads;    // the first timeout of each slot
+    private long tickNanos;     // the length of a tick in nanoseconds
+    private long startTime;     // the time the wheel started
+    private long cursor;        // the index of the next tick to be processed
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * Constructor for TimingWheel; the wheel starts turning immediately.
+     * @param tickNanos  the length of a tick in nanoseconds
+     * @param slots      the number of slots in one revolution
+     * @param name       the name of the wheel thread
+     */
+    public TimingWheel(long tickNanos, int slots, String name) {
+        this.heads = new Timeout[slots];
+        this.tickNanos = tickNanos;
+        this.startTime = System.nanoTime();
+        this.cursor = 0;
+        this.running = true;
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Arms a timeout, re-arming it if it is already armed.
+     * @param timeout     the timeout to be armed
+     * @param delayNanos  the delay in nanoseconds before it expires
+     */
+    public synchronized void arm(Timeout timeout, long delayNanos) {
+        if (timeout.isArmed()) {
+            this.unlink(timeout);
+        }
+        long ticks = Math.max(1, (delayNanos + this.tickNanos - 1) / this.tickNanos);
+        long tick = this.cursor + ticks;
+        int slot = (int) (tick % this.heads.length);
+        timeout.rounds = ticks / this.heads.length;
+        timeout.slot = slot;
+        timeout.prev = null;
+        timeout.next = this.heads[slot];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        this.heads[slot] = timeout;
+    }
+
+    /**
+     * Cancels a timeout. On return its callback is not running.
+     * @param timeout  the timeout to be cancelled
+     * @return whether the timeout was armed
+     */
+    public synchronized boolean cancel(Timeout timeout) {
+        if (!timeout.isArmed()) {
+            return false;
+        }
+        this.unlink(timeout);
+        return true;
+    }
+
+    /** Function to stop the wheel thread; armed timeouts never expire. */
+    public void stop() {
+        this.running = false;
+        LockSupport.unpark(this.thread);
+    }
+
+    /**
+     * Removes a timeout from its slot.
+     * @param timeout  the armed timeout to be removed
+     */
+    private void unlink(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            this.heads[timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.slot = -1;
+    }
+
+    /** Processes the tick at the cursor and advances the cursor. */
+    private synchronized void tick() {
+        int slot = (int) (this.cursor % this.heads.length);
+        ++this.cursor;
+
+        /* Detach the expired timeouts first, so that callbacks may re-arm into this slot. */
+        Timeout expired = null;
+        Timeout timeout = this.heads[slot];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.rounds > 0) {
+                --timeout.rounds;
+            } else {
+                this.unlink(timeout);
+                timeout.next = expired;
+                expired = timeout;
+            }
+            timeout = next;
+        }
+        while (expired != null) {
+            Timeout next = expired.next;
+            expired.next = null;
+            expired.expired();
+            expired = next;
+        }
+    }
+
+    public void run() {
+        while (this.running) {
+            long deadline = this.startTime + (this.cursor + 1) * this.tickNanos;
+            long wait = deadline - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+            } else {
+                this.tick();
+            }
+        }
+    }
+}
@@ -0,0 +1,380 @@
+/**
+ * TransferMetrics.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.*;
+
+/**
+ * The metrics of one transfer, seen from one end.
+ *
+ * Counters are updated on the packet path by the network thread and, for
+ * selective repeat, the retransmission timer thread; they are atomic so
+ * either may count. The parallel streams of a selective repeat transfer
+ * share its metrics, so the round-trip time and acknowledgement delay
+ * histograms are recorded under their own locks, uncontended unless a
+ * transfer has more than one stream. While a transfer runs its metrics
+ * are registered as an MBean, so they can be watched live with jconsole or
+ * any JMX client; when it ends they are dumped as JSON, to the file named
+ * by TransferOptions.metricsFile() or else to the log.
+ */
+public class TransferMetrics implements TransferMetricsMBean {
+
+    /** The number of transfers registered so far in this process, used to name their MBeans. */
+    private static final AtomicInteger ids = new AtomicInteger();
+
+    /** Instance variables. */
+    private String protocol;            // the protocol of the transfer
+    private String role;                // "sender" or "receiver"
+    private long fileBytes;             // the size of the file
+    private volatile int payloadBytes;  // the payload size agreed in the handshake, or 0
+    private volatile long startTime;    // the time the transfer started, in nanoseconds
+    private volatile long endTime;      // the time the transfer ended, in nanoseconds, or 0 while it runs
+    private ObjectName name;            // the name the MBean is registered under, or null
+
+    /** Counters. */
+    private AtomicLong packetsSent = new AtomicLong();
+    private AtomicLong packetsReceived = new AtomicLong();
+    private AtomicLong bytesSent = new AtomicLong();
+    private AtomicLong bytesReceived = new AtomicLong();
+    private AtomicLong retransmits = new AtomicLong();
+    private AtomicLong fastRetransmits = new AtomicLong();
+    private AtomicLong timeouts = new AtomicLong();
+    private AtomicLong duplicateAcks = new AtomicLong();
+    private AtomicLong duplicatePackets = new AtomicLong();
+    private AtomicLong acksSent = new AtomicLong();
+    private AtomicLong acksReceived = new AtomicLong();
+    private AtomicLong parityPackets = new AtomicLong();
+    private AtomicLong repairs = new AtomicLong();
+    private AtomicLong corruptPackets = new AtomicLong();
+    private AtomicLong verifiedRanges = new AtomicLong();
+    private AtomicLong compressedBlocks = new AtomicLong();
+    private AtomicLong resumedBlocks = new AtomicLong();
+    private AtomicLong compressionRawBytes = new AtomicLong();
+    private AtomicLong compressionWireBytes = new AtomicLong();
+    private AtomicLong compressionNanos = new AtomicLong();
+    private AtomicLong digestNanos = new AtomicLong();
+
+    /** Histograms. */
+    private LatencyHistogram rtt = new LatencyHistogram();       // round-trip times, recorded by the sender
+    private LatencyHistogram ackDelay = new LatencyHistogram();  // time packets wait to be acknowledged, recorded by the receiver
+
+    /**
+     * Constructor for TransferMetrics.
+     * @param protocol  the protocol of the transfer
+     * @param role      "sender" or "receiver"
+     */
+    public TransferMetrics(String protocol, String role) {
+        this.protocol = protocol;
+        this.role = role;
+        /* registered up front, as the platform MBean server is slow to start on first use */
+        try {
+            this.name = new ObjectName("udpnetworks:type=Transfer,protocol=" + this.protocol
+                + ",role=" + this.role + ",id=" + ids.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, this.name);
+        } catch (JMException e) {
+            this.name = null;
+            PacketLog.summary("metrics  : not registered over JMX (" + e + ")");
+        }
+    }
+
+    /**
+     * Starts timing the transfer.
+     * @param fileBytes  the size of the file, if known yet, or 0
+     */
+    public void start(long fileBytes) {
+        this.fileBytes = fileBytes;
+        this.startTime = System.nanoTime();
+    }
+
+    /**
+     * Sets the size of the file, once it is known.
+     * @param fileBytes  the size of the file
+     */
+    public void fileBytes(long fileBytes) {
+        this.fileBytes = fileBytes;
+    }
+
+    /**
+     * Sets the payload size of the transfer, once the handshake agrees it.
+     * @param payloadBytes  the largest payload of a data packet in bytes
+     */
+    public void payloadBytes(int payloadBytes) {
+        this.payloadBytes = payloadBytes;
+    }
+
+    /**
+     * Counts blocks a resumed transfer did not send, the receiver having
+     * them from the transfer it resumes.
+     * @param blocks  the number of blocks
+     */
+    public void resumed(long blocks) {
+        this.resumedBlocks.addAndGet(blocks);
+    }
+
+    /** Stops timing the transfer, dumps its metrics as JSON and unregisters its MBean. */
+    public void finish() {
+        this.endTime = System.nanoTime();
+        String json = this.getJson();
+        String file = TransferOptions.metricsFile();
+        if (file == null) {
+            PacketLog.summary("metrics  : " + json);
+        } else {
+            try {
+                Files.write(Paths.get(file), (json + "\n").getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                PacketLog.summary("metrics  : could not write " + file + " (" + e + ")");
+            }
+        }
+        if (this.name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.name);
+            } catch (JMException e) {
+                /* Already gone; nothing to do. */
+            }
+        }
+    }
+
+    /**
+     * Counts a data packet sent for the first time, or an acknowledgement sent.
+     * @param bytes  the size of the packet
+     */
+    public void sent(int bytes) {
+        this.packetsSent.incrementAndGet();
+        this.bytesSent.addAndGet(bytes);
+    }
+
+    /**
+     * Counts a data packet resent.
+     * @param bytes  the size of the packet
+     */
+    public void resent(int bytes) {
+        this.sent(bytes);
+        this.retransmits.incrementAndGet();
+    }
+
+    /**
+     * Counts a packet received.
+     * @param bytes  the size of the packet
+     */
+    public void received(int bytes) {
+        this.packetsReceived.incrementAndGet();
+        this.bytesReceived.addAndGet(bytes);
+    }
+
+    /** Counts a fast retransmit, in addition to the packets it resends. */
+    public void fastRetransmit() {
+        this.fastRetransmits.incrementAndGet();
+    }
+
+    /** Counts a retransmission timeout. */
+    public void timeout() {
+        this.timeouts.incrementAndGet();
+    }
+
+    /** Counts a duplicate acknowledgement received. */
+    public void duplicateAck() {
+        this.duplicateAcks.incrementAndGet();
+    }
+
+    /** Counts a data packet received that had been received before. */
+    public void duplicatePacket() {
+        this.duplicatePackets.incrementAndGet();
+    }
+
+    /** Counts an acknowledgement sent by the receiver. */
+    public void ackSent() {
+        this.acksSent.incrementAndGet();
+    }
+
+    /** Counts an acknowledgement received by the sender. */
+    public void ackReceived() {
+        this.acksReceived.incrementAndGet();
+    }
+
+    /** Counts a parity packet sent by the sender or received by the receiver. */
+    public void parityPacket() {
+        this.parityPackets.incrementAndGet();
+    }
+
+    /** Counts a lost data packet the receiver rebuilt from a parity packet. */
+    public void repair() {
+        this.repairs.incrementAndGet();
+    }
+
+    /** Counts a packet dropped because its checksum did not match. */
+    public void corruptPacket() {
+        this.corruptPackets.incrementAndGet();
+    }
+
+    /** Counts a range whose digest matched the other end's. */
+    public void verified() {
+        this.verifiedRanges.incrementAndGet();
+    }
+
+    /**
+     * Counts time spent digesting the file.
+     * @param nanos  the time in nanoseconds
+     */
+    public void digest(long nanos) {
+        this.digestNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Counts a block through the compression stage: every block the sender
+     * compresses or sends as it is, or every compressed block the receiver
+     * inflates.
+     * @param rawLength   the size of the block in bytes
+     * @param wireLength  the size it took on the wire
+     * @param nanos       the time spent compressing or inflating it
+     */
+    public void compression(int rawLength, int wireLength, long nanos) {
+        if (wireLength < rawLength) {
+            this.compressedBlocks.incrementAndGet();
+        }
+        this.compressionRawBytes.addAndGet(rawLength);
+        this.compressionWireBytes.addAndGet(wireLength);
+        this.compressionNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Records a round-trip time sample.
+     * @param nanos  the round-trip time in nanoseconds
+     */
+    public void rtt(long nanos) {
+        synchronized (this.rtt) {
+            this.rtt.record(nanos);
+        }
+    }
+
+    /**
+     * Records how long a packet waited before an acknowledgement covered it.
+     * @param nanos  the delay in nanoseconds
+     */
+    public void ackDelay(long nanos) {
+        synchronized (this.ackDelay) {
+            this.ackDelay.record(nanos);
+        }
+    }
+
+    /** @return the elapsed time of the transfer in nanoseconds, so far if it is still running */
+    public long elapsedNanos() {
+        long end = this.endTime;
+        return (end == 0 ? System.nanoTime() : end) - this.startTime;
+    }
+
+    /**
+     * Returns a rate in megabits per second.
+     * @param bytes  the number of bytes transferred
+     * @return the rate over the elapsed time, or 0 if no time has elapsed
+     */
+    private double mbps(long bytes) {
+        long nanos = this.elapsedNanos();
+        return nanos <= 0 ? 0 : bytes * 8e3 / nanos;
+    }
+
+    public String getProtocol() { return this.protocol; }
+
+    public String getRole() { return this.role; }
+
+    public long getFileBytes() { return this.fileBytes; }
+
+    public int getPayloadBytes() { return this.payloadBytes; }
+
+    public long getResumedBlocks() { return this.resumedBlocks.get(); }
+
+    public double getElapsedMillis() { return this.elapsedNanos() / 1e6; }
+
+    public long getPacketsSent() { return this.packetsSent.get(); }
+
+    public long getPacketsReceived() { return this.packetsReceived.get(); }
+
+    public long getBytesSent() { return this.bytesSent.get(); }
+
+    public long getBytesReceived() { return this.bytesReceived.get(); }
+
+    public long getRetransmits() { return this.retransmits.get(); }
+
+    public long getFastRetransmits() { return this.fastRetransmits.get(); }
+
+    public long getTimeouts() { return this.timeouts.get(); }
+
+    public long getDuplicateAcks() { return this.duplicateAcks.get(); }
+
+    public long getDuplicatePackets() { return this.duplicatePackets.get(); }
+
+    public long getAcksSent() { return this.acksSent.get(); }
+
+    public long getAcksReceived() { return this.acksReceived.get(); }
+
+    public long getParityPackets() { return this.parityPackets.get(); }
+
+    public long getRepairs() { return this.repairs.get(); }
+
+    public long getCorruptPackets() { return this.corruptPackets.get(); }
+
+    public long getVerifiedRanges() { return this.verifiedRanges.get(); }
+
+    public long getCompressedBlocks() { return this.compressedBlocks.get(); }
+
+    /** @return the size of the blocks through the compression stage over the bytes they took on the wire, or 1 */
+    public double getCompressionRatio() {
+        long wire = this.compressionWireBytes.get();
+        return wire == 0 ? 1 : (double) this.compressionRawBytes.get() / wire;
+    }
+
+    /** @return the time spent compressing or inflating blocks, in milliseconds */
+    public double getCompressionMillis() { return this.compressionNanos.get() / 1e6; }
+
+    /** @return the time spent digesting the file, in milliseconds */
+    public double getDigestMillis() { return this.digestNanos.get() / 1e6; }
+
+    /** @return the compression ratio, blocks compressed and time spent, as one line */
+    public String compressionSummary() {
+        return String.format("%.2fx, %d blocks compressed, %.1f ms",
+            this.getCompressionRatio(), this.getCompressedBlocks(), this.getCompressionMillis());
+    }
+
+    /** @return the rate the file itself was delivered at, in megabits per second */
+    public double getGoodputMbps() { return this.mbps(this.fileBytes); }
+
+    /** @return the rate of everything this end put on or took off the wire, in megabits per second */
+    public double getThroughputMbps() {
+        return this.mbps("sender".equals(this.role) ? this.getBytesSent() : this.getBytesReceived());
+    }
+
+    public double getRttMeanMicros() { return this.rtt.mean() / 1e3; }
+
+    public double getRttP99Micros() { return this.rtt.percentile(99) / 1e3; }
+
+    public double getAckDelayMeanMicros() { return this.ackDelay.mean() / 1e3; }
+
+    public double getAckDelayP99Micros() { return this.ackDelay.percentile(99) / 1e3; }
+
+    /** @return every metric as a single-line JSON object */
+    public String getJson() {
+        return String.format(
+            "{\"protocol\":\"%s\",\"role\":\"%s\",\"fileBytes\":%d,\"payloadBytes\":%d,\"resumedBlocks\":%d,\"elapsedMs\":%.3f," +
+            "\"packetsSent\":%d,\"packetsReceived\":%d,\"bytesSent\":%d,\"bytesReceived\":%d," +
+            "\"retransmits\":%d,\"fastRetransmits\":%d,\"timeouts\":%d,\"duplicateAcks\":%d," +
+            "\"duplicatePackets\":%d,\"acksSent\":%d,\"acksReceived\":%d,\"parityPackets\":%d,\"repairs\":%d," +
+            "\"corruptPackets\":%d,\"verifiedRanges\":%d,\"compressedBlocks\":%d,\"compressionRatio\":%.3f,\"compressionMs\":%.3f,\"digestMs\":%.3f," +
+            "\"goodputMbps\":%.3f,\"throughputMbps\":%.3f,\"rtt\":%s,\"ackDelay\":%s}",
+            this.protocol, this.role, this.fileBytes, this.payloadBytes, this.getResumedBlocks(), this.getElapsedMillis(),
+            this.getPacketsSent(), this.getPacketsReceived(), this.getBytesSent(), this.getBytesReceived(),
+            this.getRetransmits(), this.getFastRetransmits(), this.getTimeouts(), this.getDuplicateAcks(),
+            this.getDuplicatePackets(), this.getAcksSent(), this.getAcksReceived(), this.getParityPackets(), this.getRepairs(),
+            this.getCorruptPackets(), this.getVerifiedRanges(), this.getCompressedBlocks(), this.getCompressionRatio(), this.getCompressionMillis(),
+            this.getDigestMillis(),
+            this.getGoodputMbps(), this.getThroughputMbps(), this.rtt.toJson(), this.ackDelay.toJson());
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * TransferMetricsMBean.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+/** The management interface TransferMetrics exposes over JMX. */
+public interface TransferMetricsMBean {
+
+    String getProtocol();
+
+    String getRole();
+
+    long getFileBytes();
+
+    int getPayloadBytes();
+
+    long getResumedBlocks();
+
+    double getElapsedMillis();
+
+    long getPacketsSent();
+
+    long getPacketsReceived();
+
+    long getBytesSent();
+
+    long getBytesReceived();
+
+    long getRetransmits();
+
+    long getFastRetransmits();
+
+    long getTimeouts();
+
+    long getDuplicateAcks();
+
+    long getDuplicatePackets();
+
+    long getAcksSent();
+
+    long getAcksReceived();
+
+    long getParityPackets();
+
+    long getRepairs();
+
+    long getCorruptPackets();
+
+    long getVerifiedRanges();
+
+    long getCompressedBlocks();
+
+    double getCompressionRatio();
+
+    double getCompressionMillis();
+
+    double getDigestMillis();
+
+    double getGoodputMbps();
+
+    double getThroughputMbps();
+
+    double getRttMeanMicros();
+
+    double getRttP99Micros();
+
+    double getAckDelayMeanMicros();
+
+    double getAckDelayP99Micros();
+
+    String getJson();
+}
@@ -0,0 +1,355 @@
+/**
+ * TransferOptions.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.util.zip.Deflater;
+
+/**
+ * Tuning options shared by the senders and receivers.
+ *
+ * The command line arguments of each protocol stay as they are; optional
+ * tuning is read from system properties instead, for example
+ *   java -Dudp.transport=nio GoBackNSender localhost 9000 file.bin 50 16
+ */
+public class TransferOptions {
+
+    private TransferOptions() {}
+
+    /**
+     * Returns the transport the windowed protocols run on, either "socket"
+     * for java.net.DatagramSocket or "nio" for java.nio DatagramChannel.
+     * @return the name of the transport
+     */
+    public static String transport() {
+        return System.getProperty("udp.transport", "socket");
+    }
+
+    /**
+     * Returns whether the retransmission timeout adapts to measured round-trip
+     * times ("adaptive"), or stays at the command line timeout ("fixed").
+     * @return whether the retransmission timeout is adaptive
+     */
+    public static boolean adaptiveRto() {
+        return !"fixed".equals(System.getProperty("udp.rto", "adaptive"));
+    }
+
+    /**
+     * Returns the lower bound on an adaptive retransmission timeout. Like
+     * the minimum of RFC 6298, it keeps the ordinary jitter of a fast path
+     * from firing spurious timeouts.
+     * @return the minimum timeout in milliseconds
+     */
+    public static long minRtoMillis() {
+        return Long.getLong("udp.rto.min", 200);
+    }
+
+    /**
+     * Returns the upper bound on an adaptive retransmission timeout.
+     * @return the maximum timeout in milliseconds
+     */
+    public static long maxRtoMillis() {
+        return Long.getLong("udp.rto.max", 60000);
+    }
+
+    /**
+     * Returns the congestion control algorithm of the windowed senders:
+     * "aimd" (slow start and AIMD), "cubic", or "none" for a fixed window.
+     * @return the name of the congestion control algorithm
+     */
+    public static String congestionControl() {
+        return System.getProperty("udp.cc", "aimd");
+    }
+
+    /**
+     * Returns the initial congestion window.
+     * @return the initial congestion window in packets
+     */
+    public static int initialWindow() {
+        return Integer.getInteger("udp.cc.initial", 10);
+    }
+
+    /**
+     * Returns the cap on a sender's rate, so a bulk transfer leaves room for
+     * other traffic; parallel streams share it. The basic sender, which has
+     * no acknowledgements to pace by, sends at its own default without one.
+     * @return the cap in Mbit/s, or 0 for none
+     */
+    public static double rateMbit() {
+        return Math.max(0, Double.parseDouble(System.getProperty("udp.rate.mbit", "0")));
+    }
+
+    /**
+     * Returns whether the windowed senders pace their packets, spreading
+     * the congestion window over the round-trip time, rather than send
+     * each window back to back ("off"). The cap applies either way.
+     * @return whether pacing follows the congestion window
+     */
+    public static boolean pacing() {
+        return !"off".equals(System.getProperty("udp.pacing", "on"));
+    }
+
+    /**
+     * Returns the number of full packets a sender may send back to back
+     * before it is paced.
+     * @return the burst size in packets, at least 1
+     */
+    public static int pacingBurst() {
+        return Math.max(1, Integer.getInteger("udp.pacing.burst", 4));
+    }
+
+    /**
+     * Returns the length of a tick of the retransmission timing wheel.
+     * @return the tick length in nanoseconds
+     */
+    public static long wheelTickNanos() {
+        return Long.getLong("udp.wheel.tick", 1000) * 1000L;
+    }
+
+    /**
+     * Returns the number of slots in one revolution of the timing wheel.
+     * @return the number of slots
+     */
+    public static int wheelSlots() {
+        return Integer.getInteger("udp.wheel.slots", 512);
+    }
+
+    /**
+     * Returns the requested SO_SNDBUF size, or 0 to keep the OS default.
+     * @return the send buffer size in bytes
+     */
+    public static int sendBufferSize() {
+        return Integer.getInteger("udp.sndbuf", 0);
+    }
+
+    /**
+     * Returns the requested SO_RCVBUF size, or 0 to keep the OS default.
+     * @return the receive buffer size in bytes
+     */
+    public static int receiveBufferSize() {
+        return Integer.getInteger("udp.rcvbuf", 0);
+    }
+
+    /**
+     * Returns whether the windowed receivers write each block at its offset
+     * in a preallocated file as soon as it arrives ("positional"), rather
+     * than in order through a stream ("stream", the default). A resumable
+     * transfer records the blocks at their offsets, so it always writes
+     * positionally.
+     * @return whether positional writes are enabled
+     */
+    public static boolean positionalWrites() {
+        return "positional".equals(System.getProperty("udp.write", "stream")) || resume();
+    }
+
+    /**
+     * Returns the log level: "off", "summary" (the default) or "packet",
+     * which also traces every packet event.
+     * @return the log level, one of the PacketLog levels
+     */
+    public static int logLevel() {
+        String level = System.getProperty("udp.log", "summary");
+        if ("off".equals(level)) {
+            return PacketLog.OFF;
+        } else if ("packet".equals(level)) {
+            return PacketLog.PACKET;
+        }
+        return PacketLog.SUMMARY;
+    }
+
+    /**
+     * Returns the packet event sampling interval: only events about every
+     * Nth sequence number are traced.
+     * @return the sampling interval, at least 1
+     */
+    public static long logSample() {
+        return Math.max(1, Long.getLong("udp.log.sample", 1));
+    }
+
+    /**
+     * Returns the number of events the log ring holds before packet events
+     * are dropped.
+     * @return the capacity of the log ring
+     */
+    public static int logRing() {
+        return Math.max(2, Integer.getInteger("udp.log.ring", 65536));
+    }
+
+    /**
+     * Returns the file the transfer metrics are appended to as a line of
+     * JSON when a transfer ends.
+     * @return the name of the metrics file, or null to print them to the log
+     */
+    public static String metricsFile() {
+        return System.getProperty("udp.metrics");
+    }
+
+    /**
+     * Returns the number of blocks the windowed receivers queue for their
+     * disk writer thread. The free space in the queue is the receive window
+     * advertised to the sender.
+     * @return the capacity of the disk write queue in blocks
+     */
+    public static int writeQueue() {
+        return Math.max(1, Integer.getInteger("udp.write.queue", 1024));
+    }
+
+    /**
+     * Returns how many in-order packets the selective repeat receiver covers
+     * with one acknowledgement. Out-of-order and duplicate packets are always
+     * acknowledged at once.
+     * @return the number of packets per acknowledgement, at least 1
+     */
+    public static int ackEvery() {
+        return Math.max(1, Integer.getInteger("udp.ack.every", 8));
+    }
+
+    /**
+     * Returns how long the selective repeat receiver may hold back an
+     * acknowledgement while waiting for more packets. Receivers wait in
+     * whole milliseconds, so an acknowledgement due within one is sent at
+     * once; a delay under 2000 microseconds coalesces only the packets
+     * already queued.
+     * @return the maximum acknowledgement delay in microseconds
+     */
+    public static long ackDelayMicros() {
+        return Long.getLong("udp.ack.delay", 2000);
+    }
+
+    /**
+     * Returns the number of parallel streams the selective repeat sender
+     * splits a file across, each on its own sockets and threads; "auto"
+     * uses one per available processor.
+     * @return the number of streams requested, at least 1
+     */
+    public static int streams() {
+        String streams = System.getProperty("udp.streams", "1");
+        if ("auto".equals(streams)) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return Math.max(1, Integer.parseInt(streams));
+    }
+
+    /**
+     * Returns whether the selective repeat sender talks to a ReceiverServer:
+     * it takes the session ID the server hands out and its acknowledgements
+     * on the socket it sends from, and sends on a single stream.
+     * @return whether the sender opens a session
+     */
+    public static boolean sessions() {
+        return Boolean.getBoolean("udp.session");
+    }
+
+    /**
+     * Returns how long a ReceiverServer keeps a session it hears nothing
+     * from, whether to repeat a finished one's final acknowledgement or
+     * before abandoning an unfinished one.
+     * @return the idle timeout in milliseconds
+     */
+    public static long sessionIdleMillis() {
+        return Long.getLong("udp.session.idle", 30000);
+    }
+
+    /**
+     * Returns the number of worker threads a ReceiverServer runs, each on a
+     * socket of its own bound to the server's port with SO_REUSEPORT and
+     * with a session table of its own; "auto" uses one per available
+     * processor.
+     * @return the number of workers requested, at least 1
+     */
+    public static int serverWorkers() {
+        String workers = System.getProperty("udp.server.workers", "auto");
+        if ("auto".equals(workers)) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return Math.max(1, Integer.parseInt(workers));
+    }
+
+    /**
+     * Returns the number of blocks the selective repeat sender covers with
+     * each parity packet, so the receiver can rebuild one lost block of the
+     * group without a retransmission: "off", a power of two from 2 to 64,
+     * or "auto" to adapt the coverage to the loss measured so far, between
+     * 4 and 64 blocks.
+     * @return the parity group size, rounded down to a power of two, or 0 for none
+     */
+    public static int parityGroup() {
+        String fec = System.getProperty("udp.fec", "off");
+        if ("off".equals(fec)) {
+            return 0;
+        } else if ("auto".equals(fec)) {
+            return ParityEncoder.MIN_ADAPTIVE_GROUP;
+        }
+        return Integer.highestOneBit(Math.min(ParallelStreams.ALIGNMENT, Math.max(2, Integer.parseInt(fec))));
+    }
+
+    /**
+     * Returns whether the parity coverage adapts to the measured loss.
+     * @return whether udp.fec is "auto"
+     */
+    public static boolean parityAdaptive() {
+        return "auto".equals(System.getProperty("udp.fec"));
+    }
+
+    /**
+     * Returns the largest payload the windowed protocols send or take in a
+     * packet, which the handshake settles at the smaller of the sender's and
+     * the receiver's: a size in bytes, or "auto" for the largest a datagram
+     * can carry, which a sender narrows by probing the path MTU first.
+     * @return the largest payload in bytes, from 512 to 65480
+     */
+    public static int payload() {
+        String payload = System.getProperty("udp.payload", String.valueOf(PacketCodec.DEFAULT_PAYLOAD));
+        if ("auto".equals(payload)) {
+            return PacketCodec.MAX_PAYLOAD;
+        }
+        return Math.min(PacketCodec.MAX_PAYLOAD, Math.max(PathMtu.MIN_PAYLOAD, Integer.parseInt(payload)));
+    }
+
+    /**
+     * Returns whether a sender probes the path MTU before its handshake to
+     * pick the largest payload that arrives unfragmented.
+     * @return whether udp.payload is "auto"
+     */
+    public static boolean probePathMtu() {
+        return "auto".equals(System.getProperty("udp.payload"));
+    }
+
+    /**
+     * Returns the deflate level the windowed senders compress each block
+     * with: "off", "on" for the fastest level, or a level from 1 to 9.
+     * Blocks that do not shrink are sent as they are.
+     * @return the deflate level, or 0 for no compression
+     */
+    public static int compressionLevel() {
+        String level = System.getProperty("udp.compress", "off");
+        if ("off".equals(level)) {
+            return 0;
+        } else if ("on".equals(level)) {
+            return Deflater.BEST_SPEED;
+        }
+        return Math.min(Deflater.BEST_COMPRESSION, Math.max(1, Integer.parseInt(level)));
+    }
+
+    /**
+     * Returns whether the windowed receivers keep a record of the blocks
+     * on disk beside a file being written at its offsets, so a transfer
+     * cut short can be resumed by running both ends again: the receiver
+     * tells the sender in its handshake which blocks it already has.
+     * @return whether receivers resume transfers
+     */
+    public static boolean resume() {
+        return Boolean.getBoolean("udp.resume");
+    }
+
+    /**
+     * Returns how often the record of the blocks on disk is checkpointed
+     * while a resumable file is written.
+     * @return the checkpoint interval in milliseconds
+     */
+    public static long checkpointMillis() {
+        return Long.getLong("udp.resume.checkpoint", 1000);
+    }
+}
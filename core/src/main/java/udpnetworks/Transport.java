@@ -0,0 +1,82 @@
+/**
+ * Transport.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+
+/**
+ * A datagram endpoint that sends and receives packets held in ByteBuffers.
+ *
+ * Implementations differ in the buffers they work best with, so callers
+ * should take their packet buffers from newBufferPool.
+ */
+public interface Transport extends Closeable {
+
+    /**
+     * Sends the bytes between a buffer's position and limit as one datagram.
+     * The buffer's position is left unchanged, so a packet can be resent.
+     * @param packet  the buffer holding the packet
+     * @param target  the address the packet is sent to
+     */
+    void send(ByteBuffer packet, SocketAddress target) throws IOException;
+
+    /**
+     * Receives one datagram into a buffer, starting at index 0.
+     * @param dst      the buffer the datagram is received into
+     * @param timeout  the timeout in milliseconds, or 0 to wait forever
+     * @return the size in bytes of the datagram
+     * @throws SocketTimeoutException if no datagram arrives in time
+     */
+    int receive(ByteBuffer dst, int timeout) throws IOException;
+
+    /**
+     * Returns the address the last datagram was received from.
+     * @return the address the last datagram was received from
+     */
+    SocketAddress lastSource();
+
+    /**
+     * Returns the local address of this transport.
+     * @return the local address of this transport
+     */
+    InetSocketAddress localAddress();
+
+    /**
+     * Creates a pool of packet buffers suited to this transport.
+     * @param count       number of buffers to preallocate
+     * @param bufferSize  capacity of each buffer in bytes
+     * @return a pool of packet buffers
+     */
+    BufferPool newBufferPool(int count, int bufferSize);
+
+    /**
+     * Opens the transport selected by TransferOptions.transport().
+     * @param bind  the local address to bind to, or null for any ephemeral port
+     * @return an open transport
+     */
+    static Transport open(InetSocketAddress bind) throws IOException {
+        return open(bind, false);
+    }
+
+    /**
+     * Opens the transport selected by TransferOptions.transport(), optionally
+     * sharing its port: with SO_REUSEPORT set on every socket bound to a port,
+     * the kernel spreads the flows arriving at it across them.
+     * @param bind       the local address to bind to, or null for any ephemeral port
+     * @param reusePort  whether to set SO_REUSEPORT
+     * @return an open transport
+     * @throws UnsupportedOperationException if reusePort is set but the platform lacks SO_REUSEPORT
+     */
+    static Transport open(InetSocketAddress bind, boolean reusePort) throws IOException {
+        if ("nio".equals(TransferOptions.transport())) {
+            return new ChannelTransport(bind, reusePort);
+        } else {
+            return new SocketTransport(bind, reusePort);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * BlockQueueTest.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for BlockQueue.
+ */
+class BlockQueueTest {
+
+    @Test
+    void capacityRoundsUpToAPowerOfTwo() {
+        assertEquals(1, new BlockQueue(1).capacity());
+        assertEquals(2, new BlockQueue(2).capacity());
+        assertEquals(4, new BlockQueue(3).capacity());
+        assertEquals(4, new BlockQueue(4).capacity());
+        assertEquals(8, new BlockQueue(5).capacity());
+        assertEquals(1024, new BlockQueue(1000).capacity());
+        assertEquals(1024, new BlockQueue(1024).capacity());
+        assertEquals(2048, new BlockQueue(1025).capacity());
+    }
+
+    @Test
+    void emptyQueueHasNothingToPeek() {
+        BlockQueue queue = new BlockQueue(4);
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.size());
+        assertNull(queue.peekBuffer());
+    }
+
+    @Test
+    void fullQueueRefusesUntilTheHeadIsRemoved() {
+        BlockQueue queue = new BlockQueue(4);
+        for (long seqNum = 0; seqNum < 4; ++seqNum) {
+            assertTrue(queue.offer(seqNum, ByteBuffer.allocate(1)));
+        }
+        assertEquals(4, queue.size());
+        assertFalse(queue.offer(4, ByteBuffer.allocate(1)));
+
+        /* A peeked block still holds its slot. */
+        assertNotNull(queue.peekBuffer());
+        assertFalse(queue.offer(4, ByteBuffer.allocate(1)));
+
+        queue.remove();
+        assertTrue(queue.offer(4, ByteBuffer.allocate(1)));
+        assertFalse(queue.offer(5, ByteBuffer.allocate(1)));
+    }
+
+    @Test
+    void drainsInOrderAcrossTheWrap() {
+        BlockQueue queue = new BlockQueue(4);
+        long produced = 0;
+        long consumed = 0;
+        for (int round = 0; round < 5; ++round) {
+            while (queue.offer(produced, ByteBuffer.allocate(1))) {
+                ++produced;
+            }
+            for (int i = 0; i < 3; ++i) {
+                assertNotNull(queue.peekBuffer());
+                assertEquals(consumed++, queue.peekSeqNum());
+                queue.remove();
+            }
+        }
+        while (queue.peekBuffer() != null) {
+            assertEquals(consumed++, queue.peekSeqNum());
+            queue.remove();
+        }
+        assertEquals(produced, consumed);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void handsBlocksFromProducerToConsumerThread() throws InterruptedException {
+        BlockQueue queue = new BlockQueue(16);
+        long count = 100000;
+        Thread producer = new Thread(() -> {
+            for (long seqNum = 0; seqNum < count; ++seqNum) {
+                ByteBuffer buffer = ByteBuffer.allocate(8).putLong(0, seqNum);
+                while (!queue.offer(seqNum, buffer)) {
+                    Thread.yield();
+                }
+            }
+        });
+        producer.start();
+
+        for (long seqNum = 0; seqNum < count; ++seqNum) {
+            ByteBuffer buffer;
+            while ((buffer = queue.peekBuffer()) == null) {
+                Thread.yield();
+            }
+            assertEquals(seqNum, queue.peekSeqNum());
+            assertEquals(seqNum, buffer.getLong(0));
+            queue.remove();
+        }
+        producer.join();
+        assertTrue(queue.isEmpty());
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * ParityTest.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for ParityEncoder and ParityDecoder together: the encoder's parity
+ * packet must let the decoder rebuild any one block of its group.
+ */
+class ParityTest {
+
+    /** Constants. */
+    private static final int PAYLOAD = 100;  // Not a multiple of 8, so the XOR's byte tail is exercised
+    private static final int GROUP = 4;
+    private static final int WINDOW = 64;
+
+    /** Instance variables. */
+    private PacketCodec codec = new PacketCodec(PAYLOAD);
+    private TransferMetrics metrics = new TransferMetrics("ParityTest", "sender");
+
+    /**
+     * Makes the blocks of a file of random bytes.
+     * @param fileSize  the size of the file in bytes
+     * @return the blocks, the last one short if the size is not a multiple of PAYLOAD
+     */
+    private static ByteBuffer[] blocks(long fileSize) {
+        Random random = new Random(fileSize);
+        int count = (int) ((fileSize + PAYLOAD - 1) / PAYLOAD);
+        ByteBuffer[] blocks = new ByteBuffer[count];
+        for (int i = 0; i < count; ++i) {
+            byte[] bytes = new byte[(int) Math.min(PAYLOAD, fileSize - (long) i * PAYLOAD)];
+            random.nextBytes(bytes);
+            blocks[i] = ByteBuffer.wrap(bytes);
+        }
+        return blocks;
+    }
+
+    /**
+     * Encodes the parity packets of a file's blocks, sending every block of
+     * the file through one encoder.
+     * @param blocks  the blocks of the file
+     * @return the parity packets, one per group, each decodable from index 0
+     */
+    private ByteBuffer[] encode(ByteBuffer[] blocks) {
+        ParityEncoder encoder = new ParityEncoder(PAYLOAD, GROUP, false, this.metrics, blocks.length);
+        ByteBuffer[] packets = new ByteBuffer[(blocks.length + GROUP - 1) / GROUP];
+        int n = 0;
+        for (int i = 0; i < blocks.length; ++i) {
+            if (encoder.add(i, blocks[i], 0, blocks[i].limit())) {
+                ByteBuffer packet = ByteBuffer.allocate(this.codec.packetCapacity());
+                int length = encoder.encode(this.codec, packet);
+                packet.limit(length);
+                packets[n++] = packet;
+            }
+        }
+        assertEquals(packets.length, n);
+        return packets;
+    }
+
+    /**
+     * Feeds a decoder every block of a group but the lost ones, then its
+     * parity packet, which the rebuilt block replaces in its buffer.
+     * @param fileSize    the size of the file in bytes
+     * @param blocks      the blocks of the file
+     * @param parity      the parity packet of the group
+     * @param nextSeqNum  the next block the receiver expects
+     * @param lost        the blocks lost
+     * @return the sequence number of the rebuilt block, or -1 if none was
+     */
+    private long repair(long fileSize, ByteBuffer[] blocks, ByteBuffer parity, long nextSeqNum, long... lost) {
+        ParityDecoder decoder = new ParityDecoder(PAYLOAD, GROUP, WINDOW, fileSize);
+        next:
+        for (int i = 0; i < blocks.length; ++i) {
+            for (long seqNum : lost) {
+                if (seqNum == i) {
+                    continue next;
+                }
+            }
+            decoder.add(i, blocks[i].duplicate());
+        }
+        assertTrue(this.codec.decode(parity, parity.limit()));
+        assertEquals(PacketHeader.TYPE_PARITY, this.codec.type());
+        return decoder.repair(this.codec, parity, nextSeqNum, WINDOW);
+    }
+
+    @Test
+    void rebuildsALostBlockOfAFullGroup() {
+        long fileSize = 8 * PAYLOAD;
+        ByteBuffer[] blocks = blocks(fileSize);
+        ByteBuffer[] parity = this.encode(blocks);
+        assertEquals(2, parity.length);
+
+        assertEquals(2, this.repair(fileSize, blocks, parity[0], 0, 2));
+        assertEquals(blocks[2], parity[0]);
+    }
+
+    @Test
+    void rebuildsAShortLastBlock() {
+        /* Six blocks make a full group and a group of two, whose second block is short. */
+        long fileSize = 5 * PAYLOAD + 37;
+        ByteBuffer[] blocks = blocks(fileSize);
+        ByteBuffer[] parity = this.encode(blocks);
+        assertEquals(2, parity.length);
+        assertTrue(this.codec.decode(parity[1], parity[1].limit()));
+        assertEquals(4, this.codec.seqNum());
+        assertEquals(2, this.codec.parityCount());
+
+        assertEquals(5, this.repair(fileSize, blocks, parity[1], 4, 5));
+        assertEquals(37, parity[1].remaining());
+        assertEquals(blocks[5], parity[1]);
+    }
+
+    @Test
+    void rebuildsAFullBlockBesideAShortOne() {
+        long fileSize = 5 * PAYLOAD + 37;
+        ByteBuffer[] blocks = blocks(fileSize);
+        ByteBuffer[] parity = this.encode(blocks);
+
+        assertEquals(4, this.repair(fileSize, blocks, parity[1], 4, 4));
+        assertEquals(blocks[4], parity[1]);
+    }
+
+    @Test
+    void cannotRebuildTwoLostBlocks() {
+        long fileSize = 8 * PAYLOAD;
+        ByteBuffer[] blocks = blocks(fileSize);
+        ByteBuffer[] parity = this.encode(blocks);
+        assertEquals(-1, this.repair(fileSize, blocks, parity[1], 4, 5, 6));
+    }
+
+    @Test
+    void nothingToRebuildInACompleteGroup() {
+        long fileSize = 8 * PAYLOAD;
+        ByteBuffer[] blocks = blocks(fileSize);
+        ByteBuffer[] parity = this.encode(blocks);
+        assertEquals(-1, this.repair(fileSize, blocks, parity[0], 0));
+    }
+
+    @Test
+    void ignoresAGroupAlreadyReceived() {
+        long fileSize = 8 * PAYLOAD;
+        ByteBuffer[] blocks = blocks(fileSize);
+        ByteBuffer[] parity = this.encode(blocks);
+
+        /* The receiver has every block before 4, so the first group's parity is stale. */
+        assertEquals(-1, this.repair(fileSize, blocks, parity[0], 4, 2));
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * ReorderBufferTest.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for ReorderBuffer.
+ */
+class ReorderBufferTest {
+
+    @Test
+    void takesWhatWasPut() {
+        ReorderBuffer buffer = new ReorderBuffer(8);
+        ByteBuffer a = ByteBuffer.allocate(1);
+        ByteBuffer b = ByteBuffer.allocate(1);
+        assertTrue(buffer.isEmpty());
+
+        buffer.put(5, a);
+        buffer.put(3, b);
+        assertEquals(2, buffer.size());
+        assertTrue(buffer.contains(3));
+        assertTrue(buffer.contains(5));
+        assertFalse(buffer.contains(4));
+
+        assertSame(b, buffer.take(3));
+        assertSame(a, buffer.take(5));
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    void aliasedSeqNumIsNotFound() {
+        ReorderBuffer buffer = new ReorderBuffer(8);
+        ByteBuffer packet = ByteBuffer.allocate(1);
+        buffer.put(3, packet);
+
+        /* 11 and 19 map to the slot 3 holds. */
+        assertFalse(buffer.contains(11));
+        assertNull(buffer.take(11));
+        assertNull(buffer.take(19));
+        assertEquals(1, buffer.size());
+        assertSame(packet, buffer.take(3));
+    }
+
+    @Test
+    void takingAStaleSeqNumLeavesTheNewerPacket() {
+        ReorderBuffer buffer = new ReorderBuffer(8);
+        ByteBuffer old = ByteBuffer.allocate(1);
+        ByteBuffer newer = ByteBuffer.allocate(1);
+        buffer.put(3, old);
+        assertSame(old, buffer.take(3));
+        assertNull(buffer.take(3));
+
+        /* Once the window has slid a full turn, 11 reuses the slot of 3. */
+        buffer.put(11, newer);
+        assertFalse(buffer.contains(3));
+        assertNull(buffer.take(3));
+        assertEquals(1, buffer.size());
+        assertSame(newer, buffer.take(11));
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    void duplicatePutReplacesWithoutGrowing() {
+        ReorderBuffer buffer = new ReorderBuffer(8);
+        ByteBuffer first = ByteBuffer.allocate(1);
+        ByteBuffer second = ByteBuffer.allocate(1);
+        buffer.put(2, first);
+        buffer.put(2, second);
+        assertEquals(1, buffer.size());
+        assertSame(second, buffer.take(2));
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    void windowWiderThanOneBitmapWord() {
+        ReorderBuffer buffer = new ReorderBuffer(100);
+        for (long seqNum = 1000; seqNum < 1100; seqNum += 3) {
+            buffer.put(seqNum, ByteBuffer.allocate(1));
+        }
+        for (long seqNum = 1000; seqNum < 1100; ++seqNum) {
+            assertEquals((seqNum - 1000) % 3 == 0, buffer.contains(seqNum), "seqNum " + seqNum);
+        }
+        for (long seqNum = 1000; seqNum < 1100; seqNum += 3) {
+            assertNotNull(buffer.take(seqNum));
+        }
+        assertTrue(buffer.isEmpty());
+    }
+}
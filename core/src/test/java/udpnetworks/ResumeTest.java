@@ -0,0 +1,154 @@
+/**
+ * ResumeTest.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for ProgressFile and for BlockDigest reading back blocks of a
+ * FileBlockSink, the pieces a resumed transfer is built from.
+ */
+class ResumeTest {
+
+    /** Constants. */
+    private static final int BLOCK = 100;
+    private static final long SIZE = 129 * BLOCK + 37;  // Three bitmap words, and a short last block
+    private static final long BLOCKS = 130;
+
+    /** Instance variables. */
+    @TempDir
+    Path dir;
+    private String filename;
+    private byte[] content;
+    private TransferMetrics metrics = new TransferMetrics("ResumeTest", "receiver");
+
+    @BeforeEach
+    void setUp() {
+        this.filename = this.dir.resolve("file.bin").toString();
+        this.content = new byte[(int) SIZE];
+        new Random(SIZE).nextBytes(this.content);
+    }
+
+    /**
+     * Returns a block of the file's content.
+     * @param seqNum  the sequence number of the block
+     * @return a buffer holding the block between its position and limit
+     */
+    private ByteBuffer block(long seqNum) {
+        int offset = (int) (seqNum * BLOCK);
+        return ByteBuffer.wrap(this.content, offset, (int) Math.min(BLOCK, SIZE - offset));
+    }
+
+    /**
+     * Marks and writes a block to a sink, and adds it to a digest.
+     * @param sink    the sink the block is written to
+     * @param digest  the digest it is added to, or null
+     * @param seqNum  the sequence number of the block
+     */
+    private void write(FileBlockSink sink, BlockDigest digest, long seqNum) throws IOException {
+        ByteBuffer block = this.block(seqNum);
+        assertTrue(sink.mark(seqNum, block.remaining()));
+        sink.writeBlock(seqNum, block.duplicate());
+        if (digest != null) {
+            digest.add(seqNum, block);
+        }
+    }
+
+    @Test
+    void progressRecordsOnlyCommittedSnapshots() throws IOException {
+        ProgressFile progress = new ProgressFile(this.filename, SIZE, BLOCK, BLOCKS, false);
+        assertFalse(progress.isResumed());
+        progress.written(0);
+        progress.written(64);
+        progress.written(129);
+        progress.snapshot();
+        progress.written(7);
+        progress.commit();
+        progress.written(8);
+        progress.close();
+
+        ProgressFile resumed = new ProgressFile(this.filename, SIZE, BLOCK, BLOCKS, true);
+        assertTrue(resumed.isResumed());
+        long[] bitmap = new long[3];
+        assertEquals(3, resumed.load(bitmap));
+        assertEquals(1L, bitmap[0]);
+        assertEquals(1L, bitmap[1]);
+        assertEquals(1L << 1, bitmap[2]);
+        resumed.close();
+    }
+
+    @Test
+    void progressOfAnotherFileStartsAfresh() throws IOException {
+        ProgressFile progress = new ProgressFile(this.filename, SIZE, BLOCK, BLOCKS, false);
+        progress.written(3);
+        progress.snapshot();
+        progress.commit();
+        progress.close();
+        assertEquals(BLOCK, ProgressFile.recordedBlockSize(this.filename, SIZE));
+        assertEquals(0, ProgressFile.recordedBlockSize(this.filename, SIZE + 1));
+
+        /* A record is dropped if the file it describes is gone. */
+        ProgressFile fresh = new ProgressFile(this.filename, SIZE, BLOCK, BLOCKS, false);
+        assertFalse(fresh.isResumed());
+        assertEquals(0, fresh.load(new long[3]));
+        fresh.delete();
+        assertFalse(Files.exists(Paths.get(this.filename + ".progress")));
+        assertEquals(0, ProgressFile.recordedBlockSize(this.filename, SIZE));
+    }
+
+    @Test
+    void digestReadsBackBlocksWrittenAhead() throws Exception {
+        FileBlockSink sink = new FileBlockSink(this.filename, BLOCK, SIZE);
+        BlockDigest digest = new BlockDigest(sink, 0, BLOCKS, this.metrics);
+
+        /* Every block but the first arrives ahead of it, so all of them are read back. */
+        for (long seqNum = BLOCKS - 1; seqNum > 0; --seqNum) {
+            this.write(sink, digest, seqNum);
+            assertNull(digest.value());
+        }
+        this.write(sink, digest, 0);
+        assertArrayEquals(MessageDigest.getInstance(BlockDigest.ALGORITHM).digest(this.content), digest.value());
+        sink.close();
+    }
+
+    @Test
+    void resumedSinkKeepsItsBlocksAndDigest() throws Exception {
+        FileBlockSink first = new FileBlockSink(this.filename, BLOCK, SIZE, true);
+        for (long seqNum = 0; seqNum < BLOCKS; seqNum += 2) {
+            this.write(first, null, seqNum);
+        }
+        first.close();
+        assertTrue(Files.exists(Paths.get(this.filename + ".progress")));
+
+        /* The second transfer finds the even blocks on disk and is sent only the odd ones. */
+        FileBlockSink second = new FileBlockSink(this.filename, BLOCK, SIZE, true);
+        assertTrue(second.isResumed());
+        assertEquals(BLOCKS / 2, second.receivedCount());
+        assertEquals(1, second.firstMissing(0, BLOCKS));
+        BlockDigest digest = new BlockDigest(second, 0, BLOCKS, this.metrics);
+        for (long seqNum = 1; seqNum < BLOCKS; seqNum += 2) {
+            assertTrue(second.has(seqNum - 1));
+            assertFalse(second.has(seqNum));
+            this.write(second, digest, seqNum);
+        }
+        digest.catchUp();
+        assertTrue(second.isComplete());
+        assertArrayEquals(MessageDigest.getInstance(BlockDigest.ALGORITHM).digest(this.content), digest.value());
+        second.close();
+
+        assertArrayEquals(this.content, Files.readAllBytes(Paths.get(this.filename)));
+        assertFalse(Files.exists(Paths.get(this.filename + ".progress")));
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * TimingWheelTest.java
+ * @author Hugh Han
+ */
+
+package udpnetworks;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for TimingWheel. The wheel turns in real time, so expiries are
+ * awaited with a generous bound and checked only against lower bounds.
+ */
+class TimingWheelTest {
+
+    /** Constants. */
+    private static final long TICK_NANOS = 1000000;  // A 1 ms tick
+    private static final int SLOTS = 4;              // A short revolution, so delays span several
+
+    /** A timeout counting its expiries and noting when it last expired. */
+    private static class CountingTimeout extends TimingWheel.Timeout {
+        private AtomicInteger expiries = new AtomicInteger();
+        private AtomicLong expiredAt = new AtomicLong();
+        private CountDownLatch latch = new CountDownLatch(1);
+
+        protected void expired() {
+            this.expiredAt.set(System.nanoTime());
+            this.expiries.incrementAndGet();
+            this.latch.countDown();
+        }
+
+        boolean await() throws InterruptedException {
+            return this.latch.await(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private TimingWheel wheel;
+
+    @BeforeEach
+    void start() {
+        this.wheel = new TimingWheel(TICK_NANOS, SLOTS, "test-wheel");
+    }
+
+    @AfterEach
+    void stop() {
+        this.wheel.stop();
+    }
+
+    @Test
+    void expiresAfterItsDelay() throws InterruptedException {
+        CountingTimeout timeout = new CountingTimeout();
+        long armedAt = System.nanoTime();
+        this.wheel.arm(timeout, 2 * TICK_NANOS);
+        assertTrue(timeout.isArmed());
+
+        assertTrue(timeout.await());
+        assertFalse(timeout.isArmed());
+        assertEquals(1, timeout.expiries.get());
+        assertTrue(timeout.expiredAt.get() - armedAt >= TICK_NANOS);
+    }
+
+    @Test
+    void delayBeyondOneRevolutionWaitsOutItsRounds() throws InterruptedException {
+        CountingTimeout near = new CountingTimeout();
+        CountingTimeout far = new CountingTimeout();
+        long armedAt = System.nanoTime();
+        this.wheel.arm(far, 50 * TICK_NANOS);
+        this.wheel.arm(near, 2 * TICK_NANOS);
+
+        /* The far timeout hashes into a slot the cursor passes a dozen times before it is due. */
+        assertTrue(near.await());
+        assertTrue(far.await());
+        assertTrue(far.expiredAt.get() > near.expiredAt.get());
+        assertTrue(far.expiredAt.get() - armedAt >= 5 * SLOTS * TICK_NANOS,
+            "expired after " + (far.expiredAt.get() - armedAt) + " ns");
+        assertEquals(1, far.expiries.get());
+    }
+
+    @Test
+    void cancelledTimeoutNeverExpires() throws InterruptedException {
+        CountingTimeout cancelled = new CountingTimeout();
+        CountingTimeout sentinel = new CountingTimeout();
+        this.wheel.arm(cancelled, 10 * TICK_NANOS);
+        this.wheel.arm(sentinel, 30 * TICK_NANOS);
+
+        assertTrue(this.wheel.cancel(cancelled));
+        assertFalse(cancelled.isArmed());
+        assertFalse(this.wheel.cancel(cancelled));
+
+        assertTrue(sentinel.await());
+        assertEquals(0, cancelled.expiries.get());
+    }
+
+    @Test
+    void cancelUnlinksFromTheMiddleOfASlot() throws InterruptedException {
+        CountingTimeout first = new CountingTimeout();
+        CountingTimeout middle = new CountingTimeout();
+        CountingTimeout last = new CountingTimeout();
+
+        /* Delays a revolution apart share a slot, so the three are linked together. */
+        this.wheel.arm(first, 10 * TICK_NANOS);
+        this.wheel.arm(middle, (10 + SLOTS) * TICK_NANOS);
+        this.wheel.arm(last, (10 + 2 * SLOTS) * TICK_NANOS);
+        assertTrue(this.wheel.cancel(middle));
+
+        assertTrue(first.await());
+        assertTrue(last.await());
+        assertEquals(0, middle.expiries.get());
+    }
+
+    @Test
+    void rearmingMovesTheTimeout() throws InterruptedException {
+        CountingTimeout timeout = new CountingTimeout();
+        CountingTimeout sentinel = new CountingTimeout();
+        this.wheel.arm(timeout, 20 * TICK_NANOS);
+        this.wheel.arm(timeout, 60000 * TICK_NANOS);
+        this.wheel.arm(sentinel, 40 * TICK_NANOS);
+
+        assertTrue(sentinel.await());
+        assertTrue(timeout.isArmed());
+        assertEquals(0, timeout.expiries.get());
+
+        this.wheel.arm(timeout, TICK_NANOS);
+        assertTrue(timeout.await());
+        assertEquals(1, timeout.expiries.get());
+    }
+
+    @Test
+    void callbackMayRearmItself() throws InterruptedException {
+        CountDownLatch three = new CountDownLatch(3);
+        TimingWheel.Timeout timeout = new TimingWheel.Timeout() {
+            protected void expired() {
+                three.countDown();
+                if (three.getCount() > 0) {
+                    TimingWheelTest.this.wheel.arm(this, TICK_NANOS);
+                }
+            }
+        };
+        this.wheel.arm(timeout, TICK_NANOS);
+
+        assertTrue(three.await(5, TimeUnit.SECONDS));
+        assertFalse(timeout.isArmed());
+    }
+}